@@ -122,13 +122,29 @@ public class AnimationFactory {
      * @param durationBefore waiting time before starting the whole series of animation
      * @param cycle number of times the animation should occur
      */
-    public static void animate(long durationCycle, EventHandler<ActionEvent> action, long durationBefore, int cycle) {
+    public static Timeline animate(long durationCycle, EventHandler<ActionEvent> action, long durationBefore, int cycle) {
         Timeline timeline = new Timeline(
                 new KeyFrame(Duration.millis(durationCycle), action)
         );
         timeline.setCycleCount(cycle); // always play the animation
         timeline.setDelay(Duration.millis(durationBefore));
         timeline.play();
+        return timeline;
+    }
+
+    /**
+     * create an animation calling an action forever, without starting it
+     * the returned timeline can then be played, paused and sped up through its rate
+     * @param durationCycle waiting time between 2 actions
+     * @param action function to call forever
+     * @return timeline calling the action, not started
+     */
+    public static Timeline loop(long durationCycle, Runnable action) {
+        Timeline timeline = new Timeline(
+                new KeyFrame(Duration.millis(durationCycle), e -> action.run())
+        );
+        timeline.setCycleCount(Timeline.INDEFINITE);
+        return timeline;
     }
 
     /**
@@ -0,0 +1,47 @@
+package org.cpvisu;
+
+import org.cpvisu.problems.SearchTree;
+
+import static org.cpvisu.problems.SearchTree.NONE;
+
+/**
+ * level of detail rule, telling if the subtree of a node should be collapsed when drawing a search tree
+ */
+@FunctionalInterface
+public interface LodRule {
+
+    /**
+     * tell if the subtree of a node should be collapsed
+     * @param tree search tree being drawn
+     * @param index index of the node
+     * @param nodeSize width of the box of a node on screen, in pixels
+     * @return true if the subtree should be collapsed
+     */
+    boolean collapse(SearchTree tree, int index, double nodeSize);
+
+    /**
+     * combine two rules: a subtree is collapsed if one of them tells so
+     */
+    default LodRule or(LodRule other) {
+        return (tree, index, nodeSize) -> collapse(tree, index, nodeSize) || other.collapse(tree, index, nodeSize);
+    }
+
+    /**
+     * collapse the subtrees whose exploration is over without any solution
+     * @return rule collapsing the failed subtrees
+     */
+    static LodRule failed() {
+        return (tree, index, nodeSize) -> tree.firstChildOf(index) != NONE && tree.successesOf(index) == 0
+                && tree.openLeavesOf(index) == 0;
+    }
+
+    /**
+     * collapse the subtrees too small to be seen once zoomed out
+     * @param minWidth minimum width in pixels that the nodes of a subtree must take to be drawn node by node
+     * @return rule collapsing the small subtrees
+     */
+    static LodRule zoomedOut(double minWidth) {
+        return (tree, index, nodeSize) -> tree.firstChildOf(index) != NONE && tree.subtreeSizeOf(index) * nodeSize < minWidth;
+    }
+
+}
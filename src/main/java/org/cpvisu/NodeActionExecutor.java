@@ -0,0 +1,159 @@
+package org.cpvisu;
+
+import javafx.application.Platform;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * executor for the actions triggered by clicking the nodes of a search tree, running them off the JavaFX thread
+ *
+ * an action is split into a computation, done on a worker thread from the id of the node (rebuilding the state of a
+ * solver, computing a solution, ...), and a display of its result, done on the JavaFX thread. Submitting a node
+ * cancels the action of the previous one if it is still running: its result, if any, is discarded. The last results
+ * computed are kept in a cache, so that going back to a node recently clicked displays it at once. A computation
+ * throwing an exception is reported to an error handler, also on the JavaFX thread
+ *
+ * the methods of the executor are meant to be called from the JavaFX thread
+ * @param <T> type of the result of an action
+ */
+public class NodeActionExecutor<T> {
+
+    private final IntFunction<T> compute;
+    private final Consumer<T> display;
+    private ObjIntConsumer<RuntimeException> errorHandler = (exception, node) -> {
+        throw exception; // reported by the uncaught exception handler of the JavaFX thread
+    };
+    private final Map<Integer, T> cache;     // id of a node -> result of its action, in the order of use
+    private final ExecutorService worker;
+    private Future<?> running;                // action currently computed by the worker
+    private int generation = 0;               // incremented at each submission, to discard stale results
+
+    /**
+     * create an executor for the actions of the nodes
+     * @param compute computation of the result of the action of a node, given its id. Run on a worker thread, it
+     *                should stop early once its thread is interrupted
+     * @param display display of a result, run on the JavaFX thread
+     * @param cacheSize number of results kept in the cache, 0 to disable the cache
+     */
+    public NodeActionExecutor(IntFunction<T> compute, Consumer<T> display, int cacheSize) {
+        this.compute = compute;
+        this.display = display;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "node actions");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * create an executor for the actions of the nodes, keeping the 64 last results
+     * @param compute computation of the result of the action of a node, given its id, run on a worker thread
+     * @param display display of a result, run on the JavaFX thread
+     */
+    public NodeActionExecutor(IntFunction<T> compute, Consumer<T> display) {
+        this(compute, display, 64);
+    }
+
+    /**
+     * set the handler receiving the exceptions thrown while computing the action of a node
+     * the handler is run on the JavaFX thread, unless another node has been clicked in the meantime. By default, the
+     * exception is rethrown on the JavaFX thread
+     * @param errorHandler handler receiving the exception and the id of the node
+     */
+    public void setErrorHandler(ObjIntConsumer<RuntimeException> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * run the action of a node, cancelling the one currently running
+     * the result is displayed at once if it is in the cache
+     * @param node id of the node
+     */
+    public void submit(int node) {
+        cancel();
+        T cached = cache.get(node);
+        if (cached != null) {
+            display.accept(cached);
+            return;
+        }
+        int gen = generation;
+        running = worker.submit(() -> {
+            T result;
+            try {
+                result = compute.apply(node);
+            } catch (RuntimeException exception) {
+                Platform.runLater(() -> {
+                    if (gen != generation)
+                        return;
+                    running = null;
+                    errorHandler.accept(exception, node);
+                });
+                return;
+            }
+            if (result == null || Thread.currentThread().isInterrupted())
+                return;
+            Platform.runLater(() -> {
+                if (gen != generation) // another node has been clicked in the meantime
+                    return;
+                running = null;
+                cache.put(node, result);
+                display.accept(result);
+            });
+        });
+    }
+
+    /**
+     * cancel the action currently running, if any
+     */
+    public void cancel() {
+        generation++;
+        if (running != null) {
+            running.cancel(true);
+            running = null;
+        }
+    }
+
+    /**
+     * @return true if an action is currently running
+     */
+    public boolean isRunning() {
+        return running != null && !running.isDone();
+    }
+
+    /**
+     * forget the result of a node, for instance once its state has changed
+     * @param node id of the node
+     */
+    public void invalidate(int node) {
+        cache.remove(node);
+    }
+
+    /**
+     * forget all results computed so far
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * cancel the running action and stop the worker thread
+     */
+    public void shutdown() {
+        cancel();
+        worker.shutdownNow();
+    }
+
+}
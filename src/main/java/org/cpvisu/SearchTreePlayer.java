@@ -0,0 +1,117 @@
+package org.cpvisu;
+
+import javafx.animation.Animation;
+import javafx.animation.Timeline;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Slider;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import org.cpvisu.problems.SearchTreeLog;
+import org.cpvisu.problems.SearchTreeReplay;
+
+/**
+ * controls replaying a search: play, pause, speed and a timeline slider to jump to any step
+ * the events are applied to the tree of the replay at the pace at which they were recorded, multiplied by the speed.
+ * Any view bound to the tree of the replay (VisualSearchTree, VisualSearchTreeCanvas) follows the replay
+ */
+public class SearchTreePlayer extends HBox {
+
+    private static final long FRAME = 16; // duration between two updates of the replay, in milliseconds
+    private static final Double[] SPEEDS = {0.25, 0.5, 1., 2., 4., 8., 16., 64.};
+
+    private final SearchTreeReplay replay;
+    private final SearchTreeLog log;
+    private final Timeline timeline;
+    private final Button playButton = new Button("play");
+    private final Slider slider = new Slider(0, 0, 0);
+    private final ChoiceBox<Double> speedChoice = new ChoiceBox<>();
+    private final Label stepLabel = new Label();
+    private long time = 0;              // time of the replay, in nanoseconds of the log
+    private double speed = 1;
+    private boolean updating = false;   // true while the slider is moved by the replay itself
+
+    public SearchTreePlayer(SearchTreeReplay replay) {
+        this.replay = replay;
+        this.log = replay.getLog();
+        timeline = AnimationFactory.loop(FRAME, this::tick);
+        playButton.setOnAction(e -> {
+            if (timeline.getStatus() == Animation.Status.RUNNING)
+                pause();
+            else
+                play();
+        });
+        speedChoice.getItems().addAll(SPEEDS);
+        speedChoice.setValue(1.);
+        speedChoice.setOnAction(e -> speed = speedChoice.getValue());
+        slider.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (!updating)
+                seek(newValue.intValue());
+        });
+        HBox.setHgrow(slider, Priority.ALWAYS);
+        setSpacing(8);
+        setPadding(new Insets(4));
+        setAlignment(Pos.CENTER_LEFT);
+        getChildren().addAll(playButton, speedChoice, slider, stepLabel);
+        refreshControls();
+    }
+
+    /**
+     * replay the events from the current step
+     */
+    public void play() {
+        if (replay.getStep() == log.size()) // replays from the start once the end was reached
+            seek(0);
+        timeline.play();
+        playButton.setText("pause");
+    }
+
+    public void pause() {
+        timeline.pause();
+        playButton.setText("play");
+    }
+
+    /**
+     * set the speed of the replay
+     * @param speed factor applied to the pace at which the events were recorded
+     */
+    public void setSpeed(double speed) {
+        this.speed = speed;
+        speedChoice.setValue(speed);
+    }
+
+    /**
+     * jump to a step of the replay
+     * @param step number of events applied
+     */
+    public void seek(int step) {
+        replay.seek(step);
+        time = replay.getStep() == 0 ? 0 : log.timeOf(replay.getStep() - 1);
+        refreshControls();
+    }
+
+    /**
+     * advance the replay by the duration of a frame, multiplied by the speed
+     */
+    private void tick() {
+        time += (long) (FRAME * 1_000_000 * speed);
+        if (replay.getStep() < log.size() && log.timeOf(replay.getStep()) > time + 1_000_000_000L)
+            time = log.timeOf(replay.getStep()); // skips the pauses of more than one second in the search
+        replay.seek(log.stepAt(time));
+        if (replay.getStep() == log.size())
+            pause();
+        refreshControls();
+    }
+
+    private void refreshControls() {
+        updating = true;
+        slider.setMax(log.size());
+        slider.setValue(replay.getStep());
+        updating = false;
+        stepLabel.setText(replay.getStep() + " / " + log.size());
+    }
+
+}
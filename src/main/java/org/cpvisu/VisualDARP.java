@@ -16,6 +16,7 @@ import javafx.util.Duration;
 import org.cpvisu.chart.DARPGanttChart;
 import org.cpvisu.chart.LoadProfileChart;
 import org.cpvisu.problems.DARPInstance;
+import org.cpvisu.problems.DARPInstanceView;
 import org.cpvisu.problems.DARPNode;
 import org.cpvisu.problems.DARPNodeSolution;
 import org.cpvisu.problems.DARPSolution;
@@ -311,18 +312,23 @@ public class VisualDARP {
         String[] nodes = nodeDescription(vehicle);
         DARPGanttChart chart = DARPGanttChart.fromCategories(nodes);
         chart.setBlockHeight(20);
+        DARPInstanceView view = darp.getView();
         int i = 0;
         double timeArrival;
         DARPNodeSolution pred = null;
+        double departure = 0;
         for (DARPNodeSolution nodeSolution: solution.getNodes(vehicle)) {
-            if (i==0)
+            int id = nodeSolution.getDarpNode().getId();
+            if (i==0) {
                 timeArrival = nodeSolution.getEat();
-            else
-                timeArrival = Math.max(pred.getEat(), pred.getDarpNode().getTwStart()) + pred.getDarpNode().getServingDuration() + darp.getDistance(pred.getDarpNode(), nodeSolution.getDarpNode());
-            chart.setTimeSlot(nodes[i], nodeSolution.getDarpNode().getTwStart(), nodeSolution.getDarpNode().getTwEnd(), nodeSolution.getEat(), nodeSolution.getLat(), timeArrival);
+            } else {
+                int predId = pred.getDarpNode().getId();
+                departure = Math.max(pred.getEat(), view.getTwStart(predId)) + view.getServingDuration(predId);
+                timeArrival = view.arrivalTime(predId, id, departure);
+            }
+            chart.setTimeSlot(nodes[i], view.getTwStart(id), view.getTwEnd(id), nodeSolution.getEat(), nodeSolution.getLat(), timeArrival);
             if (i > 0) {
-                chart.setTransition(nodes[i-1], Math.max(pred.getEat(), pred.getDarpNode().getTwStart()) + pred.getDarpNode().getServingDuration(),
-                        darp.getDistance(pred.getDarpNode(), nodeSolution.getDarpNode()));
+                chart.setTransition(nodes[i-1], departure, timeArrival - departure);
             }
             pred = nodeSolution;
             ++i;
@@ -388,6 +394,25 @@ public class VisualDARP {
         solution.addVisit(vehicle, node);
     }
 
+    /**
+     * insert the visit of a node within the route of a vehicle
+     * @param vehicle vehicle that will get a newly visited node
+     * @param position position of the node in the route once inserted
+     * @param node that will be visited by the vehicle
+     */
+    public void insertVisit(int vehicle, int position, int node) {
+        solution.insertVisit(vehicle, position, node);
+    }
+
+    /**
+     * remove the visit at a given position of the route of a vehicle
+     * @param vehicle vehicle whose route is changed
+     * @param position position of the node in the route
+     */
+    public void removeVisit(int vehicle, int position) {
+        solution.removeVisit(vehicle, position);
+    }
+
 
     /**
      * select a given vehicle and update the visualisation for this vehicle
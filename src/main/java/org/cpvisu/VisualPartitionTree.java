@@ -0,0 +1,277 @@
+package org.cpvisu;
+
+import javafx.application.Platform;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+import org.cpvisu.problems.SearchTree;
+import org.cpvisu.problems.SearchTreeListener;
+
+import java.util.Arrays;
+
+import static org.cpvisu.problems.SearchTree.NONE;
+
+/**
+ * partition view of a search tree, drawn either as an icicle or as a sunburst
+ *
+ * each node gets a share of the width of its parent (of the angle in a sunburst) proportional to the size of its
+ * subtree, and is colored by the mix of statuses within its subtree. The sizes and statuses come from the aggregates
+ * maintained by the SearchTree on the path of each change, so that a change is processed in O(depth). Drawing only
+ * visits the nodes wide enough to be seen, whatever the size of the tree
+ *
+ * clicking a node focuses the view on its subtree, clicking with the secondary button focuses on the parent again
+ */
+public class VisualPartitionTree extends Pane implements SearchTreeListener {
+
+    private final SearchTree searchTree;
+    private final Canvas canvas = new Canvas();
+    private boolean sunburst = false;     // true to draw a sunburst, false for an icicle
+    private int maxRows = 24;             // number of depths drawn below the focused node
+    private double minWidth = 0.5;        // width in pixels below which a node is not drawn
+    private int focus = NONE;             // index of the node at the root of the view
+    private boolean refreshScheduled = false;
+    // work arrays of the traversal: node, start and end of its share in [0, 1), and depth below the focused node
+    private int[] stackNodes = new int[64];
+    private double[] stackStarts = new double[64];
+    private double[] stackEnds = new double[64];
+    private int[] stackDepths = new int[64];
+
+    public VisualPartitionTree(SearchTree searchTree) {
+        this.searchTree = searchTree;
+        canvas.setManaged(false);
+        getChildren().add(canvas);
+        canvas.setOnMouseClicked(this::onClick);
+        searchTree.addListener(this);
+    }
+
+    /**
+     * @param sunburst true to draw the tree as a sunburst, false to draw it as an icicle
+     */
+    public void setSunburst(boolean sunburst) {
+        this.sunburst = sunburst;
+        redraw();
+    }
+
+    /**
+     * @param maxRows number of depths drawn below the node at the root of the view
+     */
+    public void setMaxRows(int maxRows) {
+        this.maxRows = Math.max(1, maxRows);
+        redraw();
+    }
+
+    /**
+     * focus the view on the subtree of a node
+     * @param index index of the node at the root of the view, NONE for the root of the tree
+     */
+    public void setFocus(int index) {
+        focus = index;
+        redraw();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        super.layoutChildren();
+        if (canvas.getWidth() != getWidth() || canvas.getHeight() != getHeight()) {
+            canvas.setWidth(getWidth());
+            canvas.setHeight(getHeight());
+            redraw();
+        }
+    }
+
+    private int root() {
+        if (focus != NONE && focus < searchTree.nNodes())
+            return focus;
+        return searchTree.indexOf(0); // assume that the node 0 is the root node
+    }
+
+    private double rowHeight() {
+        return sunburst ? Math.min(canvas.getWidth(), canvas.getHeight()) / 2 / (maxRows + 1) : canvas.getHeight() / (maxRows + 1);
+    }
+
+    /**
+     * draw the partition of the tree, skipping the nodes too narrow to be seen
+     */
+    public void redraw() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        int root = root();
+        if (root == NONE)
+            return;
+        gc.setStroke(Color.WHITE);
+        gc.setLineWidth(0.5);
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setTextBaseline(VPos.CENTER);
+        double rowHeight = rowHeight();
+        int top = 0;
+        push(top++, root, 0, 1, 0);
+        while (top > 0) {
+            top--;
+            int v = stackNodes[top];
+            double start = stackStarts[top];
+            double end = stackEnds[top];
+            int depth = stackDepths[top];
+            draw(gc, v, start, end, depth, rowHeight);
+            if (depth == maxRows)
+                continue;
+            // the children share the width of the node according to the size of their subtree
+            double scale = (end - start) / searchTree.subtreeSizeOf(v);
+            double x = start + scale; // the node itself takes the first share
+            for (int c = searchTree.firstChildOf(v); c != NONE; c = searchTree.nextSiblingOf(c)) {
+                double width = scale * searchTree.subtreeSizeOf(c);
+                if (pixels(width, depth + 1, rowHeight) >= minWidth)
+                    push(top++, c, x, x + width, depth + 1);
+                x += width;
+            }
+        }
+    }
+
+    /**
+     * @return width on screen of a share of the view, at a given depth
+     */
+    private double pixels(double share, int depth, double rowHeight) {
+        if (sunburst)
+            return share * 2 * Math.PI * (depth + 1) * rowHeight;
+        return share * canvas.getWidth();
+    }
+
+    private void push(int position, int node, double start, double end, int depth) {
+        if (position == stackNodes.length) {
+            int capacity = position * 2;
+            stackNodes = Arrays.copyOf(stackNodes, capacity);
+            stackStarts = Arrays.copyOf(stackStarts, capacity);
+            stackEnds = Arrays.copyOf(stackEnds, capacity);
+            stackDepths = Arrays.copyOf(stackDepths, capacity);
+        }
+        stackNodes[position] = node;
+        stackStarts[position] = start;
+        stackEnds[position] = end;
+        stackDepths[position] = depth;
+    }
+
+    private void draw(GraphicsContext gc, int v, double start, double end, int depth, double rowHeight) {
+        gc.setFill(searchTree.firstChildOf(v) == NONE ? searchTree.colorOf(searchTree.statusOf(v)) : searchTree.summaryColorOf(v));
+        if (sunburst) {
+            double cx = canvas.getWidth() / 2;
+            double cy = canvas.getHeight() / 2;
+            double inner = depth * rowHeight;
+            double outer = inner + rowHeight;
+            double startAngle = 90 - start * 360; // clockwise from the top
+            double length = -(end - start) * 360;
+            gc.beginPath();
+            if (depth == 0) {
+                gc.moveTo(cx + outer, cy);
+                gc.arc(cx, cy, outer, outer, 0, 360);
+            } else {
+                gc.arc(cx, cy, outer, outer, startAngle, length);
+                gc.arc(cx, cy, inner, inner, startAngle + length, -length);
+            }
+            gc.closePath();
+            gc.fill();
+            gc.stroke();
+        } else {
+            double x = start * canvas.getWidth();
+            double width = (end - start) * canvas.getWidth();
+            double y = depth * rowHeight;
+            gc.fillRect(x, y, width, rowHeight);
+            gc.strokeRect(x, y, width, rowHeight);
+            String label = depth == 0 ? null : searchTree.branchMessageOf(v);
+            if (label != null && width > 8 * label.length()) {
+                gc.setFill(Color.BLACK);
+                gc.fillText(label, x + width / 2, y + rowHeight / 2);
+            }
+        }
+    }
+
+    /**
+     * gives the node drawn at a position of the canvas
+     * @return index of the node, NONE if there is none
+     */
+    private int nodeAt(double screenX, double screenY) {
+        int v = root();
+        if (v == NONE)
+            return NONE;
+        double rowHeight = rowHeight();
+        double share;
+        int depth;
+        if (sunburst) {
+            double dx = screenX - canvas.getWidth() / 2;
+            double dy = screenY - canvas.getHeight() / 2;
+            depth = (int) (Math.hypot(dx, dy) / rowHeight);
+            double angle = Math.toDegrees(Math.atan2(dx, -dy)); // clockwise from the top
+            share = (angle < 0 ? angle + 360 : angle) / 360;
+        } else {
+            depth = (int) (screenY / rowHeight);
+            share = screenX / canvas.getWidth();
+        }
+        if (depth > maxRows)
+            return NONE;
+        double start = 0;
+        double end = 1;
+        for (int d = 0; d < depth; ++d) { // descend into the child whose share contains the position
+            double scale = (end - start) / searchTree.subtreeSizeOf(v);
+            double x = start + scale;
+            int next = NONE;
+            for (int c = searchTree.firstChildOf(v); c != NONE && next == NONE; c = searchTree.nextSiblingOf(c)) {
+                double width = scale * searchTree.subtreeSizeOf(c);
+                if (share >= x && share < x + width) {
+                    next = c;
+                    start = x;
+                    end = x + width;
+                }
+                x += width;
+            }
+            if (next == NONE)
+                return NONE;
+            v = next;
+        }
+        return v;
+    }
+
+    private void onClick(MouseEvent event) {
+        if (event.getButton() == MouseButton.SECONDARY) {
+            int root = root();
+            if (root != NONE && searchTree.parentOf(root) != NONE)
+                setFocus(searchTree.parentOf(root));
+            return;
+        }
+        int v = nodeAt(event.getX(), event.getY());
+        if (v != NONE)
+            setFocus(v);
+    }
+
+    @Override
+    public void onBranch(int parent, int node) {
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onStatusChange(int node, int oldStatus, int newStatus) {
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onClear() {
+        focus = NONE; // the indices of the nodes are no longer valid
+        scheduleRefresh();
+    }
+
+    /**
+     * coalesce the changes of the search tree until the next pulse
+     */
+    private void scheduleRefresh() {
+        if (refreshScheduled)
+            return;
+        refreshScheduled = true;
+        Platform.runLater(() -> {
+            refreshScheduled = false;
+            redraw();
+        });
+    }
+
+}
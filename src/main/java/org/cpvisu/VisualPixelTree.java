@@ -0,0 +1,277 @@
+package org.cpvisu;
+
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import org.cpvisu.problems.SearchTree;
+import org.cpvisu.problems.SearchTreeListener;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import static org.cpvisu.problems.SearchTree.*;
+
+/**
+ * overview of a search tree as a pixel tree, in the style of CP-Profiler
+ *
+ * each depth of the tree is a row of pixels, and the nodes take the columns in depth first order: the node at position
+ * p in the preorder is drawn at column p / compression, so that a column gathers compression consecutive nodes. A pixel
+ * takes the color of the most important status among its nodes (success, then failure, then intermediate). Trees
+ * deeper than MAX_HEIGHT also gather consecutive depths into a row
+ *
+ * the pixels are written directly into the buffer of the image. A new branch shifts the columns of the nodes after it
+ * in the preorder, so that the whole pixel tree is drawn again in one linear pass over the nodes, at most once per
+ * pulse. When only statuses have changed since the last pulse, only the pixels of the changed nodes are drawn again,
+ * each one from the nodes of its column. Clicking a pixel gives the index of one of its nodes to a callback, typically
+ * opening its subtree in a detailed view
+ */
+public class VisualPixelTree extends Pane implements SearchTreeListener {
+
+    private static final int BACKGROUND = 0xFFFFFFFF;
+    private static final int MAX_WIDTH = 8192;   // maximum number of columns
+    private static final int MAX_HEIGHT = 4096;  // maximum number of rows
+
+    private final SearchTree searchTree;
+    private final ImageView imageView = new ImageView();
+    private PixelBuffer<IntBuffer> pixelBuffer;
+    private IntBuffer pixels;
+    private int width = 0;
+    private int height = 0;
+    private int compression = 0;          // number of nodes per column, 0 to fit the tree within MAX_WIDTH columns
+    private int usedCompression = 1;      // compression of the image currently drawn
+    private int depthCompression = 1;     // number of consecutive depths gathered in a row
+    private int pixelSize = 2;            // size on screen of a pixel of the image
+    private int[] order = new int[16];    // position in the preorder -> index of the node
+    private int[] depths = new int[16];   // position in the preorder -> depth of the node
+    private int[] positionOf = new int[16]; // index of a node -> position in the preorder, NONE if not drawn
+    private int nOrdered = 0;
+    private boolean structureChanged = true; // true if the tree must be drawn again in full at the next pulse
+    private int[] changed = new int[16];     // nodes whose status changed since the last pulse
+    private int nChanged = 0;
+    private int success;                  // colors of the statuses, read at each drawing
+    private int failure;
+    private int intermediate;
+    private IntConsumer onSelect = index -> {};
+    private boolean refreshScheduled = false;
+
+    public VisualPixelTree(SearchTree searchTree) {
+        this.searchTree = searchTree;
+        imageView.setSmooth(false);
+        imageView.setPreserveRatio(false);
+        imageView.setOnMouseClicked(this::select);
+        getChildren().add(imageView);
+        searchTree.addListener(this);
+    }
+
+    /**
+     * set the number of consecutive nodes gathered in a column
+     * @param compression number of nodes per column, 0 to choose it so that the tree fits within MAX_WIDTH columns.
+     *                    It is increased when the tree would not fit within MAX_WIDTH columns otherwise
+     */
+    public void setCompression(int compression) {
+        this.compression = Math.max(0, compression);
+        update();
+    }
+
+    /**
+     * @param pixelSize size on screen of a pixel of the tree, in pixels
+     */
+    public void setPixelSize(int pixelSize) {
+        this.pixelSize = Math.max(1, pixelSize);
+        resizeView();
+    }
+
+    /**
+     * set the action performed when a pixel is clicked
+     * @param onSelect action receiving the index of the first node of the clicked pixel
+     */
+    public void setOnSelect(IntConsumer onSelect) {
+        this.onSelect = onSelect;
+    }
+
+    /**
+     * draw the pixel tree of the current search tree
+     */
+    public void update() {
+        structureChanged = false;
+        nChanged = 0;
+        readColors();
+        int root = searchTree.indexOf(0); // assume that the node 0 is the root node
+        nOrdered = 0;
+        Arrays.fill(positionOf, NONE);
+        int maxDepth = 0;
+        if (root != NONE) {
+            if (order.length < searchTree.nNodes()) {
+                order = new int[searchTree.nNodes()];
+                depths = new int[searchTree.nNodes()];
+                positionOf = new int[searchTree.nNodes()];
+            }
+            // preorder of the tree, following the parent and sibling links
+            int v = root;
+            int depth = 0;
+            while (true) {
+                positionOf[v] = nOrdered;
+                order[nOrdered] = v;
+                depths[nOrdered++] = depth;
+                maxDepth = Math.max(maxDepth, depth);
+                if (searchTree.firstChildOf(v) != NONE) {
+                    v = searchTree.firstChildOf(v);
+                    depth++;
+                    continue;
+                }
+                while (v != root && searchTree.nextSiblingOf(v) == NONE) {
+                    v = searchTree.parentOf(v);
+                    depth--;
+                }
+                if (v == root)
+                    break;
+                v = searchTree.nextSiblingOf(v);
+            }
+        }
+        usedCompression = Math.max(compression, Math.max(1, (nOrdered + MAX_WIDTH - 1) / MAX_WIDTH));
+        int w = Math.max(1, (nOrdered + usedCompression - 1) / usedCompression);
+        depthCompression = maxDepth / MAX_HEIGHT + 1;
+        int h = maxDepth / depthCompression + 1;
+        if (pixelBuffer == null || w != width || h != height) {
+            width = w;
+            height = h;
+            pixels = ByteBuffer.allocateDirect(Math.toIntExact((long) width * height * Integer.BYTES)).order(ByteOrder.nativeOrder()).asIntBuffer();
+            pixelBuffer = new PixelBuffer<>(width, height, pixels, PixelFormat.getIntArgbPreInstance());
+            imageView.setImage(new WritableImage(pixelBuffer));
+            resizeView();
+        }
+        for (int i = 0; i < width * height; ++i)
+            pixels.put(i, BACKGROUND);
+        for (int p = 0; p < nOrdered; ++p)
+            draw(depths[p] / depthCompression * width + p / usedCompression, searchTree.statusOf(order[p]));
+        pixelBuffer.updateBuffer(buffer -> new Rectangle2D(0, 0, width, height));
+    }
+
+    /**
+     * draw again the pixels of the nodes whose status changed, the preorder of the tree being unchanged
+     */
+    private void updateStatuses() {
+        readColors();
+        int minColumn = width, maxColumn = -1, minRow = height, maxRow = -1;
+        for (int k = 0; k < nChanged; ++k) {
+            int position = changed[k] < positionOf.length ? positionOf[changed[k]] : NONE;
+            if (position == NONE)
+                continue;
+            int column = position / usedCompression;
+            int row = depths[position] / depthCompression;
+            int pixel = row * width + column;
+            // the color of the pixel is computed again from all nodes of its column at its row
+            pixels.put(pixel, BACKGROUND);
+            int to = Math.min(nOrdered, (column + 1) * usedCompression);
+            for (int p = column * usedCompression; p < to; ++p)
+                if (depths[p] / depthCompression == row)
+                    draw(pixel, searchTree.statusOf(order[p]));
+            minColumn = Math.min(minColumn, column);
+            maxColumn = Math.max(maxColumn, column);
+            minRow = Math.min(minRow, row);
+            maxRow = Math.max(maxRow, row);
+        }
+        nChanged = 0;
+        if (maxColumn < 0)
+            return;
+        Rectangle2D dirty = new Rectangle2D(minColumn, minRow, maxColumn - minColumn + 1, maxRow - minRow + 1);
+        pixelBuffer.updateBuffer(buffer -> dirty);
+    }
+
+    /**
+     * merge the status of a node into a pixel, keeping the most important status among its nodes
+     */
+    private void draw(int pixel, int status) {
+        int current = pixels.get(pixel);
+        if (status == SUCCESS)
+            pixels.put(pixel, success);
+        else if (status == FAILURE && current != success)
+            pixels.put(pixel, failure);
+        else if (current == BACKGROUND)
+            pixels.put(pixel, intermediate);
+    }
+
+    private void readColors() {
+        success = argb(searchTree.colorOf(SUCCESS));
+        failure = argb(searchTree.colorOf(FAILURE));
+        intermediate = argb(searchTree.colorOf(INTERMEDIATE));
+    }
+
+    private static int argb(Color color) {
+        return 0xFF000000 | ((int) Math.round(color.getRed() * 255) << 16)
+                | ((int) Math.round(color.getGreen() * 255) << 8) | (int) Math.round(color.getBlue() * 255);
+    }
+
+    private void resizeView() {
+        imageView.setFitWidth(width * pixelSize);
+        imageView.setFitHeight(height * pixelSize);
+    }
+
+    /**
+     * give the first node of the clicked pixel to the select action
+     */
+    private void select(MouseEvent event) {
+        int column = (int) (event.getX() / pixelSize);
+        int row = (int) (event.getY() / pixelSize);
+        int from = column * usedCompression;
+        int to = Math.min(nOrdered, from + usedCompression);
+        for (int p = from; p < to; ++p) {
+            if (depths[p] / depthCompression == row) {
+                onSelect.accept(order[p]);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onBranch(int parent, int node) {
+        structureChanged = true;
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onStatusChange(int node, int oldStatus, int newStatus) {
+        if ((long) nChanged * usedCompression >= nOrdered) // drawing the whole tree again is cheaper
+            structureChanged = true;
+        if (!structureChanged) {
+            if (nChanged == changed.length)
+                changed = Arrays.copyOf(changed, nChanged * 2);
+            changed[nChanged++] = node;
+        }
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onClear() {
+        nOrdered = 0; // the indices of the nodes are no longer valid
+        structureChanged = true;
+        scheduleRefresh();
+    }
+
+    /**
+     * coalesce the changes of the search tree until the next pulse, where the pixel tree is drawn again: in full if
+     * branches have been added, or only at the changed nodes otherwise
+     */
+    private void scheduleRefresh() {
+        if (refreshScheduled)
+            return;
+        refreshScheduled = true;
+        Platform.runLater(() -> {
+            refreshScheduled = false;
+            if (structureChanged || pixelBuffer == null)
+                update();
+            else
+                updateStatuses();
+        });
+    }
+
+}
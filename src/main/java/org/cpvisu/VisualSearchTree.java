@@ -1,201 +1,700 @@
 package org.cpvisu;
 
+import javafx.application.Platform;
 import javafx.scene.Group;
-import javafx.scene.Node;
+import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.*;
 import javafx.scene.text.Text;
+import org.cpvisu.layout.SearchTreeLayout;
 import org.cpvisu.problems.SearchTree;
+import org.cpvisu.problems.SearchTreeListener;
 import org.cpvisu.problems.SearchTreeNode;
-import org.cpvisu.shapes.GroupArea;
 import org.cpvisu.shapes.LabeledPath;
 import org.cpvisu.shapes.VisualTextRectangle;
+import org.cpvisu.shapes.VisualTriangle;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 
-import static org.cpvisu.shapes.ShapeOperation.ShapeCopy;
+import static org.cpvisu.problems.SearchTree.NONE;
 
-public class VisualSearchTree {
+/**
+ * visualisation of a search tree
+ * in incremental mode, the branches added to the search tree are drawn without rebuilding the whole visualisation:
+ * only the nodes on the paths from the new nodes to the root are laid out again, and the existing drawings are reused
+ *
+ * a collapsed subtree is drawn as a triangle sized by its number of nodes and colored by its ratio of successes.
+ * Right-clicking on a node collapses or expands it, and a level of detail rule can collapse subtrees automatically,
+ * for instance when zooming out. The nodes below a collapsed node are only drawn once it is expanded. In both modes,
+ * collapsing or expanding a node only lays out its ancestors again
+ *
+ * the whole tree can also be laid out and designed on a worker thread, from a snapshot of the search tree, so that
+ * large trees do not freeze the application thread. The drawing is then attached level by level
+ */
+public class VisualSearchTree implements SearchTreeListener {
 
     SearchTree searchTree;
-    private int[] levelHeight;      // y offset for each depth in the search tree
-    private int[] maxLinesPerLevel; // max number of string lines for each depth
     private int fontHeight;         // height of the font for one line
-    private ArrayList<Line> branches;
-    private ArrayList<VisualTextRectangle> visualNodes;
     private Group pane;
-    private int offset = 42;       // offset used when moving nodes
+    private SearchTreeLayout layout;
+    private final ConcurrentHashMap<String, Double> textWidths = new ConcurrentHashMap<>(); // width of the branch labels already measured
+    private int nodeWidth = 50;     // width of a node
+    private int nodeHeight = 20;    // height of a node
+    private int siblingSpacing = 10; // minimum space between two nodes at the same depth
     private int xLabelSpacing = 5;  // space between a node and its label branch, in x values
     private int yLabelSpacing = -5; // space between a node and its label branch, in y values
+    // drawings of the nodes, indexed by the index of the nodes in the search tree
+    private Group[] groups = new Group[16];                         // subtree of a node, translated relative to its parent
+    private VisualTextRectangle[] visualNodes = new VisualTextRectangle[16];
+    private LabeledPath[] branches = new LabeledPath[16];           // branch leading to a node
+    private VisualTriangle[] summaries = new VisualTriangle[16];    // summary of a collapsed subtree
+    private byte[] lodState = new byte[16];                         // how the collapsing of a node was decided
+    private static final byte LOD_NONE = 0;   // collapsed or expanded through the search tree
+    private static final byte LOD_AUTO = 1;   // collapsed by the level of detail rule
+    private static final byte LOD_MANUAL = 2; // collapsed or expanded by the user, the level of detail rule is ignored
+    private int root = NONE;        // index of the root currently drawn
+    private int rootNode = 0;       // id of the node drawn as root
+    private final boolean incremental;
+    private int[] pending = new int[16]; // nodes added to the search tree and not drawn yet
+    private int nPending = 0;
+    private int[] pendingCollapses = new int[16]; // nodes collapsed or expanded and not drawn accordingly yet
+    private int nPendingCollapses = 0;
+    private boolean flushScheduled = false;
+    private LodRule lodRule = null;
+    private boolean lodScheduled = false;
+    private boolean colorByWorker = false; // if true, the nodes are colored by the worker that created them
+    private IntFunction<Color> nodeColoring = null; // if not null, gives the color of the nodes from their index
+    private NodeActionExecutor<?> actionExecutor = null; // if not null, runs the actions of the clicked nodes
+    // layout on a worker thread
+    private static final int CHUNK_SIZE = 2000; // number of nodes attached to the drawing at each pulse
+    private ExecutorService worker;
+    private Future<?> background;               // layout currently computed by the worker
+    private final AtomicInteger generation = new AtomicInteger(); // incremented at each update, to discard stale layouts
+    private boolean streaming = false;          // true until the drawing of a background layout is fully attached
 
     public VisualSearchTree(SearchTree searchTree) {
+        this(searchTree, false);
+    }
+
+    /**
+     * create a visualisation of a search tree
+     * @param searchTree search tree to draw
+     * @param incremental if true, the branches added to the search tree are drawn incrementally: they are displayed
+     *                    at the next pulse or call to update(), without redrawing the rest of the tree
+     */
+    public VisualSearchTree(SearchTree searchTree, boolean incremental) {
         this.searchTree = searchTree;
+        this.incremental = incremental;
         fontHeight = (int) Math.ceil(new Text("").getBoundsInLocal().getHeight());
+        layout = newLayout();
         pane = new Group();
+        pane.scaleXProperty().addListener((observable, oldValue, newValue) -> scheduleLod());
         reset();
+        searchTree.addListener(this);
         //printCursorPosition();
     }
 
     /**
      * construct the visual representation of the current search tree
+     * in incremental mode, only the nodes added since the last update are drawn
      */
     public Group update() {
+        if (incremental && (root != NONE || streaming)) {
+            flush();
+            return pane;
+        }
+        cancelBackground();
         reset();
-        SearchTreeNode<String> root = searchTree.toNode(0); // assume that the node 0 is the root node
-        int depth = root.getMaxDepth();
-        // compute the height levels and lines per level for all nodes
-        levelHeight = new int[depth+1];
-        maxLinesPerLevel = new int[depth+1];
-        levelHeight[0] = 0;
-        for (int i = 1; i <= depth; ++i)
-            levelHeight[i] = levelHeight[i-1] + (3 + maxLinesPerLevel[i-1]) * fontHeight;
-        // draw the tree and its branches
-        System.out.println("===========");
-        pane.getChildren().add(design(root, 0));
+        root = searchTree.indexOf(rootNode);
+        if (root == NONE)
+            return pane;
+        layout.layout(searchTree, root);
+        ensureCapacity(searchTree.nNodes());
+        pane.getChildren().add(design(root));
+        scheduleLod();
         return pane;
     }
 
+    /**
+     * draw only the subtree of a node, or the whole tree again
+     * @param node id of the root of the subtree to draw, 0 to draw the whole tree
+     * @return group in which the search tree is drawn
+     */
+    public Group setRoot(int node) {
+        rootNode = node;
+        cancelBackground();
+        reset();
+        return update();
+    }
+
+    /**
+     * construct the visual representation of the current search tree on a worker thread
+     * the layout and the shapes are computed from a snapshot of the search tree, and attached to the drawing by chunks
+     * of nodes in breadth first order, so that the top levels appear first. The previous drawing stays displayed
+     * until the first chunk is attached. Calling this method again discards the layout in progress
+     * in incremental mode, the changes occurring in the meantime are drawn once the whole snapshot is attached
+     * @return group in which the search tree is drawn
+     */
+    public Group updateInBackground() {
+        cancelBackground();
+        int gen = generation.get();
+        int r = searchTree.indexOf(rootNode);
+        if (r == NONE) {
+            reset();
+            return pane;
+        }
+        SearchTree snapshot = searchTree.snapshot();
+        // the changes not drawn yet are part of the snapshot
+        nPending = 0;
+        nPendingCollapses = 0;
+        streaming = true;
+        if (worker == null) {
+            worker = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "search tree layout");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        background = worker.submit(() -> designInBackground(gen, snapshot, r));
+        return pane;
+    }
+
+    /**
+     * discard the layout computed in background, if any
+     */
+    private void cancelBackground() {
+        generation.incrementAndGet();
+        if (background != null) {
+            background.cancel(true);
+            background = null;
+        }
+        streaming = false;
+    }
+
+    private SearchTreeLayout newLayout() {
+        return new SearchTreeLayout(nodeWidth, nodeHeight, 3 * fontHeight, siblingSpacing, xLabelSpacing, this::textWidth);
+    }
+
+    /**
+     * lay out a snapshot of the search tree and create its shapes, handing them over to the application thread by chunks
+     * runs on the worker thread: the shapes are not attached to the scene until they reach the application thread
+     * @param gen generation of the update. The work stops as soon as a newer update is requested
+     * @param snapshot snapshot of the search tree
+     * @param r index of the root
+     */
+    private void designInBackground(int gen, SearchTree snapshot, int r) {
+        SearchTreeLayout backgroundLayout = newLayout();
+        backgroundLayout.layout(snapshot, r);
+        int n = snapshot.nNodes();
+        // breadth first order, skipping the nodes below collapsed nodes
+        int[] order = new int[n];
+        int nOrder = 0;
+        order[nOrder++] = r;
+        for (int i = 0; i < nOrder; ++i) {
+            int v = order[i];
+            if (!snapshot.isCollapsed(v))
+                for (int c = snapshot.firstChildOf(v); c != NONE; c = snapshot.nextSiblingOf(c))
+                    order[nOrder++] = c;
+        }
+        Group[] newGroups = new Group[n];
+        VisualTextRectangle[] newNodes = new VisualTextRectangle[n];
+        LabeledPath[] newBranches = new LabeledPath[n];
+        VisualTriangle[] newSummaries = new VisualTriangle[n];
+        for (int from = 0; from < nOrder; from += CHUNK_SIZE) {
+            if (generation.get() != gen || Thread.currentThread().isInterrupted())
+                return;
+            int to = Math.min(nOrder, from + CHUNK_SIZE);
+            for (int i = from; i < to; ++i) {
+                int v = order[i];
+                newGroups[v] = createGroup(backgroundLayout, v);
+                newNodes[v] = createNode(snapshot, backgroundLayout, v);
+                newGroups[v].getChildren().add(newNodes[v]);
+                if (v != r)
+                    newBranches[v] = new LabeledPath(xLabelSpacing, yLabelSpacing, snapshot.branchMessageOf(v),
+                            branchPoints(snapshot, backgroundLayout, v));
+                if (snapshot.isCollapsed(v)) {
+                    newSummaries[v] = createSummary(snapshot, backgroundLayout, v);
+                    newNodes[v].setVisible(false);
+                    newGroups[v].getChildren().add(newSummaries[v]);
+                }
+            }
+            int chunkFrom = from;
+            int chunkTo = to;
+            int total = nOrder;
+            Platform.runLater(() -> {
+                if (generation.get() != gen) // a newer update has been requested
+                    return;
+                if (chunkFrom == 0) { // replace the current drawing
+                    clearDrawing();
+                    layout = backgroundLayout;
+                    layout.setTree(searchTree);
+                    root = r;
+                    ensureCapacity(searchTree.nNodes());
+                }
+                for (int i = chunkFrom; i < chunkTo; ++i) {
+                    int v = order[i];
+                    groups[v] = newGroups[v];
+                    visualNodes[v] = newNodes[v];
+                    branches[v] = newBranches[v];
+                    summaries[v] = newSummaries[v];
+                    // the status may have changed since the snapshot
+                    visualNodes[v].setFill(fillOf(searchTree, v));
+                    if (summaries[v] != null)
+                        summaries[v].setFill(searchTree.summaryColorOf(v));
+                    if (v == r)
+                        pane.getChildren().add(groups[v]);
+                    else
+                        groups[searchTree.parentOf(v)].getChildren().addAll(groups[v], branches[v]);
+                }
+                if (chunkTo == total) {
+                    streaming = false;
+                    background = null;
+                    scheduleFlush();
+                    scheduleLod();
+                }
+            });
+        }
+    }
+
     public void reset() {
-        branches = new ArrayList<>();
-        visualNodes = new ArrayList<>();
+        clearDrawing();
+        root = NONE;
+        nPending = 0;
+        nPendingCollapses = 0;
+    }
+
+    private void clearDrawing() {
         pane.getChildren().clear();
+        Arrays.fill(groups, null);
+        Arrays.fill(visualNodes, null);
+        Arrays.fill(branches, null);
+        Arrays.fill(summaries, null);
+    }
+
+    private void ensureCapacity(int n) {
+        if (groups.length >= n)
+            return;
+        int capacity = Math.max(n, groups.length * 2);
+        groups = Arrays.copyOf(groups, capacity);
+        visualNodes = Arrays.copyOf(visualNodes, capacity);
+        branches = Arrays.copyOf(branches, capacity);
+        summaries = Arrays.copyOf(summaries, capacity);
+        lodState = Arrays.copyOf(lodState, capacity);
     }
 
     /**
-     * gives the maximum string width of a node
-     * @param node node whose max string width needs to be computed
-     * @return maximum string width, ceil rounded to the nearest int
+     * color the nodes either by status or by the worker of a parallel solver that created them
+     * only the nodes drawn from now on are affected
+     * @param colorByWorker true to color the nodes by worker
      */
-    public int getMaxStringWidth(SearchTreeNode<String> node) {
-        return (int) Math.ceil(new Text(node.getLabel()).getBoundsInLocal().getWidth());
+    public void setColorByWorker(boolean colorByWorker) {
+        this.colorByWorker = colorByWorker;
     }
 
     /**
-     * design the search tree using the information of a node
-     * recursively design the children of a node and center the parent between its children
-     * @param node node from which the tree should be designed
-     * @param level depth of the node. Used to compute the y values; needs levelHeight to be set to the desired offset
-     * @return design of the search tree:
-     *      hierarchy composed of a node (VisualTextRectangle), the branches and its children (same type of hierarchy)
+     * color the nodes through a function of their index, instead of their status or worker
+     * only the nodes drawn from now on are affected
+     * @param nodeColoring color of the node at each index, null to color the nodes by status again
      */
-    private GroupArea design(SearchTreeNode<String> node, int level) {
-        Shape placed = new Rectangle(); // area occupied by all children
-        System.out.println("design node " + node.getLabel());
-        GroupArea currentNode = new GroupArea();
-        int nBranches = 0;
-        double predOffset = .0;
-        for (SearchTreeNode<String> child : node.getSons()) {
-            GroupArea visualChild = design(child, level+1); // design the child
-            Shape childArea = visualChild.getArea(); // area of the current child
-            if (predOffset > .0) { // a branch has been placed before, the current node is at least on the right of it
-                visualChild.moveByX(predOffset);
-                childArea.setTranslateX(childArea.getTranslateX() + predOffset);
-            }
-            String branchLabel = node.getEdgeLabels().get(nBranches); // add the branch label, to be sure that there is enough place for it
-            if (branchLabel != null && !branchLabel.equals("")) {
-                Text text = new Text(childArea.getTranslateX() + xLabelSpacing, childArea.getTranslateY() + yLabelSpacing, branchLabel);
-                childArea = Shape.union(childArea, text);
+    public void setNodeColoring(IntFunction<Color> nodeColoring) {
+        this.nodeColoring = nodeColoring;
+    }
+
+    /**
+     * run the actions of the clicked nodes through an executor, off the JavaFX thread, instead of the actions stored
+     * in the search tree
+     * @param actionExecutor executor receiving the id of the clicked nodes, null to run the actions of the tree again
+     */
+    public void setActionExecutor(NodeActionExecutor<?> actionExecutor) {
+        this.actionExecutor = actionExecutor;
+    }
+
+    private void runAction(int node) {
+        if (actionExecutor != null)
+            actionExecutor.submit(node);
+        else
+            searchTree.runAction(node);
+    }
+
+    private Color fillOf(SearchTree tree, int index) {
+        if (nodeColoring != null)
+            return nodeColoring.apply(index);
+        return colorByWorker ? tree.workerColorOf(index) : tree.colorOf(tree.statusOf(index));
+    }
+
+    /**
+     * set the level of detail rule, deciding which subtrees are collapsed automatically
+     * the rule is applied again whenever the tree is zoomed or changed
+     * @param lodRule level of detail rule, null to stop collapsing subtrees automatically
+     */
+    public void setLodRule(LodRule lodRule) {
+        this.lodRule = lodRule;
+        scheduleLod();
+    }
+
+    private void scheduleLod() {
+        if (!lodScheduled && lodRule != null) {
+            lodScheduled = true;
+            Platform.runLater(this::applyLod);
+        }
+    }
+
+    /**
+     * collapse the drawn subtrees for which the level of detail rule holds, and expand the subtrees that were collapsed
+     * by the rule and for which it no longer holds
+     * only the nodes that are not hidden by a collapsed ancestor are visited
+     */
+    public void applyLod() {
+        lodScheduled = false;
+        if (lodRule == null || root == NONE)
+            return;
+        ensureCapacity(searchTree.nNodes());
+        double nodeSize = nodeWidth * pane.getScaleX();
+        int v = root;
+        while (v != NONE) {
+            if (lodState[v] != LOD_MANUAL) {
+                boolean collapse = lodRule.collapse(searchTree, v, nodeSize);
+                if (collapse && !searchTree.isCollapsed(v)) {
+                    lodState[v] = LOD_AUTO;
+                    searchTree.setCollapsed(v, true);
+                } else if (!collapse && searchTree.isCollapsed(v) && lodState[v] == LOD_AUTO) {
+                    lodState[v] = LOD_NONE;
+                    searchTree.setCollapsed(v, false);
+                }
             }
-            double valOffset = 0;
-            while (intersectArea(placed, childArea)) { // as long as the child intersects the current area
-                childArea.setTranslateX(childArea.getTranslateX() + offset); // move the child to prevent the intersection
-                valOffset += offset;
+            // next node in pre order, skipping the collapsed subtrees
+            int c = searchTree.isCollapsed(v) ? NONE : searchTree.firstChildOf(v);
+            if (c != NONE) {
+                v = c;
+                continue;
             }
-            if (valOffset != 0) {
-                visualChild.moveByX(valOffset); // effectively move the child
+            while (v != root && searchTree.nextSiblingOf(v) == NONE)
+                v = searchTree.parentOf(v);
+            v = v == root ? NONE : searchTree.nextSiblingOf(v);
+        }
+        // the subtrees collapsed or expanded are drawn again at the next pulse, through onCollapse
+    }
+
+    @Override
+    public void onBranch(int parent, int node) {
+        if (root == NONE && !streaming) { // the tree is drawn from scratch at the next pulse or update
+            if (incremental)
+                scheduleFlush();
+            return;
+        }
+        // when not incremental, the new nodes are only drawn at the next update, or along with a collapse, as their
+        // siblings are laid out again with them
+        if (nPending == pending.length)
+            pending = Arrays.copyOf(pending, nPending * 2);
+        pending[nPending++] = node;
+        if (incremental)
+            scheduleFlush();
+    }
+
+    @Override
+    public void onStatusChange(int node, int oldStatus, int newStatus) {
+        if (node < visualNodes.length && visualNodes[node] != null)
+            visualNodes[node].setFill(fillOf(searchTree, node));
+        // the collapsed ancestors summarize the status of the node
+        for (int v = node; v != NONE; v = searchTree.parentOf(v))
+            if (v < summaries.length && summaries[v] != null)
+                summaries[v].setFill(searchTree.summaryColorOf(v));
+        scheduleLod();
+    }
+
+    @Override
+    public void onCollapse(int node, boolean collapsed) {
+        if (root == NONE && !streaming)
+            return;
+        if (nPendingCollapses == pendingCollapses.length)
+            pendingCollapses = Arrays.copyOf(pendingCollapses, nPendingCollapses * 2);
+        pendingCollapses[nPendingCollapses++] = node;
+        scheduleFlush();
+    }
+
+    @Override
+    public void onClear() {
+        cancelBackground();
+        reset();
+        Arrays.fill(lodState, LOD_NONE);
+    }
+
+    @Override
+    public void onCompact() {
+        onClear();
+        scheduleFlush(); // the kept nodes are drawn again, at their new indices
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) { // coalesce all changes occurring before the next pulse
+            flushScheduled = true;
+            Platform.runLater(this::flush);
+        }
+    }
+
+    /**
+     * draw the nodes added and the subtrees collapsed or expanded since the last update,
+     * and move the subtrees whose position changed
+     */
+    private void flush() {
+        flushScheduled = false;
+        if (streaming) // the changes are drawn once the background layout is attached
+            return;
+        if (root == NONE) { // the tree may have been started since the last update
+            if (searchTree.indexOf(rootNode) != NONE)
+                update();
+            return;
+        }
+        if (nPending == 0 && nPendingCollapses == 0)
+            return;
+        ensureCapacity(searchTree.nNodes());
+        for (int i = 0; i < nPending; ++i) {
+            int node = pending[i];
+            int parent = searchTree.parentOf(node);
+            if (!layout.contains(parent)) // the node does not belong to the tree drawn
+                continue;
+            if (layout.contains(node)) // already added with the subtree of one of its ancestors
+                continue;
+            // the node may have been a root with its own children before being attached: its whole subtree is added
+            layout.addSubtree(node);
+            if (groups[parent] == null) // the node is hidden below a collapsed node, and drawn once expanded
+                continue;
+            LabeledPath branch = new LabeledPath(xLabelSpacing, yLabelSpacing, searchTree.branchMessageOf(node), branchPoints(node));
+            branches[node] = branch;
+            Group group = design(node);
+            if (searchTree.isCollapsed(parent)) {
+                group.setVisible(false);
+                branch.setVisible(false);
             }
-            predOffset = visualChild.getHeadVisualTextRectangleX() + visualChild.getTranslateX();
-            placed = Shape.union(placed, childArea); // merge the area of the child with the current occupied area
-
-            currentNode.getChildren().add(visualChild); // the group of the current node includes the children
-            nBranches++;
-        }
-        VisualTextRectangle currentDesign = new VisualTextRectangle(node.getLabel(), 50, 20);
-        currentDesign.setFill(node.getColor());
-
-        double xMax = Double.MIN_VALUE;
-        double xMin = Double.MAX_VALUE;
-        for (Node child : currentNode.getChildren()) { // try to place the parent in the middle of its children
-            if (child instanceof GroupArea) {
-                for (Node childVisual : ((GroupArea) child).getChildren()) {
-                    if (childVisual instanceof VisualTextRectangle) { // consider only this type of nodes as children
-                        xMax = Math.max(xMax, child.getTranslateX() + ((VisualTextRectangle) childVisual).getX() + ((VisualTextRectangle) childVisual).getWidth());
-                        xMin = Math.min(xMin, child.getTranslateX() + ((VisualTextRectangle) childVisual).getX());
-                    }
+            groups[parent].getChildren().addAll(group, branch);
+        }
+        nPending = 0;
+        for (int i = 0; i < nPendingCollapses; ++i) {
+            int node = pendingCollapses[i];
+            if (!layout.contains(node))
+                continue;
+            layout.invalidate(node);
+            if (groups[node] != null)
+                drawCollapse(node);
+        }
+        nPendingCollapses = 0;
+        layout.update();
+        // only the children of the nodes laid out again may have moved relative to their parent
+        for (int i = 0; i < layout.nUpdated(); ++i) {
+            for (int child = searchTree.firstChildOf(layout.updatedAt(i)); child != NONE; child = searchTree.nextSiblingOf(child)) {
+                if (groups[child] != null) {
+                    groups[child].setTranslateX(layout.getOffsetX(child));
+                    branches[child].setPoints(branchPoints(child));
                 }
             }
         }
-        double x;
-        if (xMax !=  Double.MIN_VALUE) //place the parent in the middle of its children
-            x = (xMax - xMin) / 2 + xMin - currentDesign.getWidth() / 2; // intermediate nodes are centered, not aligned with top left corner
-        else
-            x = 0;
-        currentDesign.moveTo(x, levelHeight[level]);
-
-        // draw the lines between the parent node and its children
-        Node[] branches = new Node[nBranches * 2];
-        nBranches = 0;
-        int i = 0;
-        for (Node child : currentNode.getChildren()) {
-            if (child instanceof GroupArea) {
-                for (Node childVisual : ((GroupArea) child).getChildren()) {
-                    if (childVisual instanceof VisualTextRectangle) {
-                        double startX = currentDesign.getCenterX();
-                        double startY = currentDesign.getY() + currentDesign.getHeight();
-                        double endX = ((VisualTextRectangle) childVisual).getCenterX() + child.getTranslateX();
-                        double endY = ((VisualTextRectangle) childVisual).getY();
-                        double intermediateY = (endY - startY) * (1./4) + startY;
-                        LabeledPath branch = new LabeledPath(5, -5, node.getEdgeLabels().get(nBranches++),
-                                startX, startY,
-                                startX, intermediateY,
-                                endX, intermediateY,
-                                endX, endY
-                        );
-                        branches[i++] = branch;
-                    }
+        groups[root].setTranslateX(layout.getOffsetX(root));
+        // the collapsed subtrees that changed need a new summary
+        for (int i = 0; i < layout.nUpdated(); ++i) {
+            int v = layout.updatedAt(i);
+            if (summaries[v] != null)
+                drawSummary(v);
+        }
+        scheduleLod();
+    }
+
+    /**
+     * hide the children of a collapsed node and draw its summary, or show the children of an expanded node
+     * the children of an expanded node are designed if they were never drawn
+     * @param index index of the node
+     */
+    private void drawCollapse(int index) {
+        boolean collapsed = searchTree.isCollapsed(index);
+        for (int child = searchTree.firstChildOf(index); child != NONE; child = searchTree.nextSiblingOf(child)) {
+            if (groups[child] == null) {
+                if (!collapsed) {
+                    LabeledPath branch = new LabeledPath(xLabelSpacing, yLabelSpacing, searchTree.branchMessageOf(child), branchPoints(child));
+                    branches[child] = branch;
+                    groups[index].getChildren().addAll(design(child), branch);
                 }
+            } else {
+                groups[child].setVisible(!collapsed);
+                branches[child].setVisible(!collapsed);
             }
         }
-        for (int j = 0; j < i ; ++j) {
-            currentNode.getChildren().add(branches[j]);
+        if (collapsed) {
+            drawSummary(index);
+        } else if (summaries[index] != null) {
+            groups[index].getChildren().remove(summaries[index]);
+            summaries[index] = null;
+            visualNodes[index].setVisible(true);
         }
-        // add event listener for the current node
-        currentDesign.setOnMousePressed((MouseEvent e) -> {
-            node.runAction();
-        });
-        currentNode.add(currentDesign); // the layout of the current node includes the node itself
-        return currentNode;
     }
 
     /**
-     * tell if 2 shapes intersects, using the bounds of the parent as criterion
-     * 2 shapes can consider as being intersecting even if they do not collide, as the bounds are used instead of the (maybe sparse) area
-     * this function is faster but less exact than intersectArea
-     * @param a first shape
-     * @param b second shape
-     * @return true if the shapes intersect
+     * replace the drawing of a collapsed node by a triangle summarizing its subtree
+     * @param index index of the collapsed node
+     */
+    private void drawSummary(int index) {
+        if (summaries[index] != null)
+            groups[index].getChildren().remove(summaries[index]);
+        VisualTriangle summary = createSummary(searchTree, layout, index);
+        summaries[index] = summary;
+        visualNodes[index].setVisible(false);
+        groups[index].getChildren().add(summary);
+    }
+
+    /**
+     * create the summary of a collapsed subtree, expanding it when clicked
+     * does not modify the current drawing, so that it can be called from a worker thread
+     */
+    private VisualTriangle createSummary(SearchTree tree, SearchTreeLayout layout, int index) {
+        VisualTriangle summary = new VisualTriangle(tree.nodeAt(index) + " (" + tree.subtreeSizeOf(index) + ")",
+                nodeWidth / 2., layout.getSummaryWidth(index), nodeHeight);
+        summary.setFill(tree.summaryColorOf(index));
+        summary.moveTo(0, layout.getY(index));
+        summary.setOnMousePressed((MouseEvent e) -> toggleCollapse(index));
+        return summary;
+    }
+
+    /**
+     * collapse or expand a node on behalf of the user
+     * only the ancestors of the node are laid out again, at the next pulse
+     * @param index index of the node
+     */
+    private void toggleCollapse(int index) {
+        lodState[index] = LOD_MANUAL;
+        searchTree.setCollapsed(index, !searchTree.isCollapsed(index));
+    }
+
+    /**
+     * gives the maximum string width of a node
+     * @param node node whose max string width needs to be computed
+     * @return maximum string width, ceil rounded to the nearest int
      */
-    private boolean intersectBounds(Shape a, Shape b) {
-        return a.getBoundsInParent().intersects(b.getBoundsInParent());
+    public int getMaxStringWidth(SearchTreeNode<String> node) {
+        return (int) Math.ceil(new Text(node.getLabel()).getBoundsInLocal().getWidth());
     }
 
     /**
-     * tell if 2 shapes intersects, using the exact area of the shapes as criterion
-     * this function is more exact but slower than intersectBounds
-     * @param a first shape
-     * @param b second shape
-     * @return true if the shapes intersect
+     * gives the width of a text once drawn
+     * the widths are cached as the same branch labels tend to appear many times within a search tree
+     * @param text text whose width needs to be computed
+     * @return width of the text
      */
-    private boolean intersectArea(Shape a, Shape b) {
-        Shape intersection = Shape.intersect(a, b);
-        double width = intersection.getBoundsInLocal().getWidth();
-        if (intersection instanceof Path) {
-            if (((Path) intersection).getElements().size() == 0)
-                return false;
+    private double textWidth(String text) {
+        return textWidths.computeIfAbsent(text, t -> new Text(t).getBoundsInLocal().getWidth());
+    }
+
+    /**
+     * design the search tree from a laid out node
+     * each node is drawn within a group translated by its offset relative to its parent, so that moving a group moves
+     * its whole subtree
+     * @param index index of the node from which the tree should be designed
+     * @return design of the search tree:
+     *      hierarchy composed of a node (VisualTextRectangle), the branches and its children (same type of hierarchy)
+     */
+    private Group design(int index) {
+        // visit the subtree in pre order, following the parent and sibling links: a node is attached to the group of
+        // its parent, designed before it
+        int v = index;
+        while (true) {
+            Group currentNode = drawNode(v);
+            if (v != index) {
+                // draw the line between the parent node and its child
+                LabeledPath branch = new LabeledPath(xLabelSpacing, yLabelSpacing, searchTree.branchMessageOf(v), branchPoints(v));
+                branches[v] = branch;
+                groups[searchTree.parentOf(v)].getChildren().addAll(currentNode, branch);
+            }
+            int child = NONE;
+            if (searchTree.isCollapsed(v)) // the children are designed once the node is expanded
+                drawSummary(v);
+            else
+                child = searchTree.firstChildOf(v);
+            if (child != NONE) {
+                v = child;
+                continue;
+            }
+            while (v != index && searchTree.nextSiblingOf(v) == NONE)
+                v = searchTree.parentOf(v);
+            if (v == index)
+                return groups[index];
+            v = searchTree.nextSiblingOf(v);
         }
-        return true;
+    }
+
+    /**
+     * create the group of a node, containing only the drawing of the node itself
+     * @param index index of the node
+     * @return group of the node, translated relative to its parent
+     */
+    private Group drawNode(int index) {
+        Group currentNode = createGroup(layout, index);
+        VisualTextRectangle currentDesign = createNode(searchTree, layout, index);
+        currentNode.getChildren().add(currentDesign); // the layout of the current node includes the node itself
+        groups[index] = currentNode;
+        visualNodes[index] = currentDesign;
+        return currentNode;
+    }
+
+    /**
+     * create the group of a node, translated relative to its parent
+     * does not modify the current drawing, so that it can be called from a worker thread
+     */
+    private Group createGroup(SearchTreeLayout layout, int index) {
+        Group currentNode = new Group();
+        currentNode.setTranslateX(layout.getOffsetX(index));
+        return currentNode;
+    }
+
+    /**
+     * create the drawing of a node, running its action when clicked and collapsing it when right-clicked
+     * does not modify the current drawing, so that it can be called from a worker thread
+     * @param tree search tree, or one of its snapshots, holding the node
+     * @param layout layout of the tree
+     * @param index index of the node
+     * @return drawing of the node
+     */
+    private VisualTextRectangle createNode(SearchTree tree, SearchTreeLayout layout, int index) {
+        VisualTextRectangle currentDesign = new VisualTextRectangle(Integer.toString(tree.nodeAt(index)), nodeWidth, nodeHeight);
+        currentDesign.setFill(fillOf(tree, index));
+        currentDesign.moveTo(0, layout.getY(index));
+        // add event listener for the current node
+        int node = tree.nodeAt(index);
+        currentDesign.setOnMousePressed((MouseEvent e) -> {
+            if (e.getButton() == MouseButton.SECONDARY)
+                toggleCollapse(index);
+            else
+                runAction(node);
+        });
+        return currentDesign;
+    }
+
+    private double[] branchPoints(int child) {
+        return branchPoints(searchTree, layout, child);
+    }
+
+    /**
+     * gives the points of the branch leading to a node, relative to the group of its parent
+     * @param tree search tree, or one of its snapshots, holding the node
+     * @param layout layout of the tree
+     * @param child index of the node
+     * @return x and y values for the branch
+     */
+    private double[] branchPoints(SearchTree tree, SearchTreeLayout layout, int child) {
+        double startX = nodeWidth / 2.;
+        double startY = layout.getY(tree.parentOf(child)) + nodeHeight;
+        double endX = layout.getOffsetX(child) + nodeWidth / 2.;
+        double endY = layout.getY(child);
+        double intermediateY = (endY - startY) * (1./4) + startY;
+        return new double[] {
+                startX, startY,
+                startX, intermediateY,
+                endX, intermediateY,
+                endX, endY
+        };
     }
 
     /**
@@ -0,0 +1,473 @@
+package org.cpvisu;
+
+import javafx.application.Platform;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextAlignment;
+import org.cpvisu.layout.SearchTreeLayout;
+import org.cpvisu.problems.SearchTree;
+import org.cpvisu.problems.SearchTreeListener;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.IntFunction;
+
+import static org.cpvisu.problems.SearchTree.NONE;
+
+/**
+ * visualisation of a search tree drawn into a canvas instead of the scene graph
+ * suited for very large trees: the nodes are indexed by depth and sorted by x coordinate, so that only the nodes
+ * within the viewport are drawn whenever the tree is moved (drag) or zoomed (scroll)
+ * clicking on a node runs its action, right-clicking on it collapses or expands its subtree
+ */
+public class VisualSearchTreeCanvas extends Pane implements SearchTreeListener {
+
+    private final SearchTree searchTree;
+    private final SearchTreeLayout layout;
+    private final Canvas canvas;
+    private final HashMap<String, Double> textWidths = new HashMap<>(); // width of the branch labels already measured
+    private final double nodeWidth = 50;      // width of a node
+    private final double nodeHeight = 20;     // height of a node
+    private final double siblingSpacing = 10; // minimum space between two nodes at the same depth
+    private final double xLabelSpacing = 5;   // space between a node and its label branch, in x values
+    private final double yLabelSpacing = -5;  // space between a node and its label branch, in y values
+    private final double levelHeight;         // y distance between two consecutive depths
+    private final double minTextHeight = 6;   // texts are only drawn if their height on screen is at least this value
+
+    private int root = NONE;            // index of the root currently drawn
+    private int rootNode = 0;           // id of the node drawn as root
+    // nodes sorted by depth, and by x coordinate for a given depth
+    private int[] levelStart = new int[2]; // nodes at depth d are within levelNodes[levelStart[d]..levelStart[d+1]-1]
+    private int[] levelNodes = new int[16];
+    private int nLevels = 0;
+    // transformation from the layout coordinates to the canvas: screen = layout * scale + translate
+    private double translateX = 0;
+    private double translateY = 0;
+    private double scale = 1;
+    private boolean centered = false;      // true once the tree has been centered within a sized canvas
+    private boolean colorByWorker = false; // if true, the nodes are colored by the worker that created them
+    private IntFunction<Color> nodeColoring = null; // if not null, gives the color of the nodes from their index
+    private NodeActionExecutor<?> actionExecutor = null; // if not null, runs the actions of the clicked nodes
+    // interactions
+    private double mouseAnchorX;
+    private double mouseAnchorY;
+    private boolean dragged;
+    // changes of the search tree not displayed yet
+    private int[] pending = new int[16];
+    private int nPending = 0;
+    private int[] pendingCollapses = new int[16];
+    private int nPendingCollapses = 0;
+    private boolean refreshScheduled = false;
+
+    public VisualSearchTreeCanvas(SearchTree searchTree) {
+        this.searchTree = searchTree;
+        double fontHeight = Math.ceil(new Text("").getBoundsInLocal().getHeight());
+        levelHeight = 3 * fontHeight;
+        layout = new SearchTreeLayout(nodeWidth, nodeHeight, levelHeight, siblingSpacing, xLabelSpacing, this::textWidth);
+        canvas = new Canvas();
+        canvas.setManaged(false);
+        getChildren().add(canvas);
+        registerInteractions();
+        searchTree.addListener(this);
+    }
+
+    /**
+     * lay out the whole search tree and draw it
+     */
+    public void update() {
+        root = searchTree.indexOf(rootNode);
+        nPending = 0;
+        nPendingCollapses = 0;
+        if (root != NONE) {
+            layout.layout(searchTree, root);
+            indexLevels();
+        }
+        if (!centered)
+            center();
+        else
+            redraw();
+    }
+
+    /**
+     * draw only the subtree of a node, or the whole tree again, centered within the canvas
+     * @param node id of the root of the subtree to draw, 0 to draw the whole tree
+     */
+    public void setRoot(int node) {
+        rootNode = node;
+        centered = false;
+        update();
+    }
+
+    /**
+     * place the root at the top of the canvas, centered horizontally, and reset the zoom
+     * if the canvas has not been sized yet, the tree is centered once it is
+     */
+    public void center() {
+        centered = getWidth() > 0 && root != NONE;
+        scale = 1;
+        translateY = nodeHeight;
+        translateX = root == NONE ? 0 : getWidth() / 2 - (layout.getX(root) + nodeWidth / 2);
+        redraw();
+    }
+
+    /**
+     * color the nodes either by status or by the worker of a parallel solver that created them
+     * @param colorByWorker true to color the nodes by worker
+     */
+    public void setColorByWorker(boolean colorByWorker) {
+        this.colorByWorker = colorByWorker;
+        redraw();
+    }
+
+    /**
+     * color the nodes through a function of their index, instead of their status or worker
+     * @param nodeColoring color of the node at each index, null to color the nodes by status again
+     */
+    public void setNodeColoring(IntFunction<Color> nodeColoring) {
+        this.nodeColoring = nodeColoring;
+        redraw();
+    }
+
+    /**
+     * run the actions of the clicked nodes through an executor, off the JavaFX thread, instead of the actions stored
+     * in the search tree
+     * @param actionExecutor executor receiving the id of the clicked nodes, null to run the actions of the tree again
+     */
+    public void setActionExecutor(NodeActionExecutor<?> actionExecutor) {
+        this.actionExecutor = actionExecutor;
+    }
+
+    private void runAction(int node) {
+        if (actionExecutor != null)
+            actionExecutor.submit(node);
+        else
+            searchTree.runAction(node);
+    }
+
+    private Color fillOf(int v) {
+        if (nodeColoring != null)
+            return nodeColoring.apply(v);
+        return colorByWorker ? searchTree.workerColorOf(v) : searchTree.colorOf(searchTree.statusOf(v));
+    }
+
+    private double textWidth(String text) {
+        return textWidths.computeIfAbsent(text, t -> new Text(t).getBoundsInLocal().getWidth());
+    }
+
+    /**
+     * sort the nodes by depth, and by x coordinates for the nodes of the same depth
+     * a pre order traversal visits the nodes of a given depth from left to right, so that a counting sort on the depth
+     * is enough
+     */
+    private void indexLevels() {
+        int n = searchTree.nNodes();
+        nLevels = layout.getMaxDepth() + 1;
+        if (levelStart.length < nLevels + 1)
+            levelStart = new int[nLevels + 1];
+        if (levelNodes.length < n)
+            levelNodes = new int[n];
+        Arrays.fill(levelStart, 0, nLevels + 1, 0);
+        for (int v = root; v != NONE; v = next(v))
+            levelStart[layout.getDepth(v) + 1]++;
+        for (int d = 0; d < nLevels; ++d)
+            levelStart[d + 1] += levelStart[d];
+        int[] position = Arrays.copyOf(levelStart, nLevels);
+        for (int v = root; v != NONE; v = next(v))
+            levelNodes[position[layout.getDepth(v)]++] = v;
+    }
+
+    /**
+     * gives the node following a node in pre order, within the subtree of the root
+     * the nodes below collapsed nodes are skipped
+     * @param v index of the current node
+     * @return index of the next node, NONE if v was the last node
+     */
+    private int next(int v) {
+        int c = searchTree.isCollapsed(v) ? NONE : searchTree.firstChildOf(v);
+        if (c != NONE)
+            return c;
+        while (v != root && searchTree.nextSiblingOf(v) == NONE)
+            v = searchTree.parentOf(v);
+        return v == root ? NONE : searchTree.nextSiblingOf(v);
+    }
+
+    /**
+     * gives the position of the first node of a depth whose x coordinate is at least x
+     * @param depth depth of the nodes
+     * @param x x coordinate, in the layout coordinates
+     * @return position of the node within levelNodes
+     */
+    private int firstNodeFrom(int depth, double x) {
+        int lo = levelStart[depth];
+        int hi = levelStart[depth + 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (layout.getX(levelNodes[mid]) < x)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    @Override
+    protected void layoutChildren() {
+        super.layoutChildren();
+        if (canvas.getWidth() != getWidth() || canvas.getHeight() != getHeight()) {
+            canvas.setWidth(getWidth());
+            canvas.setHeight(getHeight());
+            if (!centered)
+                center();
+            else
+                redraw();
+        }
+    }
+
+    /**
+     * draw the nodes and branches within the viewport
+     */
+    public void redraw() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setTransform(1, 0, 0, 1, 0, 0);
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        if (root == NONE || nLevels == 0)
+            return;
+        gc.setTransform(scale, 0, 0, scale, translateX, translateY);
+        // visible area, in the layout coordinates
+        double minX = -translateX / scale;
+        double maxX = (canvas.getWidth() - translateX) / scale;
+        double minY = -translateY / scale;
+        double maxY = (canvas.getHeight() - translateY) / scale;
+        // a node at depth d is drawn in [d * levelHeight, d * levelHeight + nodeHeight] and its branch comes from above
+        int firstLevel = Math.max(0, (int) Math.floor((minY - nodeHeight) / levelHeight));
+        int lastLevel = Math.min(nLevels - 1, (int) Math.ceil(maxY / levelHeight) + 1);
+        boolean drawText = nodeHeight * scale >= minTextHeight;
+        gc.setLineWidth(1 / scale);
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setTextBaseline(VPos.CENTER);
+        for (int d = firstLevel; d <= lastLevel; ++d) {
+            // the nodes right outside of the viewport are included, as their branches may cross it
+            // and no node is wider than the summary of the whole tree
+            int from = Math.max(levelStart[d], firstNodeFrom(d, minX - layout.getSummaryWidth(root)) - 1);
+            int to = Math.min(levelStart[d + 1], firstNodeFrom(d, maxX) + 1);
+            for (int i = from; i < to; ++i) {
+                int v = levelNodes[i];
+                if (d > 0)
+                    drawBranch(gc, v, drawText);
+                drawNode(gc, v, drawText);
+            }
+        }
+    }
+
+    private void drawNode(GraphicsContext gc, int v, boolean drawText) {
+        double x = layout.getX(v);
+        double y = layout.getY(v);
+        if (searchTree.isCollapsed(v)) {
+            drawSummary(gc, v, x, y, drawText);
+            return;
+        }
+        gc.setFill(fillOf(v));
+        gc.fillRoundRect(x, y, nodeWidth, nodeHeight, nodeWidth / 6, nodeHeight / 6);
+        if (drawText) {
+            gc.setStroke(Color.BLACK);
+            gc.strokeRoundRect(x, y, nodeWidth, nodeHeight, nodeWidth / 6, nodeHeight / 6);
+            gc.setFill(Color.BLACK);
+            gc.fillText(Integer.toString(searchTree.nodeAt(v)), x + nodeWidth / 2, y + nodeHeight / 2);
+        }
+    }
+
+    /**
+     * draw a collapsed node as a triangle sized by its number of nodes and colored by its ratio of successes
+     */
+    private void drawSummary(GraphicsContext gc, int v, double x, double y, boolean drawText) {
+        double width = layout.getSummaryWidth(v);
+        double[] xs = new double[] {x + nodeWidth / 2, x + width, x};
+        double[] ys = new double[] {y, y + nodeHeight, y + nodeHeight};
+        gc.setFill(searchTree.summaryColorOf(v));
+        gc.fillPolygon(xs, ys, 3);
+        if (drawText) {
+            gc.setStroke(Color.BLACK);
+            gc.strokePolygon(xs, ys, 3);
+            gc.setFill(Color.BLACK);
+            gc.fillText(searchTree.nodeAt(v) + " (" + searchTree.subtreeSizeOf(v) + ")", x + width / 2, y + nodeHeight * 3 / 4);
+        }
+    }
+
+    private void drawBranch(GraphicsContext gc, int v, boolean drawText) {
+        int p = searchTree.parentOf(v);
+        double startX = layout.getX(p) + nodeWidth / 2;
+        double startY = layout.getY(p) + nodeHeight;
+        double endX = layout.getX(v) + nodeWidth / 2;
+        double endY = layout.getY(v);
+        double intermediateY = (endY - startY) * (1./4) + startY;
+        gc.setStroke(Color.BLACK);
+        gc.strokePolyline(new double[] {startX, startX, endX, endX}, new double[] {startY, intermediateY, intermediateY, endY}, 4);
+        String label = searchTree.branchMessageOf(v);
+        if (drawText && label != null && !label.isEmpty()) {
+            gc.setFill(Color.BLACK);
+            gc.setTextAlign(TextAlignment.LEFT);
+            gc.setTextBaseline(VPos.BASELINE);
+            gc.fillText(label, endX + xLabelSpacing, endY + yLabelSpacing);
+            gc.setTextAlign(TextAlignment.CENTER);
+            gc.setTextBaseline(VPos.CENTER);
+        }
+    }
+
+    /**
+     * gives the node drawn at a given position of the canvas
+     * @param screenX x coordinate on the canvas
+     * @param screenY y coordinate on the canvas
+     * @return index of the node drawn at the position, NONE if no node is drawn there
+     */
+    public int nodeAt(double screenX, double screenY) {
+        if (root == NONE || nLevels == 0)
+            return NONE;
+        double x = (screenX - translateX) / scale;
+        double y = (screenY - translateY) / scale;
+        int d = (int) Math.floor(y / levelHeight);
+        if (d < 0 || d >= nLevels || y - d * levelHeight > nodeHeight)
+            return NONE;
+        // the node drawn at x is the last one starting before x, if it is wide enough
+        int i = firstNodeFrom(d, x) - 1;
+        if (i >= levelStart[d]) {
+            int v = levelNodes[i];
+            double width = searchTree.isCollapsed(v) ? layout.getSummaryWidth(v) : nodeWidth;
+            if (x <= layout.getX(v) + width)
+                return v;
+        }
+        return NONE;
+    }
+
+    /**
+     * move the tree on drag, zoom on scroll and run the action of a node when clicking on it
+     */
+    private void registerInteractions() {
+        setOnMousePressed((MouseEvent event) -> {
+            mouseAnchorX = event.getX();
+            mouseAnchorY = event.getY();
+            dragged = false;
+        });
+        setOnMouseDragged((MouseEvent event) -> {
+            if (event.isPrimaryButtonDown()) {
+                translateX += event.getX() - mouseAnchorX;
+                translateY += event.getY() - mouseAnchorY;
+                dragged |= Math.abs(event.getX() - mouseAnchorX) + Math.abs(event.getY() - mouseAnchorY) > 0;
+                mouseAnchorX = event.getX();
+                mouseAnchorY = event.getY();
+                redraw();
+            }
+        });
+        setOnMouseReleased((MouseEvent event) -> {
+            if (!dragged) {
+                int v = nodeAt(event.getX(), event.getY());
+                if (v == NONE)
+                    return;
+                if (event.getButton() == MouseButton.SECONDARY)
+                    searchTree.setCollapsed(v, !searchTree.isCollapsed(v));
+                else
+                    runAction(searchTree.nodeAt(v));
+            }
+        });
+        setOnScroll((ScrollEvent event) -> {
+            if (event.getDeltaY() == 0)
+                return;
+            double factor = event.getDeltaY() > 0 ? 1.2 : 1 / 1.2;
+            double newScale = Math.min(10, Math.max(1e-5, scale * factor));
+            // keep the point under the cursor at the same place
+            translateX = event.getX() - (event.getX() - translateX) * newScale / scale;
+            translateY = event.getY() - (event.getY() - translateY) * newScale / scale;
+            scale = newScale;
+            redraw();
+            event.consume();
+        });
+    }
+
+    @Override
+    public void onBranch(int parent, int node) {
+        if (root == NONE) { // the tree is drawn from scratch at the next pulse
+            scheduleRefresh();
+            return;
+        }
+        if (nPending == pending.length)
+            pending = Arrays.copyOf(pending, nPending * 2);
+        pending[nPending++] = node;
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onStatusChange(int node, int oldStatus, int newStatus) {
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onCollapse(int node, boolean collapsed) {
+        if (root == NONE)
+            return;
+        if (nPendingCollapses == pendingCollapses.length)
+            pendingCollapses = Arrays.copyOf(pendingCollapses, nPendingCollapses * 2);
+        pendingCollapses[nPendingCollapses++] = node;
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onClear() {
+        root = NONE;
+        centered = false;
+        nLevels = 0;
+        nPending = 0;
+        nPendingCollapses = 0;
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onCompact() {
+        // the kept nodes are laid out again at their new indices, without moving the view
+        root = NONE;
+        nLevels = 0;
+        nPending = 0;
+        nPendingCollapses = 0;
+        scheduleRefresh();
+    }
+
+    /**
+     * coalesce the changes of the search tree until the next pulse
+     */
+    private void scheduleRefresh() {
+        if (refreshScheduled)
+            return;
+        refreshScheduled = true;
+        Platform.runLater(this::refresh);
+    }
+
+    /**
+     * lay out the nodes added since the last refresh and draw the tree again
+     */
+    private void refresh() {
+        refreshScheduled = false;
+        if (root == NONE) { // the tree may have been started since the last update
+            update();
+            return;
+        }
+        if (root != NONE && nPending + nPendingCollapses > 0) {
+            for (int i = 0; i < nPending; ++i) // a node attached with its own children brings its whole subtree
+                if (layout.contains(searchTree.parentOf(pending[i])) && !layout.contains(pending[i]))
+                    layout.addSubtree(pending[i]);
+            for (int i = 0; i < nPendingCollapses; ++i)
+                if (layout.contains(pendingCollapses[i]))
+                    layout.invalidate(pendingCollapses[i]);
+            nPending = 0;
+            nPendingCollapses = 0;
+            layout.update();
+            indexLevels();
+        }
+        redraw();
+    }
+
+}
@@ -0,0 +1,206 @@
+package org.cpvisu.chart;
+
+import eu.hansolo.tilesfx.Tile;
+import eu.hansolo.tilesfx.TileBuilder;
+import eu.hansolo.tilesfx.chart.ChartData;
+import javafx.animation.Timeline;
+import javafx.geometry.Insets;
+import javafx.scene.chart.XYChart;
+import javafx.scene.layout.FlowPane;
+import org.cpvisu.problems.SearchTree;
+import org.cpvisu.problems.SearchTreeEstimator;
+import org.cpvisu.problems.SearchTreeStatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.cpvisu.AnimationFactory.loop;
+import static org.cpvisu.problems.SearchTree.*;
+
+/**
+ * dashboard of tiles giving the statistics of a search tree while it grows
+ *
+ * the tiles are refreshed at a fixed rate from a SearchTreeStatistics, whatever the number of changes occurring in the
+ * tree in between: the cost of the dashboard does not depend on the speed of the search
+ * the progress of the search is estimated by a SearchTreeEstimator
+ */
+public class SearchTreeDashboard extends FlowPane {
+
+    private static final double TILE_SIZE = 250;
+    private static final int MAX_BARS = 32;       // maximum number of bars in the histogram of the depths
+    private static final int MAX_POINTS = 100;    // maximum number of points in the chart of the solutions
+
+    private final SearchTree searchTree;
+    private final SearchTreeStatistics statistics;
+    private final SearchTreeEstimator estimator;
+    private final Timeline timeline;
+    private final Tile nodesTile;
+    private final Tile rateTile;
+    private final Tile progressTile;
+    private final Tile statusTile;
+    private final Tile depthTile;
+    private final Tile solutionsTile;
+    private final Tile deepestTile;
+    private final ChartData open;
+    private final ChartData successes;
+    private final ChartData failures;
+    private final XYChart.Series<String, Number> nodesPerDepth = new XYChart.Series<>();
+    private final XYChart.Series<String, Number> failuresPerDepth = new XYChart.Series<>();
+    private final XYChart.Series<String, Number> solutions = new XYChart.Series<>();
+    private int nSolutionsDrawn = 0;
+
+    /**
+     * create a dashboard over a search tree
+     * @param searchTree tree whose statistics are displayed
+     * @param period time between two refreshes of the tiles, in milliseconds
+     */
+    public SearchTreeDashboard(SearchTree searchTree, long period) {
+        this.searchTree = searchTree;
+        this.statistics = new SearchTreeStatistics(searchTree);
+        this.estimator = new SearchTreeEstimator(searchTree);
+        setHgap(5);
+        setVgap(5);
+        setPadding(new Insets(5));
+        nodesTile = TileBuilder.create().skinType(Tile.SkinType.NUMBER).prefSize(TILE_SIZE, TILE_SIZE)
+                .title("Nodes").decimals(0).description("explored").build();
+        rateTile = TileBuilder.create().skinType(Tile.SkinType.SPARK_LINE).prefSize(TILE_SIZE, TILE_SIZE)
+                .title("Nodes per second").decimals(0).averagingPeriod(60).build();
+        progressTile = TileBuilder.create().skinType(Tile.SkinType.CIRCULAR_PROGRESS).prefSize(TILE_SIZE, TILE_SIZE)
+                .title("Estimated progress").unit("%").decimals(0).minValue(0).maxValue(100).build();
+        open = new ChartData("Open", 0, searchTree.colorOf(INTERMEDIATE));
+        successes = new ChartData("Success", 0, searchTree.colorOf(SUCCESS));
+        failures = new ChartData("Failure", 0, searchTree.colorOf(FAILURE));
+        statusTile = TileBuilder.create().skinType(Tile.SkinType.DONUT_CHART).prefSize(TILE_SIZE, TILE_SIZE)
+                .title("Status of the nodes").chartData(open, successes, failures).build();
+        nodesPerDepth.setName("nodes");
+        failuresPerDepth.setName("failures");
+        depthTile = typedBuilder().skinType(Tile.SkinType.SMOOTHED_CHART).prefSize(2 * TILE_SIZE, TILE_SIZE)
+                .title("Nodes per depth").smoothing(false).chartType(Tile.ChartType.AREA)
+                .series(List.of(nodesPerDepth, failuresPerDepth)).build();
+        solutions.setName("solutions");
+        solutionsTile = typedBuilder().skinType(Tile.SkinType.SMOOTHED_CHART).prefSize(TILE_SIZE, TILE_SIZE)
+                .title("Solutions over time").smoothing(false).chartType(Tile.ChartType.LINE)
+                .series(List.of(solutions)).build();
+        deepestTile = TileBuilder.create().skinType(Tile.SkinType.TEXT).prefSize(TILE_SIZE, TILE_SIZE)
+                .title("Deepest path").textVisible(true).build();
+        getChildren().addAll(nodesTile, rateTile, progressTile, statusTile, solutionsTile, depthTile, deepestTile);
+        timeline = loop(period, this::refresh);
+        timeline.play();
+    }
+
+    /**
+     * @return tile builder whose methods taking series are not called on a raw type
+     */
+    private static TileBuilder<?> typedBuilder() {
+        return TileBuilder.create();
+    }
+
+    /**
+     * create a dashboard over a search tree, refreshed every second
+     * @param searchTree tree whose statistics are displayed
+     */
+    public SearchTreeDashboard(SearchTree searchTree) {
+        this(searchTree, 1000);
+    }
+
+    /**
+     * @return statistics displayed by the dashboard
+     */
+    public SearchTreeStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return estimator of the size of the tree used for the progress
+     */
+    public SearchTreeEstimator getEstimator() {
+        return estimator;
+    }
+
+    /**
+     * stop refreshing the dashboard and listening to the search tree
+     */
+    public void stop() {
+        timeline.stop();
+        searchTree.removeListener(statistics);
+        searchTree.removeListener(estimator);
+    }
+
+    /**
+     * update the tiles with the current statistics
+     */
+    public void refresh() {
+        nodesTile.setValue(statistics.nNodes());
+        rateTile.setValue(statistics.nodesPerSecond());
+        progressTile.setValue(100 * estimator.progress());
+        progressTile.setDescription(estimator.isComplete() ? "search complete"
+                : String.format("~%.0f nodes left (Knuth: %.0f nodes)", estimator.remaining(), estimator.knuthEstimate()));
+        open.setValue(statistics.nNodesOf(INTERMEDIATE));
+        successes.setValue(statistics.nNodesOf(SUCCESS));
+        failures.setValue(statistics.nNodesOf(FAILURE));
+        refreshDepths();
+        refreshSolutions();
+        int[] path = statistics.deepestPath();
+        StringBuilder text = new StringBuilder();
+        for (int i = Math.max(1, path.length - 6); i < path.length; ++i) { // last branches leading to the deepest node
+            String label = searchTree.branchMessageOf(path[i]);
+            text.append(label == null ? "-" : label).append('\n');
+        }
+        deepestTile.setDescription("depth " + statistics.maxDepth());
+        deepestTile.setText(text.toString());
+    }
+
+    /**
+     * draw the histogram of the depths, gathering consecutive depths into at most MAX_BARS bars
+     */
+    private void refreshDepths() {
+        int maxDepth = statistics.maxDepth();
+        int width = maxDepth / MAX_BARS + 1;
+        int nBars = maxDepth / width + 1;
+        for (int bar = 0; bar < nBars; ++bar) {
+            long nodes = 0;
+            long failed = 0;
+            for (int depth = bar * width; depth < (bar + 1) * width; ++depth) {
+                nodes += statistics.nodesAt(depth);
+                failed += statistics.failuresAt(depth);
+            }
+            String category = width == 1 ? String.valueOf(bar) : String.valueOf(bar * width);
+            setPoint(nodesPerDepth, bar, category, nodes);
+            setPoint(failuresPerDepth, bar, category, failed);
+        }
+        nodesPerDepth.getData().remove(nBars, nodesPerDepth.getData().size());
+        failuresPerDepth.getData().remove(nBars, failuresPerDepth.getData().size());
+    }
+
+    private static void setPoint(XYChart.Series<String, Number> series, int i, String category, Number value) {
+        if (i < series.getData().size() && series.getData().get(i).getXValue().equals(category))
+            series.getData().get(i).setYValue(value);
+        else if (i < series.getData().size())
+            series.getData().set(i, new XYChart.Data<>(category, value));
+        else
+            series.getData().add(new XYChart.Data<>(category, value));
+    }
+
+    /**
+     * add the solutions found since the last refresh to the chart of the solutions over time, one point per solution
+     * only the last MAX_POINTS solutions are drawn
+     */
+    private void refreshSolutions() {
+        int n = statistics.nSolutions();
+        if (n < nSolutionsDrawn) { // the tree has been cleared
+            solutions.getData().clear();
+            nSolutionsDrawn = 0;
+        }
+        if (n == nSolutionsDrawn)
+            return;
+        List<XYChart.Data<String, Number>> points = new ArrayList<>();
+        for (int k = Math.max(nSolutionsDrawn, n - MAX_POINTS); k < n; ++k)
+            points.add(new XYChart.Data<>(String.format("%.1fs", statistics.solutionTime(k)), k + 1));
+        nSolutionsDrawn = n;
+        solutions.getData().addAll(points);
+        int excess = solutions.getData().size() - MAX_POINTS;
+        if (excess > 0)
+            solutions.getData().remove(0, excess);
+    }
+
+}
@@ -0,0 +1,67 @@
+package org.cpvisu.examples;
+
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import org.cpvisu.VisualApplication;
+import org.cpvisu.VisualSearchTreeCanvas;
+import org.cpvisu.problems.SearchTree;
+import org.cpvisu.problems.SearchTreeDiff;
+
+import java.util.Random;
+
+/**
+ * comparison of the search trees of two runs whose failure rates differ slightly
+ * the nodes shared by both runs are gray, the ones only in the first run red and the ones only in the second run green
+ */
+public class DiffSearchTreeApplication extends VisualApplication {
+
+    int nNodes = 100000;
+
+    @Override
+    public Scene application(Stage stage) {
+        SearchTree first = randomSearch(0.10);
+        SearchTree second = randomSearch(0.11);
+        SearchTreeDiff diff = SearchTreeDiff.compare(first, second);
+        System.out.println(diff.nShared() + " shared nodes, " + diff.nOnlyLeft() + " only in the first run, "
+                + diff.nOnlyRight() + " only in the second run");
+        VisualSearchTreeCanvas visualSearchTree = new VisualSearchTreeCanvas(diff.getMerged());
+        visualSearchTree.setNodeColoring(diff::colorOf);
+        visualSearchTree.update();
+        Scene scene = new Scene(visualSearchTree, 1200, 600);
+        visualSearchTree.center();
+        return scene;
+    }
+
+    /**
+     * depth first search on a random binary tree, branching on the variable of the depth of a node
+     * @param failureRate probability for a node to fail
+     * @return search tree explored
+     */
+    private SearchTree randomSearch(double failureRate) {
+        SearchTree searchTree = new SearchTree();
+        Random random = new Random(42);
+        int[] open = new int[nNodes];
+        int[] depth = new int[nNodes];
+        int nOpen = 0;
+        open[nOpen++] = 0;
+        int count = 1;
+        while (count < nNodes && nOpen > 0) {
+            int parent = open[--nOpen];
+            for (int i = 0; i < 2 && count < nNodes; ++i) {
+                int node = count++;
+                depth[node] = depth[parent] + 1;
+                searchTree.addBranch(parent, node, null, "x" + depth[parent] + (i == 0 ? " = " : " != ") + 1);
+                if (random.nextDouble() < failureRate)
+                    searchTree.addFailure(node);
+                else
+                    open[nOpen++] = node;
+            }
+        }
+        return searchTree;
+    }
+
+    public static void main(String[] args) {
+        launch();
+    }
+
+}
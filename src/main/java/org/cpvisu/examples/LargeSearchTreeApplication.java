@@ -0,0 +1,91 @@
+package org.cpvisu.examples;
+
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.layout.BorderPane;
+import javafx.stage.Stage;
+import org.cpvisu.NodeActionExecutor;
+import org.cpvisu.VisualApplication;
+import org.cpvisu.VisualSearchTreeCanvas;
+import org.cpvisu.problems.LabelDictionary;
+import org.cpvisu.problems.SearchTree;
+import org.cpvisu.problems.SearchTreeTrail;
+
+import java.util.Random;
+
+/**
+ * random search tree with many nodes, drawn into a canvas
+ * clicking a node describes the path leading to it and the values of the variables at the node, restored from a trail
+ * and computed off the JavaFX thread
+ */
+public class LargeSearchTreeApplication extends VisualApplication {
+
+    int nNodes = 200000;
+    SearchTree searchTree;
+    VisualSearchTreeCanvas visualSearchTree;
+    SearchTreeTrail trail; // values of x and y at each node
+
+    @Override
+    public Scene application(Stage stage) {
+        searchTree = new SearchTree();
+        searchTree.getLabels().setVariableName(0, "x");
+        searchTree.getLabels().setVariableName(1, "y");
+        trail = new SearchTreeTrail(searchTree, new int[] {-1, -1});
+        Random random = new Random(42);
+        int[] open = new int[nNodes];
+        int nOpen = 0;
+        open[nOpen++] = 0;
+        int count = 1;
+        // depth first search: explores 2 branches from the last open node, until enough nodes are created
+        while (count < nNodes && nOpen > 0) {
+            int parent = open[--nOpen];
+            for (int i = 0; i < 2 && count < nNodes; ++i) {
+                int node = count++;
+                searchTree.addBranch(parent, node, i, LabelDictionary.EQ, parent % 10, () -> System.out.println("I'm node " + node));
+                trail.moveTo(parent);
+                trail.record(node, i, trail.valueOf(i), parent % 10);
+                if (random.nextDouble() < 0.9)
+                    open[nOpen++] = node;
+                else
+                    searchTree.addFailure(node);
+            }
+        }
+        visualSearchTree = new VisualSearchTreeCanvas(searchTree);
+        visualSearchTree.update();
+        Label description = new Label();
+        NodeActionExecutor<String> executor = new NodeActionExecutor<>(this::describe, description::setText);
+        executor.setErrorHandler((e, node) -> description.setText("node " + node + " cannot be described: " + e));
+        visualSearchTree.setActionExecutor(executor);
+        BorderPane root = new BorderPane(visualSearchTree);
+        root.setBottom(description);
+        Scene scene = new Scene(root, 1200, 600);
+        visualSearchTree.center();
+        return scene;
+    }
+
+    /**
+     * describe a node by the branches leading to it and the size of its subtree
+     * @param node id of the node
+     * @return description of the node, null if the computation has been cancelled
+     */
+    private String describe(int node) {
+        StringBuilder path = new StringBuilder();
+        int depth = 0;
+        for (int v = searchTree.indexOf(node); searchTree.parentOf(v) != SearchTree.NONE; v = searchTree.parentOf(v)) {
+            if (Thread.currentThread().isInterrupted())
+                return null;
+            if (depth++ < 10)
+                path.insert(0, " -> " + searchTree.branchMessageOf(v));
+        }
+        if (depth > 10)
+            path.insert(0, " ...");
+        trail.moveTo(node);
+        return "node " + node + " at depth " + depth + ", subtree of " + searchTree.subtreeSizeOf(searchTree.indexOf(node))
+                + " nodes, x = " + trail.valueOf(0) + ", y = " + trail.valueOf(1) + ":" + path;
+    }
+
+    public static void main(String[] args) {
+        launch();
+    }
+
+}
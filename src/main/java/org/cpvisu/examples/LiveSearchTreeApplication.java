@@ -0,0 +1,78 @@
+package org.cpvisu.examples;
+
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import org.cpvisu.VisualApplication;
+import org.cpvisu.VisualSearchTreeCanvas;
+import org.cpvisu.problems.SearchTree;
+import org.cpvisu.util.io.SearchTreeReceiver;
+import org.cpvisu.util.io.SearchTreeSender;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.Random;
+
+/**
+ * search tree received over a local socket while a stub solver explores it on another thread
+ */
+public class LiveSearchTreeApplication extends VisualApplication {
+
+    int nNodes = 500000;
+    SearchTree searchTree;
+    SearchTreeReceiver receiver;
+
+    @Override
+    public Scene application(Stage stage) {
+        searchTree = new SearchTree();
+        VisualSearchTreeCanvas visualSearchTree = new VisualSearchTreeCanvas(searchTree);
+        try {
+            receiver = SearchTreeReceiver.tcp(searchTree, 0);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        receiver.start();
+        SocketAddress address = receiver.getAddress();
+        Thread solver = new Thread(() -> solve(address), "stub solver");
+        solver.setDaemon(true);
+        solver.start();
+        stage.setOnCloseRequest(e -> receiver.close());
+        return new Scene(visualSearchTree, 1200, 600);
+    }
+
+    /**
+     * stub solver: depth first search on a random binary tree, sending every node to the receiver
+     * @param address address of the receiver
+     */
+    private void solve(SocketAddress address) {
+        Random random = new Random(42);
+        try (SearchTreeSender sender = new SearchTreeSender(address)) {
+            sender.start();
+            int[] open = new int[nNodes];
+            int nOpen = 0;
+            open[nOpen++] = 0;
+            int count = 1;
+            while (count < nNodes && nOpen > 0) {
+                int parent = open[--nOpen];
+                for (int i = 0; i < 2 && count < nNodes; ++i) {
+                    int node = count++;
+                    sender.branch(parent, node, (i == 0 ? "x = " : "x != ") + parent % 10);
+                    double r = random.nextDouble();
+                    if (r < 0.85)
+                        open[nOpen++] = node;
+                    else if (r < 0.99)
+                        sender.failure(node);
+                    else
+                        sender.solution(node);
+                }
+            }
+            sender.done();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void main(String[] args) {
+        launch();
+    }
+
+}
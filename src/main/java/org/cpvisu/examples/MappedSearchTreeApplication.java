@@ -0,0 +1,115 @@
+package org.cpvisu.examples;
+
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.layout.BorderPane;
+import javafx.stage.Stage;
+import org.cpvisu.VisualApplication;
+import org.cpvisu.VisualSearchTreeCanvas;
+import org.cpvisu.problems.MappedSearchTree;
+import org.cpvisu.problems.SearchTree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * search tree file opened through a memory mapping, of which only the top of a subtree is drawn
+ * clicking a node opens its subtree, only the pages of the file holding the nodes drawn being read
+ * the file to open is given as first argument. Without argument, a large random tree is written into a temporary file
+ */
+public class MappedSearchTreeApplication extends VisualApplication {
+
+    int nNodes = 1000000;   // number of nodes of the random tree
+    int nDrawn = 5000;      // maximum number of nodes drawn at once
+    MappedSearchTree mapped;
+    SearchTree searchTree;
+    VisualSearchTreeCanvas visualSearchTree;
+    Label description;
+
+    @Override
+    public Scene application(Stage stage) {
+        List<String> args = getParameters().getRaw();
+        try {
+            Path path = args.isEmpty() ? randomTreeFile() : Path.of(args.get(0));
+            mapped = MappedSearchTree.open(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        stage.setOnHidden(e -> {
+            try {
+                mapped.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        });
+        searchTree = new SearchTree();
+        visualSearchTree = new VisualSearchTreeCanvas(searchTree);
+        description = new Label();
+        BorderPane root = new BorderPane(visualSearchTree);
+        root.setBottom(description);
+        Scene scene = new Scene(root, 1200, 600);
+        if (mapped.nNodes() > 0) {
+            int first = 0;
+            while (mapped.parentOf(first) != SearchTree.NONE)
+                first = mapped.parentOf(first);
+            open(mapped.nodeAt(first));
+        }
+        return scene;
+    }
+
+    /**
+     * draw the top of the subtree of a node
+     * @param node id of the node, within the file
+     */
+    private void open(int node) {
+        searchTree.clear();
+        int index = mapped.indexOf(node);
+        int parent = mapped.parentOf(index) == SearchTree.NONE ? node : mapped.nodeAt(mapped.parentOf(index));
+        // the actions are run within a click: the tree is replaced once the click has been handled
+        int nLoaded = mapped.load(searchTree, node, nDrawn, child -> () -> Platform.runLater(() -> open(child)));
+        visualSearchTree.setRoot(node);
+        description.setText("node " + node + ": " + nLoaded + " nodes drawn out of " + mapped.nNodes()
+                + (parent == node ? "" : ", parent " + parent));
+    }
+
+    /**
+     * write a random search tree into a temporary file, deleted on exit
+     * @return path of the file
+     */
+    private Path randomTreeFile() throws IOException {
+        SearchTree tree = new SearchTree();
+        Random random = new Random(42);
+        int[] open = new int[nNodes];
+        int nOpen = 0;
+        open[nOpen++] = 0;
+        int count = 1;
+        while (count < nNodes && nOpen > 0) {
+            int parent = open[--nOpen];
+            for (int i = 0; i < 2 && count < nNodes; ++i) {
+                int node = count++;
+                tree.addBranch(parent, node, null, (i == 0 ? "x = " : "x != ") + parent % 10);
+                double r = random.nextDouble();
+                if (r < 0.9)
+                    open[nOpen++] = node;
+                else if (r < 0.99)
+                    tree.addFailure(node);
+                else
+                    tree.addSuccess(node);
+            }
+        }
+        Path path = Files.createTempFile("search-tree", ".cpvt");
+        path.toFile().deleteOnExit();
+        MappedSearchTree.write(tree, path);
+        return path;
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+
+}
@@ -0,0 +1,76 @@
+package org.cpvisu.examples;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import org.cpvisu.VisualApplication;
+import org.cpvisu.VisualSearchTreeCanvas;
+import org.cpvisu.problems.ConcurrentSearchTree;
+
+import java.util.Random;
+
+/**
+ * search tree explored by several workers at the same time, colored by worker
+ */
+public class ParallelSearchTreeApplication extends VisualApplication {
+
+    int nWorkers = 4;
+    int nNodesPerWorker = 50000;
+    ConcurrentSearchTree searchTree;
+
+    @Override
+    public Scene application(Stage stage) {
+        searchTree = new ConcurrentSearchTree();
+        VisualSearchTreeCanvas visualSearchTree = new VisualSearchTreeCanvas(searchTree.getSearchTree());
+        visualSearchTree.setColorByWorker(true);
+        for (int i = 0; i < nWorkers; ++i) {
+            Thread thread = new Thread(this::explore, "worker " + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        // merge the nodes found by the workers once per frame
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                searchTree.update();
+            }
+        }.start();
+        return new Scene(visualSearchTree, 1200, 600);
+    }
+
+    /**
+     * depth first search of a random binary tree, starting from a branch of the root
+     */
+    private void explore() {
+        ConcurrentSearchTree.Worker worker = searchTree.newWorker();
+        Random random = new Random(worker.getId());
+        int[] open = new int[nNodesPerWorker];
+        int nOpen = 0;
+        open[nOpen++] = worker.addBranch(0, "worker " + worker.getId());
+        for (int count = 1; count < nNodesPerWorker && nOpen > 0; ) {
+            int parent = open[--nOpen];
+            for (int i = 0; i < 2 && count < nNodesPerWorker; ++i, ++count) {
+                int node = worker.addBranch(parent, (i == 0 ? "x = " : "x != ") + parent % 10);
+                double r = random.nextDouble();
+                if (r < 0.85)
+                    open[nOpen++] = node;
+                else if (r < 0.99)
+                    worker.addFailure(node);
+                else
+                    worker.addSuccess(node);
+            }
+            if (count % 100 == 0) {
+                try {
+                    Thread.sleep(1); // slow down the exploration to see the tree growing
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        launch();
+    }
+
+}
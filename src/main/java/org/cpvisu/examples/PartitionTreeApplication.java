@@ -0,0 +1,69 @@
+package org.cpvisu.examples;
+
+import javafx.scene.Scene;
+import javafx.scene.control.ToggleButton;
+import javafx.scene.layout.BorderPane;
+import javafx.stage.Stage;
+import org.cpvisu.VisualApplication;
+import org.cpvisu.VisualPartitionTree;
+import org.cpvisu.chart.SearchTreeDashboard;
+import org.cpvisu.problems.SearchTree;
+
+import java.util.Random;
+
+import static org.cpvisu.AnimationFactory.animateForever;
+
+/**
+ * icicle and sunburst views of a random search, growing while it is displayed, next to a dashboard of its statistics
+ */
+public class PartitionTreeApplication extends VisualApplication {
+
+    int nNodes = 300000;
+    int[] open = new int[nNodes];
+    int nOpen = 0;
+    int count = 1;
+    Random random = new Random(42);
+    SearchTree searchTree;
+
+    @Override
+    public Scene application(Stage stage) {
+        searchTree = new SearchTree();
+        open[nOpen++] = 0;
+        VisualPartitionTree partitionTree = new VisualPartitionTree(searchTree);
+        ToggleButton sunburst = new ToggleButton("sunburst");
+        sunburst.setOnAction(e -> partitionTree.setSunburst(sunburst.isSelected()));
+        BorderPane root = new BorderPane(partitionTree);
+        root.setTop(sunburst);
+        SearchTreeDashboard dashboard = new SearchTreeDashboard(searchTree, 500);
+        dashboard.setPrefWrapLength(520);
+        root.setRight(dashboard);
+        animateForever(50, () -> explore(2000));
+        return new Scene(root, 1500, 800);
+    }
+
+    /**
+     * depth first search on a random binary tree
+     * @param nSteps number of nodes to explore before returning
+     */
+    private void explore(int nSteps) {
+        for (int step = 0; step < nSteps && count < nNodes && nOpen > 0; ++step) {
+            int parent = open[--nOpen];
+            for (int i = 0; i < 2 && count < nNodes; ++i) {
+                int node = count++;
+                searchTree.addBranch(parent, node, null, (i == 0 ? "x = " : "x != ") + parent % 10);
+                double r = random.nextDouble();
+                if (r < 0.55)
+                    open[nOpen++] = node;
+                else if (r < 0.995)
+                    searchTree.addFailure(node);
+                else
+                    searchTree.addSuccess(node);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        launch();
+    }
+
+}
@@ -0,0 +1,60 @@
+package org.cpvisu.examples;
+
+import javafx.geometry.Orientation;
+import javafx.scene.Scene;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.control.SplitPane;
+import javafx.stage.Stage;
+import org.cpvisu.VisualApplication;
+import org.cpvisu.VisualPixelTree;
+import org.cpvisu.VisualSearchTreeCanvas;
+import org.cpvisu.problems.SearchTree;
+
+import java.util.Random;
+
+/**
+ * pixel tree overview of a random search with a million nodes
+ * clicking a pixel draws the subtree of its node in the detailed view below
+ */
+public class PixelTreeApplication extends VisualApplication {
+
+    int nNodes = 1000000;
+
+    @Override
+    public Scene application(Stage stage) {
+        SearchTree searchTree = new SearchTree();
+        Random random = new Random(42);
+        int[] open = new int[nNodes];
+        int nOpen = 0;
+        open[nOpen++] = 0;
+        int count = 1;
+        // depth first search, exploring 2 branches from the last open node
+        while (count < nNodes && nOpen > 0) {
+            int parent = open[--nOpen];
+            for (int i = 0; i < 2 && count < nNodes; ++i) {
+                int node = count++;
+                searchTree.addBranch(parent, node, null, (i == 0 ? "x = " : "x != ") + parent % 10);
+                double r = random.nextDouble();
+                if (r < 0.6)
+                    open[nOpen++] = node;
+                else if (r < 0.999)
+                    searchTree.addFailure(node);
+                else
+                    searchTree.addSuccess(node);
+            }
+        }
+        VisualPixelTree pixelTree = new VisualPixelTree(searchTree);
+        pixelTree.update();
+        VisualSearchTreeCanvas detailed = new VisualSearchTreeCanvas(searchTree);
+        detailed.update();
+        pixelTree.setOnSelect(index -> detailed.setRoot(searchTree.nodeAt(index)));
+        SplitPane splitPane = new SplitPane(new ScrollPane(pixelTree), detailed);
+        splitPane.setOrientation(Orientation.VERTICAL);
+        return new Scene(splitPane, 1200, 800);
+    }
+
+    public static void main(String[] args) {
+        launch();
+    }
+
+}
@@ -0,0 +1,78 @@
+package org.cpvisu.examples;
+
+import javafx.scene.Group;
+import javafx.scene.Scene;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.Pane;
+import javafx.stage.Stage;
+import org.cpvisu.LodRule;
+import org.cpvisu.SearchTreePlayer;
+import org.cpvisu.VisualApplication;
+import org.cpvisu.VisualSearchTree;
+import org.cpvisu.problems.SearchTreeLog;
+import org.cpvisu.problems.SearchTreeReplay;
+
+import java.util.Random;
+
+import static org.cpvisu.AnimationFactory.moveOnDrag;
+import static org.cpvisu.AnimationFactory.zoomOnSCroll;
+import static org.cpvisu.problems.SearchTree.FAILURE;
+import static org.cpvisu.problems.SearchTree.SUCCESS;
+
+/**
+ * replay of a random search, that can be played, paused and sought through a timeline
+ */
+public class ReplaySearchTreeApplication extends VisualApplication {
+
+    int nNodes = 2000;
+
+    @Override
+    public Scene application(Stage stage) {
+        SearchTreeLog log = randomSearch();
+        SearchTreeReplay replay = new SearchTreeReplay(log, 200);
+        VisualSearchTree visualSearchTree = new VisualSearchTree(replay.getSearchTree(), true);
+        visualSearchTree.setLodRule(LodRule.failed().or(LodRule.zoomedOut(100)));
+        Group visual = visualSearchTree.update();
+        Pane pane = new Pane(visual);
+        moveOnDrag(pane, visual);
+        zoomOnSCroll(visual);
+        SearchTreePlayer player = new SearchTreePlayer(replay);
+        BorderPane root = new BorderPane(pane);
+        root.setBottom(player);
+        player.play();
+        return new Scene(root, 1200, 600);
+    }
+
+    /**
+     * depth first search on a random binary tree, taking a random time for each node
+     * @return log of the search
+     */
+    private SearchTreeLog randomSearch() {
+        SearchTreeLog log = new SearchTreeLog();
+        Random random = new Random(42);
+        int[] open = new int[nNodes];
+        int nOpen = 0;
+        open[nOpen++] = 0;
+        int count = 1;
+        long time = 0;
+        while (count < nNodes && nOpen > 0) {
+            int parent = open[--nOpen];
+            for (int i = 0; i < 2 && count < nNodes; ++i) {
+                int node = count++;
+                time += random.nextInt(20_000_000); // up to 20 ms per node
+                log.addBranch(time, parent, node, null, (i == 0 ? "x = " : "x != ") + parent % 10);
+                double r = random.nextDouble();
+                if (r < 0.8)
+                    open[nOpen++] = node;
+                else
+                    log.addStatus(time, node, r < 0.98 ? FAILURE : SUCCESS);
+            }
+        }
+        return log;
+    }
+
+    public static void main(String[] args) {
+        launch();
+    }
+
+}
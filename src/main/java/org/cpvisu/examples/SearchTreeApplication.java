@@ -4,6 +4,7 @@ import javafx.scene.Group;
 import javafx.scene.Scene;
 import javafx.scene.layout.Pane;
 import javafx.stage.Stage;
+import org.cpvisu.LodRule;
 import org.cpvisu.VisualApplication;
 import org.cpvisu.VisualSearchTree;
 import org.cpvisu.problems.SearchTree;
@@ -42,7 +43,8 @@ public class SearchTreeApplication extends VisualApplication {
          */
 
         autoGrowingTree();
-        visualSearchTree = new VisualSearchTree(searchTree);
+        visualSearchTree = new VisualSearchTree(searchTree, true);
+        visualSearchTree.setLodRule(LodRule.failed().or(LodRule.zoomedOut(100)));
         visual = visualSearchTree.update();
         Scene scene = new Scene(visual, 1200, 600);
         moveOnDrag(scene, visual);
@@ -0,0 +1,630 @@
+package org.cpvisu.layout;
+
+import org.cpvisu.problems.SearchTree;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+import static org.cpvisu.problems.SearchTree.NONE;
+
+/**
+ * tidy layout of a search tree, following Reingold-Tilford and Walker's algorithm
+ * in its linear time version (Buchheim, Junger and Leipert, 2002)
+ *
+ * each subtree is placed as close as possible to its left siblings by walking down the contours of the subtrees,
+ * and each parent is centered between its first and last child. The contours are followed through threads,
+ * so that the whole layout is computed in O(n) without building any shape
+ *
+ * each node occupies a box of fixed width. The label of the branch leading to a node is drawn next to it,
+ * and the horizontal extent of the node is the widest of its box and its branch label
+ * all values are stored in primitive arrays indexed by the index of the nodes in the search tree
+ *
+ * the layout can be maintained incrementally: when nodes are added, only the nodes on the paths from the new nodes
+ * to the root are invalidated. The placements of their children are undone top-down and redone bottom-up,
+ * while the subtrees that did not change keep their contours
+ *
+ * a collapsed node is placed as a leaf, whose box is widened according to the size of its subtree. The nodes below it
+ * are still laid out relative to each other, so that collapsing or expanding a node only invalidates its ancestors
+ */
+public class SearchTreeLayout {
+
+    private final double nodeWidth;     // width of the box of a node
+    private final double nodeHeight;    // height of the box of a node
+    private final double levelHeight;   // y distance between two consecutive depths
+    private final double gap;           // minimum x distance between two nodes at the same depth
+    private final double labelSpacing;  // x offset of a branch label with respect to the node it leads to
+    private final ToDoubleFunction<String> textWidth; // width of a text once drawn
+
+    private SearchTree tree;
+    private int root = NONE;
+    // values computed during the first walk (bottom-up)
+    private double[] prelim;    // preliminary x coordinate, relative to the parent
+    private double[] mod;       // shift applied to the whole subtree of a node, except the node itself
+    private double[] shift;     // pending shift of a subtree, applied when executing the shifts of its parent
+    private double[] change;    // pending change of the shift for the siblings between two moved subtrees
+    private double[] midpoint;  // x coordinate of a node, relative to its own subtree
+    private double[] extent;    // horizontal extent of a node, including its branch label
+    private int[] thread;       // next node on a contour, for nodes without children
+    private int[] ancestor;     // greatest uncommon ancestor used to distribute the shifts
+    private int[] ancestorStamp; // merge during which the ancestor was set. Older ancestors are ignored
+    private int[] number;       // position of a node among its siblings, starting at 1
+    private int[] leftSibling;  // previous sibling of a node
+    private boolean[] merged;   // true if the children of a node have been placed
+    private int[] layoutStamp;  // layout to which a node belongs
+    private int layoutId = 0;
+    // threads set while placing a node among its siblings, used to undo the placement
+    private int[] rightThreaded;        // node of the right contour whose thread was set
+    private double[] rightThreadedMod;  // modifier of that node before the thread was set
+    private int[] leftThreaded;         // node of the left contour whose thread was set
+    private double[] leftThreadedMod;   // modifier of that node before the thread was set
+    private int mergeStamp = 0;
+    // values computed during the second walk (top-down)
+    private double[] x;         // absolute x coordinate of the left side of the box of each node
+    private int[] depth;        // depth of each node
+    private int maxDepth;
+    private double width;       // width of the whole layout
+    private boolean positionsValid = false; // false if the absolute positions need to be computed again
+    // nodes invalidated since the last update
+    private int[] dirty = new int[16];
+    private long[] dirtyOrder = new long[16];   // dirty nodes sorted by depth
+    private int nDirty = 0;
+    private boolean updated = false; // true if the dirty nodes are the ones from the last update
+    private int[] dirtyStamp;   // update during which a node was invalidated
+    private int updateStamp = 1;
+
+    /**
+     * create a tree layout
+     * @param nodeWidth width of the box of a node
+     * @param nodeHeight height of the box of a node
+     * @param levelHeight y distance between two consecutive depths
+     * @param gap minimum x distance between two nodes at the same depth
+     * @param labelSpacing x offset of a branch label with respect to the node it leads to
+     * @param textWidth gives the width of a text once drawn
+     */
+    public SearchTreeLayout(double nodeWidth, double nodeHeight, double levelHeight, double gap, double labelSpacing,
+                            ToDoubleFunction<String> textWidth) {
+        this.nodeWidth = nodeWidth;
+        this.nodeHeight = nodeHeight;
+        this.levelHeight = levelHeight;
+        this.gap = gap;
+        this.labelSpacing = labelSpacing;
+        this.textWidth = textWidth;
+        allocate(16);
+    }
+
+    private void allocate(int capacity) {
+        prelim = new double[capacity];
+        mod = new double[capacity];
+        shift = new double[capacity];
+        change = new double[capacity];
+        midpoint = new double[capacity];
+        extent = new double[capacity];
+        x = new double[capacity];
+        thread = new int[capacity];
+        ancestor = new int[capacity];
+        ancestorStamp = new int[capacity];
+        number = new int[capacity];
+        leftSibling = new int[capacity];
+        merged = new boolean[capacity];
+        layoutStamp = new int[capacity];
+        rightThreaded = new int[capacity];
+        rightThreadedMod = new double[capacity];
+        leftThreaded = new int[capacity];
+        leftThreadedMod = new double[capacity];
+        depth = new int[capacity];
+        dirtyStamp = new int[capacity];
+    }
+
+    /**
+     * ensure that the arrays can hold the nodes of the tree, keeping the values already computed
+     */
+    private void ensureCapacity(int n) {
+        if (prelim.length >= n)
+            return;
+        int capacity = Math.max(n, prelim.length * 2);
+        prelim = Arrays.copyOf(prelim, capacity);
+        mod = Arrays.copyOf(mod, capacity);
+        shift = Arrays.copyOf(shift, capacity);
+        change = Arrays.copyOf(change, capacity);
+        midpoint = Arrays.copyOf(midpoint, capacity);
+        extent = Arrays.copyOf(extent, capacity);
+        x = Arrays.copyOf(x, capacity);
+        thread = Arrays.copyOf(thread, capacity);
+        ancestor = Arrays.copyOf(ancestor, capacity);
+        ancestorStamp = Arrays.copyOf(ancestorStamp, capacity);
+        number = Arrays.copyOf(number, capacity);
+        leftSibling = Arrays.copyOf(leftSibling, capacity);
+        merged = Arrays.copyOf(merged, capacity);
+        layoutStamp = Arrays.copyOf(layoutStamp, capacity);
+        rightThreaded = Arrays.copyOf(rightThreaded, capacity);
+        rightThreadedMod = Arrays.copyOf(rightThreadedMod, capacity);
+        leftThreaded = Arrays.copyOf(leftThreaded, capacity);
+        leftThreadedMod = Arrays.copyOf(leftThreadedMod, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+        dirtyStamp = Arrays.copyOf(dirtyStamp, capacity);
+    }
+
+    /**
+     * compute the position of every node in the subtree rooted at a node
+     * @param tree search tree to lay out
+     * @param root index of the node from which the tree is laid out
+     */
+    public void layout(SearchTree tree, int root) {
+        this.tree = tree;
+        this.root = root;
+        if (prelim.length < tree.nNodes())
+            allocate(Math.max(tree.nNodes(), prelim.length * 2));
+        nDirty = 0;
+        updated = false;
+        updateStamp++;
+        layoutId++;
+        depth[root] = 0;
+        firstWalk(root);
+        prelim[root] = midpoint[root];
+        mod[root] = 0;
+        secondWalk();
+    }
+
+    /**
+     * change the tree from which the layout is maintained, keeping the positions already computed
+     * used to continue in the current tree a layout computed on one of its snapshots
+     * @param tree search tree holding the nodes laid out, at the same indices
+     */
+    public void setTree(SearchTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * register a node that has been added to the tree since the last layout, together with its subtree
+     * the node may have been a root with its own children before being attached to its parent
+     * its position is only computed once update() is called
+     * @param index index of the new node. Its parent must belong to the layout
+     */
+    public void addSubtree(int index) {
+        ensureCapacity(tree.nNodes());
+        depth[index] = depth[tree.parentOf(index)] + 1;
+        firstWalk(index);
+        invalidate(tree.parentOf(index));
+    }
+
+    /**
+     * invalidate the placement of the children of a node, and the placement of all its ancestors
+     * @param index index of the node whose children changed
+     */
+    public void invalidate(int index) {
+        if (updated) { // start a new set of invalidated nodes
+            nDirty = 0;
+            updated = false;
+        }
+        for (int v = index; v != NONE && dirtyStamp[v] != updateStamp; v = tree.parentOf(v)) {
+            dirtyStamp[v] = updateStamp;
+            if (nDirty == dirty.length) {
+                dirty = Arrays.copyOf(dirty, nDirty * 2);
+                dirtyOrder = Arrays.copyOf(dirtyOrder, nDirty * 2);
+            }
+            dirty[nDirty++] = v;
+            if (v == root)
+                break;
+        }
+        positionsValid = false;
+    }
+
+    /**
+     * recompute the placement of the invalidated nodes
+     * the placements are undone from the root down to the deepest invalidated nodes, as the threads set while placing
+     * a node may lie anywhere within its subtree, and are then redone from the deepest nodes up to the root
+     * the invalidated nodes can be retrieved through nUpdated() and updatedAt() until the next update
+     */
+    public void update() {
+        for (int i = 0; i < nDirty; ++i)
+            dirtyOrder[i] = ((long) depth[dirty[i]] << 32) | dirty[i];
+        Arrays.sort(dirtyOrder, 0, nDirty);
+        for (int i = 0; i < nDirty; ++i)
+            undoMerge((int) dirtyOrder[i]);
+        for (int i = nDirty - 1; i >= 0; --i) {
+            int v = (int) dirtyOrder[i];
+            dirty[nDirty - 1 - i] = v;
+            extent[v] = extentOf(v); // the node may have been collapsed, or its collapsed subtree may have grown
+            if (firstChild(v) == NONE)
+                midpoint[v] = 0;
+            else
+                merge(v);
+        }
+        prelim[root] = midpoint[root];
+        mod[root] = 0;
+        updateStamp++;
+        updated = true;
+    }
+
+    /**
+     * @return number of nodes whose children have been placed again during the last update
+     */
+    public int nUpdated() {
+        return nDirty;
+    }
+
+    /**
+     * gives a node whose children have been placed again during the last update
+     * the offsets of the children of such nodes may have changed
+     * @param i number of the node, in [0, nUpdated())
+     * @return index of the node
+     */
+    public int updatedAt(int i) {
+        return dirty[i];
+    }
+
+    /**
+     * remove the threads that were set when placing the children of a node
+     */
+    private void undoMerge(int v) {
+        if (!merged[v])
+            return;
+        for (int w = tree.firstChildOf(v); w != NONE; w = tree.nextSiblingOf(w)) {
+            if (rightThreaded[w] != NONE) {
+                thread[rightThreaded[w]] = NONE;
+                mod[rightThreaded[w]] = rightThreadedMod[w];
+                rightThreaded[w] = NONE;
+            }
+            if (leftThreaded[w] != NONE) {
+                thread[leftThreaded[w]] = NONE;
+                mod[leftThreaded[w]] = leftThreadedMod[w];
+                leftThreaded[w] = NONE;
+            }
+        }
+        merged[v] = false;
+    }
+
+    /**
+     * compute the preliminary positions, visiting the nodes in post order
+     * @param top root of the subtree to lay out, whose depth is set
+     */
+    private void firstWalk(int top) {
+        int v = descend(top);
+        while (true) {
+            if (firstChild(v) == NONE)
+                midpoint[v] = 0;
+            else
+                merge(v);
+            if (v == top)
+                break;
+            int sibling = tree.nextSiblingOf(v);
+            if (sibling != NONE) {
+                depth[sibling] = depth[v];
+                v = descend(sibling);
+            } else {
+                v = tree.parentOf(v);
+            }
+        }
+    }
+
+    /**
+     * go down to the leftmost leaf of a subtree, initializing the nodes encountered
+     * the nodes below collapsed nodes are visited as well, so that they are ready once expanded
+     * @param v root of the subtree, whose depth is set
+     * @return leftmost leaf of the subtree
+     */
+    private int descend(int v) {
+        init(v);
+        for (int c = tree.firstChildOf(v); c != NONE; c = tree.firstChildOf(v)) {
+            depth[c] = depth[v] + 1;
+            v = c;
+            init(v);
+        }
+        return v;
+    }
+
+    private void init(int v) {
+        thread[v] = NONE;
+        merged[v] = false;
+        rightThreaded[v] = NONE;
+        leftThreaded[v] = NONE;
+        layoutStamp[v] = layoutId;
+        extent[v] = extentOf(v);
+    }
+
+    /**
+     * gives the horizontal extent of a node: the widest of its box, its branch label and its summary if collapsed
+     */
+    private double extentOf(int v) {
+        String label = tree.branchMessageOf(v);
+        double e = label == null || label.isEmpty() ? nodeWidth
+                : Math.max(nodeWidth, labelSpacing + textWidth.applyAsDouble(label));
+        return tree.isCollapsed(v) ? Math.max(e, getSummaryWidth(v)) : e;
+    }
+
+    /**
+     * @return first child of a node once laid out, NONE if the node is a leaf or is collapsed
+     */
+    private int firstChild(int v) {
+        return tree.isCollapsed(v) ? NONE : tree.firstChildOf(v);
+    }
+
+    /**
+     * @return last child of a node once laid out, NONE if the node is a leaf or is collapsed
+     */
+    private int lastChild(int v) {
+        return tree.isCollapsed(v) ? NONE : tree.lastChildOf(v);
+    }
+
+    /**
+     * place the children of a node next to each other and center the node above them
+     * the subtrees of the children must have been laid out
+     * @param v node whose children are placed
+     */
+    private void merge(int v) {
+        mergeStamp++;
+        merged[v] = true;
+        int defaultAncestor = tree.firstChildOf(v);
+        int left = NONE;
+        int k = 0;
+        for (int w = tree.firstChildOf(v); w != NONE; w = tree.nextSiblingOf(w)) {
+            number[w] = ++k;
+            leftSibling[w] = left;
+            shift[w] = 0;
+            change[w] = 0;
+            if (left == NONE) {
+                prelim[w] = midpoint[w];
+                mod[w] = 0;
+            } else {
+                prelim[w] = prelim[left] + extent[left] + gap;
+                mod[w] = firstChild(w) == NONE ? 0 : prelim[w] - midpoint[w];
+                defaultAncestor = apportion(w, left, defaultAncestor);
+            }
+            left = w;
+        }
+        executeShifts(v);
+        int first = tree.firstChildOf(v);
+        int last = tree.lastChildOf(v);
+        midpoint[v] = (prelim[first] + prelim[last] + nodeWidth) / 2 - nodeWidth / 2;
+    }
+
+    /**
+     * push the subtree of a node to the right until it no longer overlaps the subtrees of its left siblings
+     * @param v node whose subtree is placed
+     * @param w left sibling of the node
+     * @param defaultAncestor ancestor used to distribute the shift if no better one is found
+     * @return default ancestor for the next sibling
+     */
+    private int apportion(int v, int w, int defaultAncestor) {
+        int vip = v;                                        // inside right contour
+        int vop = v;                                        // outside right contour
+        int vim = w;                                        // inside left contour
+        int vom = tree.firstChildOf(tree.parentOf(v));      // outside left contour
+        double sip = mod[vip];
+        double sop = mod[vop];
+        double sim = mod[vim];
+        double som = mod[vom];
+        while (nextRight(vim) != NONE && nextLeft(vip) != NONE) {
+            vim = nextRight(vim);
+            vip = nextLeft(vip);
+            vom = nextLeft(vom);
+            vop = nextRight(vop);
+            ancestor[vop] = v;
+            ancestorStamp[vop] = mergeStamp;
+            double s = (prelim[vim] + sim) - (prelim[vip] + sip) + extent[vim] + gap;
+            if (s > 0) {
+                moveSubtree(ancestor(vim, v, defaultAncestor), v, s);
+                sip += s;
+                sop += s;
+            }
+            sim += mod[vim];
+            sip += mod[vip];
+            som += mod[vom];
+            sop += mod[vop];
+        }
+        if (nextRight(vim) != NONE && nextRight(vop) == NONE) {
+            rightThreaded[v] = vop;
+            rightThreadedMod[v] = mod[vop];
+            thread[vop] = nextRight(vim);
+            mod[vop] += sim - sop;
+        }
+        if (nextLeft(vip) != NONE && nextLeft(vom) == NONE) {
+            leftThreaded[v] = vom;
+            leftThreadedMod[v] = mod[vom];
+            thread[vom] = nextLeft(vip);
+            mod[vom] += sip - som;
+            defaultAncestor = v;
+        }
+        return defaultAncestor;
+    }
+
+    private int nextLeft(int v) {
+        int c = firstChild(v);
+        return c != NONE ? c : thread[v];
+    }
+
+    private int nextRight(int v) {
+        int c = lastChild(v);
+        return c != NONE ? c : thread[v];
+    }
+
+    /**
+     * gives the sibling of v that is an ancestor of vim, if it exists
+     */
+    private int ancestor(int vim, int v, int defaultAncestor) {
+        int a = ancestorStamp[vim] == mergeStamp ? ancestor[vim] : vim;
+        return tree.parentOf(a) == tree.parentOf(v) ? a : defaultAncestor;
+    }
+
+    private void moveSubtree(int wm, int wp, double s) {
+        int subtrees = number[wp] - number[wm];
+        change[wp] -= s / subtrees;
+        shift[wp] += s;
+        change[wm] += s / subtrees;
+        prelim[wp] += s;
+        mod[wp] += s;
+    }
+
+    /**
+     * spread the shifts of the subtrees over the siblings in between them
+     */
+    private void executeShifts(int v) {
+        double s = 0;
+        double c = 0;
+        for (int w = tree.lastChildOf(v); w != NONE; w = leftSibling[w]) {
+            prelim[w] += s;
+            mod[w] += s;
+            c += change[w];
+            s += shift[w] + c;
+        }
+    }
+
+    /**
+     * compute the absolute positions, visiting the nodes in pre order
+     */
+    private void secondWalk() {
+        x[root] = prelim[root];
+        depth[root] = 0;
+        double minX = x[root];
+        double maxX = x[root] + extent[root];
+        maxDepth = 0;
+        int v = root;
+        while (true) {
+            int c = firstChild(v);
+            if (c != NONE) {
+                // x - prelim gives the sum of the modifiers of the ancestors
+                double offset = x[v] - prelim[v] + mod[v];
+                for (int w = c; w != NONE; w = tree.nextSiblingOf(w)) {
+                    x[w] = prelim[w] + offset;
+                    minX = Math.min(minX, x[w]);
+                    maxX = Math.max(maxX, x[w] + extent[w]);
+                }
+                maxDepth = Math.max(maxDepth, depth[v] + 1);
+                v = c;
+                continue;
+            }
+            while (v != root && tree.nextSiblingOf(v) == NONE)
+                v = tree.parentOf(v);
+            if (v == root)
+                break;
+            v = tree.nextSiblingOf(v);
+        }
+        // the leftmost node is placed at x = 0
+        v = root;
+        while (true) {
+            x[v] -= minX;
+            int c = firstChild(v);
+            if (c != NONE) {
+                v = c;
+                continue;
+            }
+            while (v != root && tree.nextSiblingOf(v) == NONE)
+                v = tree.parentOf(v);
+            if (v == root)
+                break;
+            v = tree.nextSiblingOf(v);
+        }
+        width = maxX - minX;
+        positionsValid = true;
+    }
+
+    /**
+     * gives the smallest x coordinate of the layout, relative to the root, by following its left contour
+     */
+    private double leftContour() {
+        double min = 0;
+        double s = 0; // sum of the modifiers of the ancestors of the current node on the contour
+        for (int v = root; v != NONE; v = nextLeft(v)) {
+            min = Math.min(min, prelim[v] + s - prelim[root]);
+            s += mod[v];
+        }
+        return min;
+    }
+
+    /**
+     * @param index index of a node
+     * @return true if the node belongs to the current layout
+     */
+    public boolean contains(int index) {
+        return root != NONE && index < layoutStamp.length && layoutStamp[index] == layoutId;
+    }
+
+    /**
+     * gives the width of the summary drawn for the subtree of a node once collapsed
+     * the width grows logarithmically with the number of nodes in the subtree
+     * @param index index of a node
+     * @return width of the summary
+     */
+    public double getSummaryWidth(int index) {
+        return nodeWidth * (1 + Math.log10(tree.subtreeSizeOf(index)));
+    }
+
+    /**
+     * @param index index of a node laid out
+     * @return x coordinate of the left side of the box of the node
+     */
+    public double getX(int index) {
+        if (!positionsValid)
+            secondWalk();
+        return x[index];
+    }
+
+    /**
+     * @param index index of a node laid out
+     * @return y coordinate of the top side of the box of the node
+     */
+    public double getY(int index) {
+        return depth[index] * levelHeight;
+    }
+
+    /**
+     * @param index index of a node laid out
+     * @return x coordinate of the node, relative to the x coordinate of its parent
+     */
+    public double getOffsetX(int index) {
+        if (index == root)
+            return -leftContour();
+        int p = tree.parentOf(index);
+        return prelim[index] + mod[p] - prelim[p];
+    }
+
+    /**
+     * @param index index of a node laid out
+     * @return depth of the node, relative to the root of the layout
+     */
+    public int getDepth(int index) {
+        return depth[index];
+    }
+
+    public int getMaxDepth() {
+        if (!positionsValid)
+            secondWalk();
+        return maxDepth;
+    }
+
+    public double getNodeWidth() {
+        return nodeWidth;
+    }
+
+    public double getNodeHeight() {
+        return nodeHeight;
+    }
+
+    public double getLevelHeight() {
+        return levelHeight;
+    }
+
+    /**
+     * @return width of the whole layout, including the branch labels
+     */
+    public double getWidth() {
+        if (!positionsValid)
+            secondWalk();
+        return width;
+    }
+
+    /**
+     * @return height of the whole layout
+     */
+    public double getHeight() {
+        return getMaxDepth() * levelHeight + nodeHeight;
+    }
+
+    /**
+     * @return index of the node from which the last layout was computed, NONE if no layout was computed
+     */
+    public int getRoot() {
+        return root;
+    }
+
+}
@@ -0,0 +1,284 @@
+package org.cpvisu.problems;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.cpvisu.problems.SearchTree.*;
+
+/**
+ * search tree built concurrently by the workers of a parallel solver
+ *
+ * each worker appends its events (branches and status changes) to its own buffer, without any lock: a buffer has a
+ * single writer, its worker, and a single reader, the thread merging the buffers. The ids of the nodes can be
+ * allocated atomically through newNode(), so that workers never need to agree on them
+ *
+ * the merging thread (typically the application thread, once per frame) calls update() to append the events published
+ * since the last call into a regular SearchTree, and gets a version number telling if the tree changed. The workers
+ * are never blocked while merging, and the merged tree can be drawn as any other SearchTree. Each merged node records
+ * the worker that created it
+ *
+ * the events that cannot be merged (branches creating a cycle or re-attaching a node, statuses of nodes never added)
+ * are dropped and handed over to an error handler
+ */
+public class ConcurrentSearchTree {
+
+    private static final int CHUNK_SIZE = 4096;  // number of events in a chunk of a buffer
+    private static final byte BRANCH = 0;
+
+    private final AtomicInteger nextNode = new AtomicInteger(1); // the root is the node 0
+    private final AtomicReference<Worker[]> workers = new AtomicReference<>(new Worker[0]);
+    // fields used by the merging thread only
+    private final SearchTree tree = new SearchTree();
+    private long version = 0;
+    private int[] deferred = new int[24]; // status changes of nodes not merged yet, as (node, status, update)
+    private int nDeferred = 0;
+    private int nUpdates = 0;             // number of calls to update()
+    private Consumer<IllegalArgumentException> errorHandler = e -> {};
+    private int nRejected = 0;            // number of events dropped
+
+    /**
+     * register a new worker. Can be called from any thread
+     * @return worker, through which the nodes must be added
+     */
+    public Worker newWorker() {
+        while (true) {
+            Worker[] current = workers.get();
+            Worker worker = new Worker(current.length);
+            Worker[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = worker;
+            if (workers.compareAndSet(current, next))
+                return worker;
+        }
+    }
+
+    /**
+     * allocate the id of a new node. Can be called from any thread
+     * @return id never given before
+     */
+    public int newNode() {
+        return nextNode.getAndIncrement();
+    }
+
+    /**
+     * append the events published by the workers since the last call into the merged tree
+     * must always be called from the same thread, the one reading the merged tree
+     * @return version of the merged tree, incremented each time events are merged
+     */
+    public long update() {
+        boolean changed = false;
+        for (Worker worker : workers.get())
+            changed |= worker.merge();
+        // the status of a node created by another worker can arrive before its branch. The branch was published
+        // before the status, but may have been missed if its worker was merged first: it is merged by the next update
+        // at the latest, after which the status is dropped
+        int n = nDeferred;
+        nDeferred = 0;
+        for (int i = 0; i < n; i += 3) {
+            int node = deferred[i];
+            int status = deferred[i + 1];
+            int since = deferred[i + 2];
+            if (!applyStatus(node, status)) {
+                if (since < nUpdates)
+                    reject(new IllegalArgumentException("node " + node + " does not belong to the search tree"));
+                else
+                    defer(node, status, since);
+            }
+        }
+        nUpdates++;
+        if (changed)
+            version++;
+        return version;
+    }
+
+    private void setStatus(int node, int status) {
+        if (!applyStatus(node, status))
+            defer(node, status, nUpdates);
+    }
+
+    private boolean applyStatus(int node, int status) {
+        return status == SUCCESS ? tree.addSuccess(node) : tree.addFailure(node);
+    }
+
+    private void defer(int node, int status, int since) {
+        if (nDeferred + 3 > deferred.length)
+            deferred = Arrays.copyOf(deferred, deferred.length * 2);
+        deferred[nDeferred++] = node;
+        deferred[nDeferred++] = status;
+        deferred[nDeferred++] = since;
+    }
+
+    private void reject(IllegalArgumentException e) {
+        nRejected++;
+        errorHandler.accept(e);
+    }
+
+    /**
+     * set the handler receiving the events dropped while merging: branches creating a cycle or adding a node that
+     * already has a parent, and statuses of nodes that were never added
+     * called from the thread calling update()
+     * @param errorHandler handler receiving the reason of each event dropped
+     */
+    public void setErrorHandler(Consumer<IllegalArgumentException> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * @return number of events dropped while merging since the creation of the tree
+     */
+    public int nRejected() {
+        return nRejected;
+    }
+
+    /**
+     * @return version of the merged tree, as returned by the last update()
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * gives the tree in which the events are merged
+     * must only be read from the thread calling update(). Use its snapshot() to hand it over to another thread
+     * @return merged search tree
+     */
+    public SearchTree getSearchTree() {
+        return tree;
+    }
+
+    /**
+     * @return number of workers registered
+     */
+    public int nWorkers() {
+        return workers.get().length;
+    }
+
+    /**
+     * events appended by a worker, stored by chunks that are dropped once merged
+     */
+    private static final class Chunk {
+        final byte[] types = new byte[CHUNK_SIZE];  // BRANCH, SUCCESS or FAILURE
+        final int[] parents = new int[CHUNK_SIZE];
+        final int[] nodes = new int[CHUNK_SIZE];
+        final String[] nodeMessages = new String[CHUNK_SIZE];
+        final String[] branchMessages = new String[CHUNK_SIZE];
+        volatile Chunk next;
+    }
+
+    /**
+     * handle through which a worker adds its nodes to the tree
+     * the methods adding nodes must only be called by the thread of the worker
+     */
+    public final class Worker {
+
+        private final int id;
+        // written by the worker only
+        private Chunk tail = new Chunk();
+        private int tailPosition = 0;
+        private volatile long published = 0;    // number of events appended so far
+        // read by the merging thread only
+        private Chunk head = tail;
+        private int headPosition = 0;
+        private long merged = 0;                // number of events merged so far
+
+        private Worker(int id) {
+            this.id = id;
+        }
+
+        /**
+         * @return id of the worker, recorded in the nodes it creates
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * add a branch towards a new node, whose id is allocated atomically
+         * @param parent node from which the branch is created
+         * @param branchMessage message associated with the branch
+         * @return id of the new node
+         */
+        public int addBranch(int parent, String branchMessage) {
+            int node = newNode();
+            addBranch(parent, node, null, branchMessage);
+            return node;
+        }
+
+        /**
+         * add a branch to the search tree
+         * @param parent node from which the branch will be created
+         * @param node node that needs to be added (and was absent before)
+         * @param nodeMessage message associated with the node
+         * @param branchMessage message associated with the branch binding the parent to the node
+         */
+        public void addBranch(int parent, int node, String nodeMessage, String branchMessage) {
+            append(BRANCH, parent, node, nodeMessage, branchMessage);
+        }
+
+        /**
+         * notify a node as a success node
+         * @param node success node
+         */
+        public void addSuccess(int node) {
+            append((byte) SUCCESS, NONE, node, null, null);
+        }
+
+        /**
+         * notify a node as a failure node
+         * @param node failure node
+         */
+        public void addFailure(int node) {
+            append((byte) FAILURE, NONE, node, null, null);
+        }
+
+        private void append(byte type, int parent, int node, String nodeMessage, String branchMessage) {
+            if (tailPosition == CHUNK_SIZE) {
+                Chunk chunk = new Chunk();
+                tail.next = chunk; // published before the events it holds
+                tail = chunk;
+                tailPosition = 0;
+            }
+            tail.types[tailPosition] = type;
+            tail.parents[tailPosition] = parent;
+            tail.nodes[tailPosition] = node;
+            tail.nodeMessages[tailPosition] = nodeMessage;
+            tail.branchMessages[tailPosition] = branchMessage;
+            tailPosition++;
+            published = published + 1; // single writer: makes the event visible to the merging thread
+        }
+
+        /**
+         * merge the events published by the worker into the tree
+         * @return true if at least one event was merged
+         */
+        private boolean merge() {
+            long available = published;
+            if (merged == available)
+                return false;
+            while (merged < available) {
+                if (headPosition == CHUNK_SIZE) {
+                    head = head.next;
+                    headPosition = 0;
+                }
+                int node = head.nodes[headPosition];
+                byte type = head.types[headPosition];
+                if (type == BRANCH) {
+                    try {
+                        tree.addBranch(head.parents[headPosition], node, head.nodeMessages[headPosition], head.branchMessages[headPosition]);
+                        tree.setWorker(tree.indexOf(node), id);
+                    } catch (IllegalArgumentException e) { // invalid branch sent by the worker
+                        reject(e);
+                    }
+                } else {
+                    setStatus(node, type);
+                }
+                headPosition++;
+                merged++;
+            }
+            return true;
+        }
+
+    }
+
+}
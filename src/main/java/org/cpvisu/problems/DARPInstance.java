@@ -5,6 +5,7 @@ import org.cpvisu.util.io.InputReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.stream.IntStream;
 
 /**
  * Dial-A-Ride instance. Contains the information relative to the nodes and vehicle
@@ -13,6 +14,15 @@ import java.util.HashMap;
  * - 2*nRequest...(2*nRequests+nVehicle-1) -> beginDepot
  * - (2*nRequests+nVehicle)...end -> endDepot
  * this numbering is set as the id of each DARPNode
+ *
+ * the distances between the nodes are computed once, into a flat row-major matrix indexed by the ids of the nodes,
+ * and computed again only after a change of the instance (mapping of the nodes or time scaling)
+ * the euclidean distances can be replaced by external travel times (for instance from a road network), possibly
+ * depending on the time of departure
+ *
+ * the nodes are indexed by id, and partitioned into depots, pickups and drops once, so that a node, a partition or the
+ * other node of a request is retrieved in O(1). The index is computed again after a mapping of the nodes
+ * the evaluation of the solutions is done on a DARPInstanceView, holding the values of the nodes in primitive arrays
  */
 public class DARPInstance {
 
@@ -21,6 +31,22 @@ public class DARPInstance {
     private int maxRideTime;        // max time in vehicle for a request
     private int horizonTime;        // latest return time of vehicle
     private double scaling = 1.0;
+    // travel times between the nodes: the distance from a to b is at a.getId() * nNodes + b.getId()
+    private static final int PARALLEL_THRESHOLD = 500; // number of nodes from which the matrix is computed in parallel
+    private boolean compactMatrix = false; // if true, the distances are stored as floats instead of doubles
+    private DARPNode[] nodeOfId;           // id -> node of the instance, null if the matrix needs to be computed
+    private double[] distances;
+    private float[] compactDistances;
+    private TravelTimes travelTimes = null; // if not null, replaces the euclidean distances
+    // index of the nodes, computed on demand and discarded when the nodes are mapped
+    private DARPNode[] nodeById;            // id -> node with this id, null if there is none
+    private DARPNode[] beginDepots;
+    private DARPNode[] endDepots;
+    private DARPNode[] requestNodes;        // pickups and drops, in the order of the instance
+    private DARPNode[] pickups;
+    private DARPNode[] drops;
+    private DARPNode[] pairById;            // id of a pickup or a drop -> other node of its request
+    private DARPInstanceView view;          // view of the nodes as primitive arrays, null if it needs to be built
 
     public DARPInstance(ArrayList<DARPNode> nodes, int[] vehicleCapacity, int maxRideTime, int horizonTime) {
         this.nodes = nodes;
@@ -102,6 +128,7 @@ public class DARPInstance {
             node.setTwEnd((int) (node.getTwEnd() * scaling));
         }
         this.scaling = scaling;
+        invalidateDistances();
     }
 
     /**
@@ -114,15 +141,95 @@ public class DARPInstance {
     }
 
     public DARPNode[] getBeginDepot() {
-        return nodes.stream().filter(DARPNode::isBeginDepot).toArray(DARPNode[]::new);
+        indexNodes();
+        return beginDepots.clone();
     }
 
     public DARPNode[] getEndDepot() {
-        return nodes.stream().filter(DARPNode::isEndDepot).toArray(DARPNode[]::new);
+        indexNodes();
+        return endDepots.clone();
     }
 
+    /**
+     * @return pickup and drop nodes, in the order of the instance
+     */
     public DARPNode[] getNodes() {
-        return nodes.stream().filter(n -> !n.isDepot()).toArray(DARPNode[]::new);
+        indexNodes();
+        return requestNodes.clone();
+    }
+
+    public DARPNode[] getPickups() {
+        indexNodes();
+        return pickups.clone();
+    }
+
+    public DARPNode[] getDrops() {
+        indexNodes();
+        return drops.clone();
+    }
+
+    /**
+     * gives the other node of the request of a pickup or a drop
+     * when a request has been duplicated, its k-th pickup is paired with its k-th drop
+     * @param node pickup or drop
+     * @return drop of the request if the node is a pickup, pickup of the request if it is a drop, null otherwise
+     */
+    public DARPNode getPairedNode(DARPNode node) {
+        indexNodes();
+        int id = node.getId();
+        return id >= 0 && id < pairById.length ? pairById[id] : null;
+    }
+
+    /**
+     * index the nodes by id and partition them, if not done since the last change of the nodes
+     */
+    private void indexNodes() {
+        if (nodeById != null)
+            return;
+        int maxId = -1;
+        for (DARPNode node : nodes)
+            maxId = Math.max(maxId, node.getId());
+        DARPNode[] byId = new DARPNode[maxId + 1];
+        ArrayList<DARPNode> begin = new ArrayList<>();
+        ArrayList<DARPNode> end = new ArrayList<>();
+        ArrayList<DARPNode> requests = new ArrayList<>();
+        ArrayList<DARPNode> pickupList = new ArrayList<>();
+        ArrayList<DARPNode> dropList = new ArrayList<>();
+        for (DARPNode node : nodes) {
+            if (node.getId() >= 0 && byId[node.getId()] == null)
+                byId[node.getId()] = node;
+            if (node.isBeginDepot())
+                begin.add(node);
+            else if (node.isEndDepot())
+                end.add(node);
+            else {
+                requests.add(node);
+                (node.isPickup() ? pickupList : dropList).add(node);
+            }
+        }
+        // the k-th pickup of a request is paired with its k-th drop
+        pairById = new DARPNode[maxId + 1];
+        HashMap<Integer, ArrayList<DARPNode>> pickupsOfRequest = new HashMap<>();
+        for (DARPNode pickup : pickupList)
+            pickupsOfRequest.computeIfAbsent(pickup.getRequestId(), r -> new ArrayList<>()).add(pickup);
+        HashMap<Integer, Integer> nDropsOfRequest = new HashMap<>();
+        for (DARPNode drop : dropList) {
+            ArrayList<DARPNode> candidates = pickupsOfRequest.get(drop.getRequestId());
+            int k = nDropsOfRequest.merge(drop.getRequestId(), 1, Integer::sum) - 1;
+            if (candidates == null || k >= candidates.size())
+                continue;
+            DARPNode pickup = candidates.get(k);
+            if (pickup.getId() >= 0)
+                pairById[pickup.getId()] = drop;
+            if (drop.getId() >= 0)
+                pairById[drop.getId()] = pickup;
+        }
+        beginDepots = begin.toArray(new DARPNode[0]);
+        endDepots = end.toArray(new DARPNode[0]);
+        requestNodes = requests.toArray(new DARPNode[0]);
+        pickups = pickupList.toArray(new DARPNode[0]);
+        drops = dropList.toArray(new DARPNode[0]);
+        nodeById = byId;
     }
 
     public int[] getVehicleCapacity() {
@@ -159,19 +266,176 @@ public class DARPInstance {
 
     /**
      * gives the distance between 2 nodes
-     * computed as the euclidean distance
+     * computed as the euclidean distance, read from the matrix of distances if both nodes belong to the instance
+     * if external travel times are set, gives their travel time independent of the time of departure instead
      * @param DARPNodeA first node
      * @param DARPNodeB second node
      * @return distance between the 2 nodes
      */
     public double getDistance(DARPNode DARPNodeA, DARPNode DARPNodeB) {
+        if (travelTimes != null)
+            return travelTimes.travelTime(DARPNodeA.getId(), DARPNodeB.getId());
+        if (nodeOfId == null)
+            computeDistances();
+        int a = DARPNodeA.getId();
+        int b = DARPNodeB.getId();
+        int n = nodeOfId.length;
+        if (a < 0 || a >= n || b < 0 || b >= n || nodeOfId[a] != DARPNodeA || nodeOfId[b] != DARPNodeB)
+            return euclideanDistance(DARPNodeA, DARPNodeB); // a node from outside the instance
+        return compactMatrix ? compactDistances[a * n + b] : distances[a * n + b];
+    }
+
+    /**
+     * gives the travel time between 2 nodes when leaving the first one at a given time
+     * @param DARPNodeA node of departure
+     * @param DARPNodeB node of arrival
+     * @param departure time of departure from the first node
+     * @return travel time between the 2 nodes
+     */
+    public double getTravelTime(DARPNode DARPNodeA, DARPNode DARPNodeB, double departure) {
+        if (travelTimes != null)
+            return travelTimes.travelTime(DARPNodeA.getId(), DARPNodeB.getId(), departure);
+        return getDistance(DARPNodeA, DARPNodeB);
+    }
+
+    /**
+     * gives the time of arrival at a node when leaving another one at a given time
+     * @param DARPNodeA node of departure
+     * @param DARPNodeB node of arrival
+     * @param departure time of departure from the first node
+     * @return time of arrival at the second node
+     */
+    public double getArrivalTime(DARPNode DARPNodeA, DARPNode DARPNodeB, double departure) {
+        if (travelTimes != null)
+            return travelTimes.arrivalTime(DARPNodeA.getId(), DARPNodeB.getId(), departure);
+        return departure + getDistance(DARPNodeA, DARPNodeB);
+    }
+
+    /**
+     * take the travel times from an external source instead of the euclidean distances
+     * the travel times are indexed by the ids of the nodes, and are not changed by a mapping of the nodes
+     * @param travelTimes travel times between the nodes, null to use the euclidean distances again
+     * @throws IllegalArgumentException if the travel times are read from a matrix that does not cover every id
+     */
+    public void setTravelTimes(TravelTimes travelTimes) {
+        if (travelTimes instanceof MappedTravelTimes mapped && mapped.nNodes() < nIds())
+            throw new IllegalArgumentException("the travel times cover " + mapped.nNodes() + " nodes, but the ids of "
+                    + "the instance go up to " + (nIds() - 1));
+        this.travelTimes = travelTimes;
+        view = null;
+    }
+
+    /**
+     * @return travel times used by the instance, indexed by the ids of the nodes
+     */
+    public TravelTimes getTravelTimes() {
+        if (travelTimes != null)
+            return travelTimes;
+        if (nodeOfId == null)
+            computeDistances();
+        indexNodes();
+        // the travel times keep the current matrix, which is replaced but never modified on a change of the instance
+        // the matrix only covers the ids in [0, n): the distances involving other ids are computed on demand
+        int n = nodeOfId.length;
+        DARPNode[] byId = nodeById;
+        double[] matrix = distances;
+        float[] compactMatrix = compactDistances;
+        if (n == 0)
+            return (from, to) -> euclideanDistance(byId[from], byId[to]);
+        if (compactMatrix != null)
+            return (from, to) -> from < n && to < n ? compactMatrix[from * n + to]
+                    : euclideanDistance(byId[from], byId[to]);
+        return (from, to) -> from < n && to < n ? matrix[from * n + to] : euclideanDistance(byId[from], byId[to]);
+    }
+
+    /**
+     * gives a view of the instance as primitive arrays indexed by the ids of the nodes, built once and shared until
+     * the instance changes
+     * @return immutable view of the instance
+     */
+    public DARPInstanceView getView() {
+        if (view == null)
+            view = new DARPInstanceView(this);
+        return view;
+    }
+
+    /**
+     * @return number of ids used by the nodes, from 0 to the largest id
+     */
+    int nIds() {
+        indexNodes();
+        return nodeById.length;
+    }
+
+    private static double euclideanDistance(DARPNode DARPNodeA, DARPNode DARPNodeB) {
         double dx = DARPNodeA.getX() - DARPNodeB.getX();
         double dy = DARPNodeA.getY() - DARPNodeB.getY();
         return Math.sqrt(dx*dx + dy*dy);
     }
 
+    /**
+     * store the distances as floats instead of doubles, halving the memory used by the matrix of distances
+     * @param compactMatrix true to store the distances as floats
+     */
+    public void setCompactMatrix(boolean compactMatrix) {
+        this.compactMatrix = compactMatrix;
+        invalidateDistances();
+    }
+
+    /**
+     * discard the matrix of distances, computed again on the next call to getDistance
+     */
+    private void invalidateDistances() {
+        view = null; // the view holds the distances as well
+        nodeOfId = null;
+        distances = null;
+        compactDistances = null;
+    }
+
+    /**
+     * compute the matrix of distances between all nodes, in parallel for large instances
+     * the ids of the nodes must be within [0, nNodes): the nodes with other ids are left out of the matrix
+     * instances too large for a matrix have all their distances computed on demand
+     */
+    private void computeDistances() {
+        int n = nodes.size();
+        if ((long) n * n > Integer.MAX_VALUE - 8) { // too large for a matrix: all distances are computed on demand
+            nodeOfId = new DARPNode[0];
+            return;
+        }
+        indexNodes();
+        DARPNode[] byId = Arrays.copyOf(nodeById, n);
+        if (compactMatrix)
+            compactDistances = new float[n * n];
+        else
+            distances = new double[n * n];
+        IntStream rows = IntStream.range(0, n);
+        if (n >= PARALLEL_THRESHOLD)
+            rows = rows.parallel();
+        rows.forEach(a -> {
+            if (byId[a] == null)
+                return;
+            for (int b = 0; b < n; ++b) {
+                if (byId[b] == null)
+                    continue;
+                double distance = euclideanDistance(byId[a], byId[b]);
+                if (compactMatrix)
+                    compactDistances[a * n + b] = (float) distance;
+                else
+                    distances[a * n + b] = distance;
+            }
+        });
+        nodeOfId = byId;
+    }
+
+    /**
+     * gives the node with a given id, in O(1)
+     * @param node id of the node
+     * @return node with the given id, null if there is none
+     */
     protected DARPNode getNode(int node) {
-        return nodes.stream().filter(n -> n.getId() == node).findFirst().orElse(null);
+        indexNodes();
+        return node >= 0 && node < nodeById.length ? nodeById[node] : null;
     }
 
     /**
@@ -182,6 +446,8 @@ public class DARPInstance {
     public void mapNodes(HashMap<Integer, Integer> mapping) {
         for (DARPNode node: nodes)
             node.setId(mapping.get(node.getId()));
+        invalidateDistances();
+        nodeById = null;
     }
 
     /**
@@ -201,6 +467,8 @@ public class DARPInstance {
             }
         }
         this.nodes = allNodes;
+        invalidateDistances();
+        nodeById = null;
     }
 
 }
@@ -0,0 +1,182 @@
+package org.cpvisu.problems;
+
+/**
+ * immutable view of a Dial-A-Ride instance, storing the data of the nodes into parallel primitive arrays indexed by
+ * the ids of the nodes
+ *
+ * evaluating a route reads the arrays instead of following a reference per node, and the view is never modified once
+ * built: it can be shared between threads without synchronization. A change of the instance (time scaling, mapping of
+ * the nodes) gives a new view, the views already built being left untouched
+ */
+public final class DARPInstanceView {
+
+    private final int nNodes;          // number of ids, from 0 to the largest id of a node
+    private final double[] x;
+    private final double[] y;
+    private final double[] twStart;
+    private final double[] twEnd;
+    private final double[] service;    // serving duration at each node
+    private final int[] load;          // capacity of each node: positive for a pickup, negative for a drop, 0 for a depot
+    private final int[] pairOf;        // id of the other node of the request of a pickup or a drop, -1 otherwise
+    private final int[] requestOf;     // request of each node, negative for a depot
+    private final boolean[] beginDepot;
+    private final boolean[] exists;    // false for the ids without node
+    private final int[] vehicleCapacity;
+    private final int maxRideTime;
+    private final int horizonTime;
+    private final TravelTimes travelTimes;
+
+    /**
+     * build the view of an instance, with the values of its nodes at the time of the call
+     * @param instance instance to view
+     */
+    DARPInstanceView(DARPInstance instance) {
+        nNodes = instance.nIds();
+        x = new double[nNodes];
+        y = new double[nNodes];
+        twStart = new double[nNodes];
+        twEnd = new double[nNodes];
+        service = new double[nNodes];
+        load = new int[nNodes];
+        pairOf = new int[nNodes];
+        requestOf = new int[nNodes];
+        beginDepot = new boolean[nNodes];
+        exists = new boolean[nNodes];
+        for (int id = 0; id < nNodes; ++id) {
+            DARPNode node = instance.getNode(id);
+            pairOf[id] = -1;
+            requestOf[id] = -1;
+            if (node == null)
+                continue;
+            exists[id] = true;
+            x[id] = node.getX();
+            y[id] = node.getY();
+            twStart[id] = node.getTwStart();
+            twEnd[id] = node.getTwEnd();
+            service[id] = node.getServingDuration();
+            load[id] = node.getCapacity();
+            requestOf[id] = node.getRequestId();
+            beginDepot[id] = node.isBeginDepot();
+            DARPNode pair = node.isDepot() ? null : instance.getPairedNode(node);
+            if (pair != null)
+                pairOf[id] = pair.getId();
+        }
+        vehicleCapacity = instance.getVehicleCapacity().clone();
+        maxRideTime = instance.getMaxRideTime();
+        horizonTime = instance.getHorizonTime();
+        travelTimes = instance.getTravelTimes();
+    }
+
+    /**
+     * @return number of ids in the view, from 0 to the largest id of a node
+     */
+    public int nNodes() {
+        return nNodes;
+    }
+
+    /**
+     * @param id id of a node
+     * @return true if a node of the instance has the given id
+     */
+    public boolean exists(int id) {
+        return id >= 0 && id < nNodes && exists[id];
+    }
+
+    public double getX(int id) {
+        return x[id];
+    }
+
+    public double getY(int id) {
+        return y[id];
+    }
+
+    public double getTwStart(int id) {
+        return twStart[id];
+    }
+
+    public double getTwEnd(int id) {
+        return twEnd[id];
+    }
+
+    public double getServingDuration(int id) {
+        return service[id];
+    }
+
+    /**
+     * @param id id of a node
+     * @return capacity of the node: positive for a pickup, negative for a drop and 0 for a depot
+     */
+    public int getLoad(int id) {
+        return load[id];
+    }
+
+    /**
+     * @param id id of a pickup or a drop
+     * @return id of the other node of its request, -1 for a depot
+     */
+    public int getPairOf(int id) {
+        return pairOf[id];
+    }
+
+    public int getRequestId(int id) {
+        return requestOf[id];
+    }
+
+    public boolean isPickup(int id) {
+        return load[id] > 0;
+    }
+
+    public boolean isDrop(int id) {
+        return load[id] < 0;
+    }
+
+    public boolean isDepot(int id) {
+        return load[id] == 0;
+    }
+
+    public boolean isBeginDepot(int id) {
+        return load[id] == 0 && beginDepot[id];
+    }
+
+    public boolean isEndDepot(int id) {
+        return load[id] == 0 && !beginDepot[id];
+    }
+
+    public int getVehicleCapacity(int vehicle) {
+        return vehicleCapacity[vehicle];
+    }
+
+    public int getNVehicle() {
+        return vehicleCapacity.length;
+    }
+
+    public int getMaxRideTime() {
+        return maxRideTime;
+    }
+
+    public int getHorizonTime() {
+        return horizonTime;
+    }
+
+    /**
+     * @return travel time between two nodes, independently of the time of departure
+     */
+    public double travelTime(int from, int to) {
+        return travelTimes.travelTime(from, to);
+    }
+
+    /**
+     * @return travel time between two nodes when leaving the first one at a given time
+     */
+    public double travelTime(int from, int to, double departure) {
+        return travelTimes.travelTime(from, to, departure);
+    }
+
+    /**
+     * @return time of arrival at a node when leaving another one at a given time
+     */
+    public double arrivalTime(int from, int to, double departure) {
+        return travelTimes.arrivalTime(from, to, departure);
+    }
+
+}
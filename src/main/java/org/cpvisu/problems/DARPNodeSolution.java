@@ -35,6 +35,15 @@ public class DARPNodeSolution {
         this.lat = lat;
     }
 
+    /**
+     * forward time slack of the node: how much its visit can be postponed without violating the time windows of the
+     * nodes visited after it, the waiting times absorbing part of the delay
+     * @return difference between the latest and the earliest arrival time
+     */
+    public double getSlack() {
+        return lat - eat;
+    }
+
     public int getVehicle() {
         return vehicle;
     }
@@ -1,9 +1,6 @@
 package org.cpvisu.problems;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.stream.Collectors;
 
 /**
@@ -11,6 +8,8 @@ import java.util.stream.Collectors;
  */
 public class DARPSolution {
 
+    private static final double EPSILON = 1e-6; // tolerance on the times of a schedule
+
     private final DARPInstance instance;
     private final ArrayList<DARPNodeSolution>[] routes;
 
@@ -23,119 +22,336 @@ public class DARPSolution {
 
     /**
      * tell if the solution violates the constraints or not
+     * evaluated on the view of the instance
+     * the time windows and max ride times are checked together on the schedule of each route given by
+     * hasFeasibleSchedule: a solution is only accepted if this schedule satisfies all of them
      * @return True if the solution is valid
      */
     public boolean isValid() {
         for (int i = 0; i < instance.getNVehicle(); ++i)
             setValuesVisit(i);
-        HashSet<Integer> seen = new HashSet<>(); // observed nodes in the route
-        for (ArrayList<DARPNodeSolution> vehicleRoute: routes) {
-            int i = 0;
+        DARPInstanceView view = instance.getView();
+        int[] routeOf = new int[view.nNodes()]; // route in which each node has been visited + 1, 0 if not visited yet
+        int[] positionOf = new int[view.nNodes()]; // position of each node within its route
+        int nSeen = 0;
+        for (int vehicle = 0; vehicle < routes.length; ++vehicle) {
+            ArrayList<DARPNodeSolution> vehicleRoute = routes[vehicle];
             int size = vehicleRoute.size();
-            HashMap<Integer, Double> pickupEat = new HashMap<>();
-            HashMap<Integer, Double> pickupLat = new HashMap<>();
-            for (DARPNodeSolution node: vehicleRoute) {
-                if (seen.contains(node.darpNode.id)) // node has already been visited
+            for (int i = 0; i < size; ++i) {
+                DARPNodeSolution node = vehicleRoute.get(i);
+                int id = node.darpNode.id;
+                if (!view.exists(id) || routeOf[id] != 0) // node unknown or already visited
                     return false;
-                seen.add(node.darpNode.id);
-                if ((i == 0 || i == size-1) && !node.darpNode.isDepot()) // starting or end node of the route is not a depot
+                routeOf[id] = vehicle + 1;
+                positionOf[id] = i;
+                nSeen++;
+                if ((i == 0 || i == size-1) != view.isDepot(id)) // only the starting and end nodes of a route are depots
                     return false;
-                else if (node.darpNode.isPickup()) {
-                    pickupEat.put(node.darpNode.requestId, node.eat);
-                    pickupLat.put(node.darpNode.requestId, node.lat);
-                } else {
-                    if (!pickupEat.containsKey(node.getDarpNode().getRequestId())) // corresponding pickup has not been visited
-                        return false;
-                    double correspondingEat = pickupEat.get(node.getDarpNode().requestId);
-                    double correspondingLat = pickupLat.get(node.getDarpNode().requestId);
-                    // max ride time between pickup and drop violated
-                    if (node.eat - correspondingEat > instance.getMaxRideTime())
+                if (view.isDrop(id)) {
+                    int pickup = view.getPairOf(id);
+                    if (pickup < 0 || routeOf[pickup] != vehicle + 1) // corresponding pickup has not been visited
                         return false;
-                    // TODO check for max ride time using lat
                 }
                 // time window or capacity violation
-                if (node.eat > node.lat || node.lat > node.getDarpNode().getTwEnd() || node.cumulCapacity < 0 || node.cumulCapacity > instance.getVehicleCapacity(node.getVehicle()))
+                if (node.eat > node.lat || node.lat > view.getTwEnd(id) || node.cumulCapacity < 0 || node.cumulCapacity > view.getVehicleCapacity(node.getVehicle()))
                     return false;
-                i++;
             }
+            if (!hasFeasibleSchedule(vehicle, positionOf))
+                return false;
+        }
+        return nSeen == instance.getNNodes(); // true if all nodes have been visited
+    }
+
+    /**
+     * tell if a route can be scheduled within its time windows and max ride times, through the eight-step evaluation
+     * of Cordeau and Laporte (2003)
+     *
+     * the route first starts as early as possible, then the departure from the depot is postponed by its forward time
+     * slack, bounded by the total waiting time of the route. Each pickup is then postponed in turn by its own forward
+     * time slack, bounded by the waiting time after it. The forward time slack of a node accounts for the time windows
+     * of the nodes after it and for the max ride time of the requests picked up before it and dropped after it, so that
+     * the delays never stretch the ride of another request beyond the limit. The ride time of a request is the time
+     * between the arrivals at its pickup and at its drop
+     *
+     * the schedule obtained is checked against all constraints: a route is never accepted unless it has a feasible
+     * schedule, but a feasible route may be rejected in rare cases as the evaluation is a heuristic. Runs in
+     * O(n^2) for a route of n nodes
+     * @param vehicle vehicle whose route is checked, starting and ending with a depot, with the pickup of each drop
+     * @param positionOf position of each node of the route, indexed by id
+     * @return true if the schedule found satisfies the time windows and max ride times
+     */
+    private boolean hasFeasibleSchedule(int vehicle, int[] positionOf) {
+        ArrayList<DARPNodeSolution> route = routes[vehicle];
+        int size = route.size();
+        if (size == 0)
+            return true;
+        DARPInstanceView view = instance.getView();
+        int[] ids = new int[size];
+        int[] pickupOf = new int[size];    // position of the pickup of a drop, -1 for the other nodes
+        for (int i = 0; i < size; ++i) {
+            ids[i] = route.get(i).darpNode.id;
+            pickupOf[i] = view.isDrop(ids[i]) ? positionOf[view.getPairOf(ids[i])] : -1;
+        }
+        double[] arrival = new double[size];
+        double[] begin = new double[size]; // beginning of service, after waiting
+        // steps 1 to 5: start as early as possible, then postpone the departure from the depot
+        begin[0] = view.getTwStart(ids[0]);
+        arrival[0] = begin[0];
+        schedule(ids, arrival, begin, 1);
+        double delay = Math.min(forwardSlack(ids, arrival, begin, pickupOf, 0), totalWaiting(arrival, begin, 1, size - 1));
+        begin[0] += delay;
+        arrival[0] = begin[0];
+        schedule(ids, arrival, begin, 1);
+        // steps 6 and 7: postpone each pickup in turn
+        for (int j = 1; j < size - 1; ++j) {
+            if (!view.isPickup(ids[j]))
+                continue;
+            delay = Math.min(forwardSlack(ids, arrival, begin, pickupOf, j), totalWaiting(arrival, begin, j + 1, size - 1));
+            if (delay <= 0)
+                continue;
+            begin[j] += delay;
+            schedule(ids, arrival, begin, j + 1);
+        }
+        // step 8: check the schedule
+        for (int i = 0; i < size; ++i) {
+            if (begin[i] > view.getTwEnd(ids[i]) + EPSILON)
+                return false;
+            if (pickupOf[i] >= 0 && begin[i] - begin[pickupOf[i]] > view.getMaxRideTime() + EPSILON)
+                return false;
         }
-        return seen.size() == instance.getNNodes(); // true if all nodes have been visited
+        return true;
+    }
+
+    /**
+     * compute the arrival and beginning of service of the nodes of a route from a position, given the beginning of
+     * service of the node before it
+     */
+    private void schedule(int[] ids, double[] arrival, double[] begin, int from) {
+        DARPInstanceView view = instance.getView();
+        for (int i = from; i < ids.length; ++i) {
+            double departure = begin[i - 1] + view.getServingDuration(ids[i - 1]);
+            arrival[i] = view.arrivalTime(ids[i - 1], ids[i], departure);
+            begin[i] = Math.max(arrival[i], view.getTwStart(ids[i]));
+        }
+    }
+
+    /**
+     * @return total waiting time at the positions in [from, to)
+     */
+    private static double totalWaiting(double[] arrival, double[] begin, int from, int to) {
+        double waiting = 0;
+        for (int p = from; p < to; ++p)
+            waiting += begin[p] - arrival[p];
+        return waiting;
+    }
+
+    /**
+     * forward time slack of a position: largest delay of its beginning of service that violates neither the time
+     * windows of the nodes after it nor the max ride time of the requests picked up before it and dropped after it
+     */
+    private double forwardSlack(int[] ids, double[] arrival, double[] begin, int[] pickupOf, int i) {
+        DARPInstanceView view = instance.getView();
+        double slack = Double.MAX_VALUE;
+        double waiting = 0; // waiting time between i and j, absorbing part of the delay
+        for (int j = i; j < ids.length; ++j) {
+            if (j > i)
+                waiting += begin[j] - arrival[j];
+            double margin = view.getTwEnd(ids[j]) - begin[j];
+            if (pickupOf[j] >= 0 && pickupOf[j] < i) // ride in progress at i
+                margin = Math.min(margin, view.getMaxRideTime() - (begin[j] - begin[pickupOf[j]]));
+            slack = Math.min(slack, waiting + Math.max(0, margin));
+        }
+        return slack;
     }
 
     /**
      * add a visit to a DARPNode, setting its vehicle, cumulative capacity, earliest and latest arrival time
      * the node will be added at the end of the current vehicle
+     * only the values changed by the new visits are computed again
      * @param vehicle vehicle visiting the node
      * @param node node visited
      */
     public void addVisit(int vehicle, DARPNode... node) {
-        routes[vehicle].addAll(Arrays.stream(node).map(DARPNodeSolution::new).toList());
-        setValuesVisit(vehicle);
+        ArrayList<DARPNodeSolution> route = routes[vehicle];
+        int size = route.size();
+        for (DARPNode n: node)
+            route.add(new DARPNodeSolution(n));
+        propagateForward(vehicle, size, route.size() - 1);
+        propagateBackward(vehicle, route.size() - 1, size - 1);
     }
 
+    /**
+     * add a visit to nodes given by their id, in linear time
+     * @param vehicle vehicle visiting the nodes
+     * @param node ids of the nodes visited
+     */
     public void addVisit(int vehicle, Integer... node) {
         DARPNode[] darpNodes = new DARPNode[node.length];
-        HashMap<Integer, Integer> mapping = new HashMap<>();
         for (int i = 0; i < node.length ; ++i)
-            mapping.put(node[i], i);
-        for (DARPNode darpNode: instance.getBeginDepot()) {
-            if (mapping.containsKey(darpNode.getId()))
-                darpNodes[mapping.get(darpNode.getId())] = darpNode;
-        }
-        for (DARPNode darpNode: instance.getNodes()) {
-            if (mapping.containsKey(darpNode.getId()))
-                darpNodes[mapping.get(darpNode.getId())] = darpNode;
-        }
-        for (DARPNode darpNode: instance.getEndDepot()) {
-            if (mapping.containsKey(darpNode.getId()))
-                darpNodes[mapping.get(darpNode.getId())] = darpNode;
-        }
+            darpNodes[i] = instance.getNode(node[i]);
         addVisit(vehicle, darpNodes);
     }
 
+    /**
+     * insert the visit of a node within the route of a vehicle
+     * the earliest arrival times and loads are updated after the node and the latest arrival times before it, as far
+     * as they change
+     * @param vehicle vehicle visiting the node
+     * @param position position of the node in the route once inserted, in [0, size of the route]
+     * @param node node visited
+     */
+    public void insertVisit(int vehicle, int position, DARPNode node) {
+        routes[vehicle].add(position, new DARPNodeSolution(node));
+        propagateForward(vehicle, position, position);
+        propagateBackward(vehicle, position, position - 1);
+    }
+
+    /**
+     * insert the visit of a node given by its id within the route of a vehicle
+     * @param vehicle vehicle visiting the node
+     * @param position position of the node in the route once inserted, in [0, size of the route]
+     * @param node id of the node visited
+     */
+    public void insertVisit(int vehicle, int position, int node) {
+        insertVisit(vehicle, position, instance.getNode(node));
+    }
+
+    /**
+     * insert the visits of the pickup and drop of a request within the route of a vehicle
+     * the loads only change between the two nodes, so that the update stops shortly after the drop in most cases
+     * @param vehicle vehicle visiting the nodes
+     * @param pickupPosition position of the pickup in the route once inserted
+     * @param dropPosition position of the drop in the route once inserted, greater than the position of the pickup
+     * @param pickup pickup of the request
+     * @param drop drop of the request
+     */
+    public void insertRequest(int vehicle, int pickupPosition, int dropPosition, DARPNode pickup, DARPNode drop) {
+        if (dropPosition <= pickupPosition)
+            throw new IllegalArgumentException("the drop must be visited after the pickup");
+        ArrayList<DARPNodeSolution> route = routes[vehicle];
+        route.add(pickupPosition, new DARPNodeSolution(pickup));
+        route.add(dropPosition, new DARPNodeSolution(drop));
+        propagateForward(vehicle, pickupPosition, dropPosition);
+        propagateBackward(vehicle, dropPosition, pickupPosition - 1);
+    }
+
+    /**
+     * remove the visit at a given position of the route of a vehicle
+     * @param vehicle vehicle visiting the node
+     * @param position position of the node in the route
+     * @return node that was visited
+     */
+    public DARPNode removeVisit(int vehicle, int position) {
+        DARPNode node = routes[vehicle].remove(position).darpNode;
+        propagateForward(vehicle, position, position);
+        propagateBackward(vehicle, position - 1, position - 1);
+        return node;
+    }
+
+    /**
+     * remove the visits of the pickup and drop of a request from the route of a vehicle
+     * @param vehicle vehicle visiting the nodes
+     * @param pickupPosition position of the pickup in the route
+     * @param dropPosition position of the drop in the route, greater than the position of the pickup
+     */
+    public void removeRequest(int vehicle, int pickupPosition, int dropPosition) {
+        if (dropPosition <= pickupPosition)
+            throw new IllegalArgumentException("the drop must be visited after the pickup");
+        ArrayList<DARPNodeSolution> route = routes[vehicle];
+        route.remove(dropPosition);
+        route.remove(pickupPosition);
+        // the nodes between the pickup and the drop have shifted by one position, the ones after it by two
+        propagateForward(vehicle, pickupPosition, dropPosition - 1);
+        propagateBackward(vehicle, dropPosition - 2, pickupPosition - 1);
+    }
+
+    /**
+     * move the visit of a node to another position, possibly within the route of another vehicle
+     * @param fromVehicle vehicle currently visiting the node
+     * @param fromPosition position of the node in the route of fromVehicle
+     * @param toVehicle vehicle that will visit the node
+     * @param toPosition position of the node in the route of toVehicle once moved, the node being removed first
+     */
+    public void moveVisit(int fromVehicle, int fromPosition, int toVehicle, int toPosition) {
+        insertVisit(toVehicle, toPosition, removeVisit(fromVehicle, fromPosition));
+    }
+
     /**
      * set the values of the DARPNodeSolutions for a given vehicle
-     * the beginning and end depot for the vehicle must have been set
      * @param vehicle vehicle whose nodes solution values will be set
      */
     private void setValuesVisit(int vehicle) {
-
         int nNodes = routes[vehicle].size();
-        if (nNodes < 2) // the beginning and end depot have not been assigned
-            return;
-        DARPNode[] nodesVisited = routes[vehicle].stream().map(DARPNodeSolution::getDarpNode).toArray(DARPNode[]::new);
-        // the first node should be the depot, set the starting time visited from here
-        double timeReached = routes[vehicle].get(0).getDarpNode().getTwStart();
-        int capacity = nodesVisited[0].getCapacity();
-
-        // set the values for the beginning depot
-        routes[vehicle].get(0).setCumulCapacity(capacity);
-        routes[vehicle].get(0).setVehicle(vehicle);
-        routes[vehicle].get(0).setEat(timeReached);
-        timeReached += nodesVisited[0].getServingDuration();
-
-        for (int i = 1; i < nNodes ; ++i) {
-            timeReached = timeReached + instance.getDistance(nodesVisited[i-1], nodesVisited[i]);
-            // waiting at a node is allowed
-            timeReached = Math.max(timeReached, nodesVisited[i].getTwStart());
-            // set the values for eat, cumulative capacity and serving vehicle
-            capacity += nodesVisited[i].getCapacity();
-            routes[vehicle].get(i).setCumulCapacity(capacity);
-            routes[vehicle].get(i).setVehicle(vehicle);
-            routes[vehicle].get(i).setEat(timeReached);
-            // add the service duration
-            timeReached += nodesVisited[i].getServingDuration();
-        }
-        // set the ending time visited
-        timeReached = nodesVisited[nNodes-1].getTwEnd();
-        routes[vehicle].get(nNodes-1).setLat(timeReached);
-        for (int i = nNodes-2; i >= 0 ; --i) {
-            // TODO check for service time
-            timeReached = timeReached - instance.getDistance(nodesVisited[i+1], nodesVisited[i]);
-            timeReached = Math.min(timeReached, nodesVisited[i].getTwEnd());
-            routes[vehicle].get(i).setLat(timeReached);
+        propagateForward(vehicle, 0, nNodes - 1);
+        propagateBackward(vehicle, nNodes - 1, 0);
+    }
+
+    /**
+     * set the vehicle, earliest arrival time and cumulative capacity of the nodes of a route, from a position up to the
+     * end of the route
+     * the values are always computed up to a given position, and then only as long as they change: once a node keeps
+     * its earliest arrival time and capacity, the values of its successors are left as they are
+     * @param vehicle vehicle whose nodes solution values will be set
+     * @param from first position to compute
+     * @param forcedTo last position computed even if its values did not change
+     */
+    private void propagateForward(int vehicle, int from, int forcedTo) {
+        ArrayList<DARPNodeSolution> route = routes[vehicle];
+        DARPInstanceView view = instance.getView();
+        int size = route.size();
+        for (int i = Math.max(from, 0); i < size; ++i) {
+            DARPNodeSolution node = route.get(i);
+            int id = node.darpNode.id;
+            double eat;
+            int capacity;
+            if (i == 0) { // the first node should be the depot, set the starting time visited from here
+                eat = view.getTwStart(id);
+                capacity = view.getLoad(id);
+            } else {
+                DARPNodeSolution pred = route.get(i - 1);
+                int predId = pred.darpNode.id;
+                double departure = pred.eat + view.getServingDuration(predId);
+                // waiting at a node is allowed
+                eat = Math.max(view.arrivalTime(predId, id, departure), view.getTwStart(id));
+                capacity = pred.cumulCapacity + view.getLoad(id);
+            }
+            boolean changed = eat != node.eat || capacity != node.cumulCapacity || vehicle != node.vehicle;
+            node.setEat(eat);
+            node.setCumulCapacity(capacity);
+            node.setVehicle(vehicle);
+            if (!changed && i > forcedTo)
+                return;
         }
+    }
 
+    /**
+     * set the latest arrival time of the nodes of a route, from a position down to the beginning of the route
+     * the values are always computed down to a given position, and then only as long as they change
+     * @param vehicle vehicle whose nodes solution values will be set
+     * @param from first position to compute, the nodes after it being up to date
+     * @param forcedTo last position computed even if its value did not change
+     */
+    private void propagateBackward(int vehicle, int from, int forcedTo) {
+        ArrayList<DARPNodeSolution> route = routes[vehicle];
+        DARPInstanceView view = instance.getView();
+        int size = route.size();
+        for (int i = Math.min(from, size - 1); i >= 0; --i) {
+            DARPNodeSolution node = route.get(i);
+            int id = node.darpNode.id;
+            double lat = view.getTwEnd(id);
+            if (i < size - 1) {
+                DARPNodeSolution succ = route.get(i + 1);
+                int succId = succ.darpNode.id;
+                // latest departure, the travel time being the one when leaving around that time
+                double travelTime = view.travelTime(id, succId);
+                travelTime = view.travelTime(id, succId, succ.lat - travelTime);
+                lat = Math.min(lat, succ.lat - travelTime - view.getServingDuration(id));
+            }
+            boolean changed = lat != node.lat;
+            node.setLat(lat);
+            if (!changed && i < forcedTo)
+                return;
+        }
     }
 
     public void resetVisit(int vehicle) {
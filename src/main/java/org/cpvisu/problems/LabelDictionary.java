@@ -0,0 +1,239 @@
+package org.cpvisu.problems;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.cpvisu.problems.SearchTree.NONE;
+
+/**
+ * dictionary of the labels of a search tree, giving an int code to each distinct label
+ * the labels produced by a solver repeat heavily ("x3 = 2", "x3 != 2", ...): the nodes only store the codes, and each
+ * distinct label is stored once
+ *
+ * a label is either a plain string, or a structured label (variable, operator, value) packed into a long. A structured
+ * label is only formatted into a string when it is first asked for, typically when it is drawn
+ */
+public class LabelDictionary {
+
+    // operators of the structured labels
+    public static final int EQ = 0;
+    public static final int NEQ = 1;
+    public static final int LE = 2;
+    public static final int LT = 3;
+    public static final int GE = 4;
+    public static final int GT = 5;
+    private static final String[] SYMBOLS = {"=", "!=", "<=", "<", ">=", ">"};
+    public static final int MAX_VARIABLE = (1 << 28) - 1;
+    private static final long FREE = -1; // marker for an empty slot and for the codes of plain strings
+
+    private String[] labels;          // code -> label, null for a structured label not formatted yet
+    private long[] structures;        // code -> packed structured label, FREE for a plain string
+    private int size;                 // number of codes given
+    private final HashMap<String, Integer> stringCodes;
+    // open addressing map from the packed structured labels to their codes
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private String[] variableNames;   // names used when formatting the variables, null for the default name
+
+    public LabelDictionary() {
+        labels = new String[16];
+        structures = new long[16];
+        stringCodes = new HashMap<>();
+        keys = new long[16];
+        Arrays.fill(keys, FREE);
+        values = new int[16];
+        mask = keys.length - 1;
+        variableNames = new String[0];
+    }
+
+    /**
+     * create a copy of a dictionary, giving the same codes to the same labels
+     * @param other dictionary to copy
+     */
+    public LabelDictionary(LabelDictionary other) {
+        labels = Arrays.copyOf(other.labels, other.labels.length);
+        structures = Arrays.copyOf(other.structures, other.structures.length);
+        size = other.size;
+        stringCodes = new HashMap<>(other.stringCodes);
+        keys = other.keys.clone();
+        values = other.values.clone();
+        mask = other.mask;
+        variableNames = other.variableNames.clone();
+    }
+
+    /**
+     * gives the code of a plain string label, adding it to the dictionary if needed
+     * @param label label to encode
+     * @return code of the label, NONE if the label is null
+     */
+    public int intern(String label) {
+        if (label == null)
+            return NONE;
+        Integer code = stringCodes.get(label);
+        if (code != null)
+            return code;
+        int c = newCode(label, FREE);
+        stringCodes.put(label, c);
+        return c;
+    }
+
+    /**
+     * gives the code of a structured label, adding it to the dictionary if needed
+     * @param variable id of the variable, in [0, MAX_VARIABLE]
+     * @param operator operator of the label (EQ, NEQ, LE, LT, GE or GT)
+     * @param value value compared to the variable
+     * @return code of the label
+     */
+    public int intern(int variable, int operator, int value) {
+        if (variable < 0 || variable > MAX_VARIABLE)
+            throw new IllegalArgumentException("invalid variable " + variable);
+        if (operator < 0 || operator >= SYMBOLS.length)
+            throw new IllegalArgumentException("invalid operator " + operator);
+        long key = ((long) variable << 35) | ((long) operator << 32) | (value & 0xFFFFFFFFL);
+        int i = slot(key);
+        while (keys[i] != FREE) {
+            if (keys[i] == key)
+                return values[i];
+            i = (i + 1) & mask;
+        }
+        int c = newCode(null, key);
+        keys[i] = key;
+        values[i] = c;
+        if (size * 2 >= keys.length)
+            rehash(keys.length * 2);
+        return c;
+    }
+
+    private int newCode(String label, long structure) {
+        if (size == labels.length) {
+            labels = Arrays.copyOf(labels, size * 2);
+            structures = Arrays.copyOf(structures, size * 2);
+        }
+        labels[size] = label;
+        structures[size] = structure;
+        return size++;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        values = new int[capacity];
+        mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; ++j) {
+            if (oldKeys[j] != FREE) {
+                int i = slot(oldKeys[j]);
+                while (keys[i] != FREE)
+                    i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * gives a dictionary without any label, formatting the variables with the same names as this one
+     */
+    LabelDictionary emptyCopy() {
+        LabelDictionary copy = new LabelDictionary();
+        copy.variableNames = variableNames.clone();
+        return copy;
+    }
+
+    /**
+     * add a label of another dictionary into this one
+     * @param other dictionary holding the label
+     * @param code code of the label in the other dictionary
+     * @return code of the label in this dictionary
+     */
+    int intern(LabelDictionary other, int code) {
+        if (code == NONE)
+            return NONE;
+        if (other.isStructured(code))
+            return intern(other.variableOf(code), other.operatorOf(code), other.valueOf(code));
+        return intern(other.labels[code]);
+    }
+
+    /**
+     * gives the string of a label, formatting it if it is a structured label seen for the first time
+     * @param code code of the label
+     * @return label, null if the code is NONE
+     */
+    public String labelOf(int code) {
+        if (code == NONE)
+            return null;
+        String label = labels[code];
+        if (label == null) {
+            label = variableName(variableOf(code)) + " " + SYMBOLS[operatorOf(code)] + " " + valueOf(code);
+            labels[code] = label;
+        }
+        return label;
+    }
+
+    /**
+     * @param code code of a label
+     * @return true if the label is a structured label
+     */
+    public boolean isStructured(int code) {
+        return structures[code] != FREE;
+    }
+
+    /**
+     * @param code code of a structured label
+     * @return variable of the label
+     */
+    public int variableOf(int code) {
+        return (int) (structures[code] >>> 35);
+    }
+
+    /**
+     * @param code code of a structured label
+     * @return operator of the label
+     */
+    public int operatorOf(int code) {
+        return (int) (structures[code] >>> 32) & 0x7;
+    }
+
+    /**
+     * @param code code of a structured label
+     * @return value of the label
+     */
+    public int valueOf(int code) {
+        return (int) structures[code];
+    }
+
+    /**
+     * set the name used when formatting a variable, instead of x followed by its id
+     * @param variable id of the variable
+     * @param name name of the variable
+     */
+    public void setVariableName(int variable, String name) {
+        if (variable >= variableNames.length)
+            variableNames = Arrays.copyOf(variableNames, Math.max(variable + 1, variableNames.length * 2));
+        variableNames[variable] = name;
+        // the structured labels already formatted are formatted again when asked for
+        for (int c = 0; c < size; ++c)
+            if (structures[c] != FREE)
+                labels[c] = null;
+    }
+
+    private String variableName(int variable) {
+        String name = variable < variableNames.length ? variableNames[variable] : null;
+        return name == null ? "x" + variable : name;
+    }
+
+    /**
+     * @return number of distinct labels in the dictionary
+     */
+    public int size() {
+        return size;
+    }
+
+}
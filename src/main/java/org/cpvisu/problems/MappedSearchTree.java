@@ -0,0 +1,496 @@
+package org.cpvisu.problems;
+
+import javafx.scene.paint.Color;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.cpvisu.problems.SearchTree.NONE;
+
+/**
+ * read-only search tree stored in a binary file, mapped in memory instead of being loaded on the heap
+ * only the pages of the file holding the nodes that are accessed are read, so that opening a huge tree is immediate
+ *
+ * the file (little endian) is made of a header followed by sections, all holding one value per node index:
+ * <ul>
+ *     <li>header: magic number, version, number of nodes, number of labels, length of the labels in bytes</li>
+ *     <li>int sections: ids, parent, first child, last child, next sibling, branch label, node label,
+ *     ids sorted increasingly and the index of each sorted id</li>
+ *     <li>byte section: status, padded to 8 bytes</li>
+ *     <li>dictionary of labels: offset of each label (long), followed by the UTF-8 bytes of all labels</li>
+ * </ul>
+ * labels are referred to by their number in the dictionary, NONE standing for no label
+ * the nodes are stored at the same indices as in the SearchTree that was written
+ */
+public class MappedSearchTree implements AutoCloseable {
+
+    private static final int MAGIC = 0x54565043; // "CPVT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int N_INT_SECTIONS = 9;
+    private static final Runnable NO_ACTION = () -> {};
+
+    private final FileChannel channel;
+    private final int size;         // number of nodes
+    private final int nLabels;      // number of labels in the dictionary
+    private final Section ids;
+    private final Section parent;
+    private final Section firstChild;
+    private final Section lastChild;
+    private final Section nextSibling;
+    private final Section branchLabels;
+    private final Section nodeLabels;
+    private final Section sortedIds;
+    private final Section sortedIndices;
+    private final Section status;
+    private final Section labelOffsets;
+    private final Section labelBytes;
+    private final HashMap<Integer, String> labels = new HashMap<>(); // labels already decoded
+    @SuppressWarnings("unchecked")
+    private SearchTreeNode<String>[] nodeStack = (SearchTreeNode<String>[]) new SearchTreeNode<?>[16]; // work array of toNode
+
+    private MappedSearchTree(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+            throw new IOException("not a search tree file");
+        size = header.getInt(8);
+        nLabels = header.getInt(12);
+        long labelLength = header.getLong(16);
+        long offset = HEADER_SIZE;
+        long intSection = (long) size * Integer.BYTES;
+        Section[] sections = new Section[N_INT_SECTIONS];
+        for (int i = 0; i < N_INT_SECTIONS; ++i) {
+            sections[i] = new Section(channel, offset, intSection);
+            offset += intSection;
+        }
+        ids = sections[0];
+        parent = sections[1];
+        firstChild = sections[2];
+        lastChild = sections[3];
+        nextSibling = sections[4];
+        branchLabels = sections[5];
+        nodeLabels = sections[6];
+        sortedIds = sections[7];
+        sortedIndices = sections[8];
+        status = new Section(channel, offset, size);
+        offset += padded(size);
+        labelOffsets = new Section(channel, offset, (long) (nLabels + 1) * Long.BYTES);
+        offset += (long) (nLabels + 1) * Long.BYTES;
+        labelBytes = new Section(channel, offset, labelLength);
+    }
+
+    /**
+     * open a search tree file, mapping it in memory
+     * @param path path of the file
+     * @return search tree stored in the file
+     * @throws IOException if the file cannot be read or is not a search tree file
+     */
+    public static MappedSearchTree open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MappedSearchTree(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * write a search tree into a file, that can then be opened with open()
+     * the actions of the nodes are not written
+     * @param tree search tree to write
+     * @param path path of the file, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(SearchTree tree, Path path) throws IOException {
+        int n = tree.nNodes();
+        // dictionary of labels
+        HashMap<String, Integer> codes = new HashMap<>();
+        ArrayList<byte[]> dictionary = new ArrayList<>();
+        int[] branchCodes = new int[n];
+        int[] nodeCodes = new int[n];
+        long labelLength = 0;
+        for (int i = 0; i < n; ++i) {
+            for (int k = 0; k < 2; ++k) {
+                String label = k == 0 ? tree.branchMessageOf(i) : tree.nodeMessageOf(i);
+                int code = NONE;
+                if (label != null) {
+                    Integer known = codes.get(label);
+                    if (known == null) {
+                        known = dictionary.size();
+                        codes.put(label, known);
+                        byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+                        dictionary.add(bytes);
+                        labelLength += bytes.length;
+                    }
+                    code = known;
+                }
+                if (k == 0)
+                    branchCodes[i] = code;
+                else
+                    nodeCodes[i] = code;
+            }
+        }
+        // ids sorted, to find the index of a node by binary search
+        long[] sorted = new long[n];
+        for (int i = 0; i < n; ++i)
+            sorted[i] = ((long) tree.nodeAt(i) << 32) | i;
+        Arrays.sort(sorted);
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(dictionary.size()).putLong(labelLength);
+            for (int section = 0; section < N_INT_SECTIONS; ++section) {
+                for (int i = 0; i < n; ++i) {
+                    if (buffer.remaining() < Integer.BYTES)
+                        drain(buffer, out);
+                    buffer.putInt(switch (section) {
+                        case 0 -> tree.nodeAt(i);
+                        case 1 -> tree.parentOf(i);
+                        case 2 -> tree.firstChildOf(i);
+                        case 3 -> tree.lastChildOf(i);
+                        case 4 -> tree.nextSiblingOf(i);
+                        case 5 -> branchCodes[i];
+                        case 6 -> nodeCodes[i];
+                        case 7 -> (int) (sorted[i] >> 32);
+                        default -> (int) sorted[i];
+                    });
+                }
+            }
+            for (long i = 0; i < padded(n); ++i) {
+                if (!buffer.hasRemaining())
+                    drain(buffer, out);
+                buffer.put(i < n ? (byte) tree.statusOf((int) i) : 0);
+            }
+            long labelOffset = 0;
+            for (int i = 0; i <= dictionary.size(); ++i) {
+                if (buffer.remaining() < Long.BYTES)
+                    drain(buffer, out);
+                buffer.putLong(labelOffset);
+                if (i < dictionary.size())
+                    labelOffset += dictionary.get(i).length;
+            }
+            for (byte[] bytes : dictionary) {
+                for (int from = 0; from < bytes.length; ) {
+                    if (!buffer.hasRemaining())
+                        drain(buffer, out);
+                    int length = Math.min(buffer.remaining(), bytes.length - from);
+                    buffer.put(bytes, from, length);
+                    from += length;
+                }
+            }
+            drain(buffer, out);
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel out) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            out.write(buffer);
+        buffer.clear();
+    }
+
+    private static long padded(long length) {
+        return (length + 7) & ~7L;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * gives the number of nodes appearing in the tree
+     * @return number of nodes appearing in the tree
+     */
+    public int nNodes() {
+        return size;
+    }
+
+    /**
+     * tell if a node belongs to the tree
+     * @param node id of the node
+     * @return true if the node belongs to the tree
+     */
+    public boolean contains(int node) {
+        return indexOf(node) != NONE;
+    }
+
+    /**
+     * gives the index at which a node is stored, through a binary search on the sorted ids
+     * @param node id of the node
+     * @return index of the node, or NONE if the node does not belong to the tree
+     */
+    public int indexOf(int node) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int id = sortedIds.getInt(mid);
+            if (id < node)
+                lo = mid + 1;
+            else if (id > node)
+                hi = mid - 1;
+            else
+                return sortedIndices.getInt(mid);
+        }
+        return NONE;
+    }
+
+    private int existingIndex(int node) {
+        int i = indexOf(node);
+        if (i == NONE)
+            throw new IllegalArgumentException("node " + node + " does not belong to the search tree");
+        return i;
+    }
+
+    /**
+     * gives the status associated to a node
+     * @param node node whose status needs to be known
+     * @return integer code for the status
+     * @throws IllegalArgumentException if the node does not belong to the tree
+     */
+    public int getNodeStatus(int node) {
+        return statusOf(existingIndex(node));
+    }
+
+    /**
+     * gives all branches having node as direct parent
+     * @param node node whose children need to be retrieved
+     * @return branches having node as parent
+     */
+    public List<SearchTree.Branch> children(int node) {
+        int p = indexOf(node);
+        if (p == NONE)
+            return List.of();
+        List<SearchTree.Branch> branches = new ArrayList<>();
+        for (int c = firstChildOf(p); c != NONE; c = nextSiblingOf(c))
+            branches.add(new SearchTree.Branch(node, nodeAt(c), nodeMessageOf(c), branchMessageOf(c), NO_ACTION));
+        return branches;
+    }
+
+    /**
+     * gives the node associated to an id, as a SearchTreeNode<String>
+     * only the part of the file holding the subtree of the node is read
+     * @param node id of the node that needs to be transformed to a SearchTreeNode
+     * @return SearchTreeNode of the node, with all its branches and children labeled
+     */
+    public SearchTreeNode<String> toNode(int node) {
+        int root = existingIndex(node);
+        // visit the subtree in post order, following the parent and sibling links. The nodes built are pushed on a
+        // stack, from which a parent pops the nodes of its children
+        int top = 0;
+        int v = root;
+        while (firstChildOf(v) != NONE)
+            v = firstChildOf(v);
+        while (true) {
+            Color color = colorOf(statusOf(v));
+            SearchTreeNode<String> built;
+            if (firstChildOf(v) == NONE) {
+                built = new SearchTreeNode<>(Integer.toString(nodeAt(v)), color, NO_ACTION);
+            } else {
+                int nChildren = 0;
+                for (int c = firstChildOf(v); c != NONE; c = nextSiblingOf(c))
+                    nChildren++;
+                List<SearchTreeNode<String>> sons = new ArrayList<>(nChildren);
+                List<String> edgeLabels = new ArrayList<>(nChildren);
+                top -= nChildren;
+                int k = top;
+                for (int c = firstChildOf(v); c != NONE; c = nextSiblingOf(c)) {
+                    sons.add(nodeStack[k]);
+                    nodeStack[k++] = null;
+                    edgeLabels.add(branchMessageOf(c));
+                }
+                built = new SearchTreeNode<>(Integer.toString(nodeAt(v)), sons, edgeLabels, color, NO_ACTION);
+            }
+            if (v == root)
+                return built;
+            if (top == nodeStack.length)
+                nodeStack = Arrays.copyOf(nodeStack, top * 2);
+            nodeStack[top++] = built;
+            if (nextSiblingOf(v) != NONE) {
+                v = nextSiblingOf(v);
+                while (firstChildOf(v) != NONE)
+                    v = firstChildOf(v);
+            } else {
+                v = parentOf(v);
+            }
+        }
+    }
+
+    /**
+     * copy the top of the subtree of a node into a search tree, in breadth first order, so that it can be drawn
+     * only the part of the file holding the nodes copied is read
+     * @param target search tree in which the branches are added. The node becomes a root if it was not in the tree
+     * @param node id of the root of the subtree to copy
+     * @param maxNodes maximum number of nodes to copy, including the root of the subtree
+     * @param action gives the action of each node copied, from its id. The root of the subtree holds no action
+     * @return number of nodes copied
+     * @throws IllegalArgumentException if the node does not belong to the tree
+     */
+    public int load(SearchTree target, int node, int maxNodes, IntFunction<Runnable> action) {
+        int root = existingIndex(node);
+        int[] queue = new int[Math.max(1, Math.min(maxNodes, size))];
+        int nQueued = 0;
+        queue[nQueued++] = root;
+        for (int i = 0; i < nQueued; ++i) {
+            int v = queue[i];
+            for (int c = firstChildOf(v); c != NONE && nQueued < queue.length; c = nextSiblingOf(c)) {
+                int child = nodeAt(c);
+                target.addBranch(nodeAt(v), child, nodeMessageOf(c), branchMessageOf(c), action.apply(child));
+                copyStatus(target, c);
+                queue[nQueued++] = c;
+            }
+        }
+        if (target.contains(node)) { // a leaf is not added, as the branches create the nodes
+            target.setNodeMessage(node, nodeMessageOf(root));
+            copyStatus(target, root);
+        }
+        return nQueued;
+    }
+
+    private void copyStatus(SearchTree target, int index) {
+        if (statusOf(index) == SearchTree.SUCCESS)
+            target.addSuccess(nodeAt(index));
+        else if (statusOf(index) == SearchTree.FAILURE)
+            target.addFailure(nodeAt(index));
+    }
+
+    /**
+     * @param index index of a node
+     * @return id of the node
+     */
+    public int nodeAt(int index) {
+        return ids.getInt(index);
+    }
+
+    /**
+     * @param index index of a node
+     * @return index of the parent of the node, or NONE if the node is a root
+     */
+    public int parentOf(int index) {
+        return parent.getInt(index);
+    }
+
+    /**
+     * @param index index of a node
+     * @return index of the first child of the node, or NONE if the node is a leaf
+     */
+    public int firstChildOf(int index) {
+        return firstChild.getInt(index);
+    }
+
+    /**
+     * @param index index of a node
+     * @return index of the last child of the node, or NONE if the node is a leaf
+     */
+    public int lastChildOf(int index) {
+        return lastChild.getInt(index);
+    }
+
+    /**
+     * @param index index of a node
+     * @return index of the next sibling of the node, or NONE if the node is the last child of its parent
+     */
+    public int nextSiblingOf(int index) {
+        return nextSibling.getInt(index);
+    }
+
+    /**
+     * @param index index of a node
+     * @return status of the node
+     */
+    public int statusOf(int index) {
+        return status.get(index);
+    }
+
+    /**
+     * @param index index of a node
+     * @return message associated with the node
+     */
+    public String nodeMessageOf(int index) {
+        return label(nodeLabels.getInt(index));
+    }
+
+    /**
+     * @param index index of a node
+     * @return message associated with the branch leading to the node
+     */
+    public String branchMessageOf(int index) {
+        return label(branchLabels.getInt(index));
+    }
+
+    /**
+     * @param status status of a node
+     * @return color used to draw a node with the given status
+     */
+    public Color colorOf(int status) {
+        return SearchTree.statusColor(status);
+    }
+
+    /**
+     * decode a label of the dictionary, the first time it is needed
+     * @param code number of the label in the dictionary
+     * @return label, null if the code is NONE
+     */
+    private String label(int code) {
+        if (code == NONE)
+            return null;
+        return labels.computeIfAbsent(code, c -> {
+            long from = labelOffsets.getLong(c);
+            int length = (int) (labelOffsets.getLong(c + 1) - from);
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; ++i)
+                bytes[i] = labelBytes.get(from + i);
+            return new String(bytes, StandardCharsets.UTF_8);
+        });
+    }
+
+    /**
+     * region of the file mapped in memory
+     * a region is mapped through several buffers if needed, as a buffer cannot hold more than 2GB
+     */
+    private static final class Section {
+
+        private static final int SEGMENT_SHIFT = 30;
+        private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+        private final MappedByteBuffer[] segments;
+
+        Section(FileChannel channel, long offset, long length) throws IOException {
+            segments = new MappedByteBuffer[(int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; ++i) {
+                long from = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + from, Math.min(length - from, 1L << SEGMENT_SHIFT));
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        byte get(long i) {
+            return segments[(int) (i >>> SEGMENT_SHIFT)].get((int) (i & SEGMENT_MASK));
+        }
+
+        int getInt(long i) {
+            long position = i * Integer.BYTES;
+            return segments[(int) (position >>> SEGMENT_SHIFT)].getInt((int) (position & SEGMENT_MASK));
+        }
+
+        long getLong(long i) {
+            long position = i * Long.BYTES;
+            return segments[(int) (position >>> SEGMENT_SHIFT)].getLong((int) (position & SEGMENT_MASK));
+        }
+
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.cpvisu.problems;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * travel times read from a binary file mapped into memory, the file being paged in by the operating system instead of
+ * being read onto the heap
+ *
+ * the file holds one or more n x n matrices of travel times, stored row-major as 4-byte floats or ints: the travel time
+ * from node a to node b is the entry a * n + b of a matrix. With several matrices, the travel times depend on the time
+ * of departure: the matrix k gives the travel times when leaving at time k * bucketDuration, and the travel times
+ * between two buckets are interpolated linearly. Departures before the first bucket or after the last one use the
+ * first or last matrix
+ */
+public class MappedTravelTimes implements TravelTimes {
+
+    private static final int ENTRY_BYTES = 4;
+
+    private final int n;                     // number of nodes
+    private final boolean integers;          // true if the entries are ints, false if they are floats
+    private final double bucketDuration;     // time between two consecutive matrices
+    private final MappedByteBuffer[] slices; // one mapped matrix per time bucket
+
+    /**
+     * map a file of travel times into memory
+     * @param file file holding the matrices of travel times
+     * @param n number of nodes in a matrix
+     * @param integers true if the entries are 4-byte ints, false if they are 4-byte floats
+     * @param bucketDuration time between two consecutive matrices of the file, ignored if it holds a single matrix
+     * @param order byte order of the entries in the file
+     * @throws IllegalArgumentException if the size of the file is not a multiple of the size of a matrix
+     * @throws UncheckedIOException if the file cannot be mapped
+     */
+    public MappedTravelTimes(Path file, int n, boolean integers, double bucketDuration, ByteOrder order) {
+        this.n = n;
+        this.integers = integers;
+        this.bucketDuration = bucketDuration;
+        long sliceBytes = (long) n * n * ENTRY_BYTES;
+        if (sliceBytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("a matrix of " + n + " nodes does not fit into a mapped buffer");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (sliceBytes == 0 || size == 0 || size % sliceBytes != 0)
+                throw new IllegalArgumentException("the size of " + file + " (" + size + " bytes) is not a multiple of a "
+                        + n + " x " + n + " matrix");
+            slices = new MappedByteBuffer[(int) (size / sliceBytes)];
+            for (int k = 0; k < slices.length; ++k) {
+                slices[k] = channel.map(FileChannel.MapMode.READ_ONLY, k * sliceBytes, sliceBytes);
+                slices[k].order(order);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * map a file holding a single matrix of little-endian floats
+     * @param file file holding the matrix of travel times
+     * @param n number of nodes
+     * @return travel times of the file
+     */
+    public static MappedTravelTimes floats(Path file, int n) {
+        return new MappedTravelTimes(file, n, false, 1, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * map a file holding a single matrix of little-endian ints
+     * @param file file holding the matrix of travel times
+     * @param n number of nodes
+     * @return travel times of the file
+     */
+    public static MappedTravelTimes integers(Path file, int n) {
+        return new MappedTravelTimes(file, n, true, 1, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * map a file holding one matrix of little-endian entries per time bucket
+     * @param file file holding the matrices of travel times
+     * @param n number of nodes in a matrix
+     * @param integers true if the entries are ints, false if they are floats
+     * @param bucketDuration time between two consecutive matrices
+     * @return time dependent travel times of the file
+     */
+    public static MappedTravelTimes timeDependent(Path file, int n, boolean integers, double bucketDuration) {
+        return new MappedTravelTimes(file, n, integers, bucketDuration, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return number of nodes in a matrix
+     */
+    public int nNodes() {
+        return n;
+    }
+
+    /**
+     * @return number of matrices in the file, one per time bucket
+     */
+    public int nSlices() {
+        return slices.length;
+    }
+
+    private double entry(int slice, int from, int to) {
+        if (from < 0 || from >= n || to < 0 || to >= n)
+            throw new IllegalArgumentException("no travel time between nodes " + from + " and " + to + " in a "
+                    + n + " x " + n + " matrix");
+        int position = (from * n + to) * ENTRY_BYTES;
+        return integers ? slices[slice].getInt(position) : slices[slice].getFloat(position);
+    }
+
+    /**
+     * gives the travel time from the first matrix of the file
+     * @throws IllegalArgumentException if an id is outside of the matrix
+     */
+    @Override
+    public double travelTime(int from, int to) {
+        return entry(0, from, to);
+    }
+
+    /**
+     * gives the travel time interpolated between the matrices of the two buckets surrounding the departure
+     * @throws IllegalArgumentException if an id is outside of the matrix
+     */
+    @Override
+    public double travelTime(int from, int to, double departure) {
+        if (slices.length == 1 || departure <= 0)
+            return entry(0, from, to);
+        double bucket = departure / bucketDuration;
+        int k = (int) bucket;
+        if (k >= slices.length - 1)
+            return entry(slices.length - 1, from, to);
+        double weight = bucket - k;
+        return (1 - weight) * entry(k, from, to) + weight * entry(k + 1, from, to);
+    }
+
+}
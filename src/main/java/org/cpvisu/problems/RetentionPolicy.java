@@ -0,0 +1,82 @@
+package org.cpvisu.problems;
+
+import static org.cpvisu.problems.SearchTree.*;
+
+/**
+ * retention policy, telling which nodes of a search tree are kept when the tree is compacted
+ *
+ * whatever the policy, the roots, the nodes still having open leaves in their subtree and the ancestors of every kept
+ * node are kept as well, so that the solver can keep on branching. The other nodes are evicted: their subtree is
+ * folded into the aggregates (size, successes, failures) of their closest kept ancestor, which is then collapsed
+ */
+@FunctionalInterface
+public interface RetentionPolicy {
+
+    /**
+     * select the nodes to keep
+     * @param tree search tree to compact, that must only be read
+     * @param kept kept[i] must be set to true for every node of index i to keep. Initially filled with false
+     */
+    void retain(SearchTree tree, boolean[] kept);
+
+    /**
+     * combine two policies: a node is kept if one of them keeps it
+     */
+    default RetentionPolicy or(RetentionPolicy other) {
+        return (tree, kept) -> {
+            retain(tree, kept);
+            other.retain(tree, kept);
+        };
+    }
+
+    /**
+     * keep the last nodes added to the tree
+     * @param n number of nodes to keep
+     * @return policy keeping the n last nodes
+     */
+    static RetentionPolicy keepLast(int n) {
+        return (tree, kept) -> {
+            for (int i = Math.max(0, tree.nNodes() - n); i < tree.nNodes(); ++i)
+                kept[i] = true;
+        };
+    }
+
+    /**
+     * keep the paths to the solutions, plus a sample of the failures
+     * the sampling only depends on the id of a node, so that a failure kept once stays kept in later compactions
+     * @param failureRate ratio of failures to keep, in [0, 1]
+     * @return policy keeping the solutions and a sample of the failures
+     */
+    static RetentionPolicy solutions(double failureRate) {
+        long threshold = (long) (failureRate * (1L << 32));
+        return (tree, kept) -> {
+            for (int i = 0; i < tree.nNodes(); ++i) {
+                int status = tree.statusOf(i);
+                if (status == SUCCESS) {
+                    kept[i] = true;
+                } else if (status == FAILURE) {
+                    int h = tree.nodeAt(i) * 0x9E3779B9;
+                    kept[i] = ((h ^ (h >>> 16)) & 0xFFFFFFFFL) < threshold;
+                }
+            }
+        };
+    }
+
+    /**
+     * fold the subtrees whose exploration is over without any solution into their root
+     * the root of such a subtree is kept, and summarizes the subtree through its aggregates
+     * @return policy folding the failed subtrees
+     */
+    static RetentionPolicy foldFailed() {
+        return (tree, kept) -> {
+            for (int i = 0; i < tree.nNodes(); ++i) {
+                if (tree.successesOf(i) > 0 || tree.openLeavesOf(i) > 0) {
+                    kept[i] = true;
+                    for (int c = tree.firstChildOf(i); c != NONE; c = tree.nextSiblingOf(c))
+                        kept[c] = true;
+                }
+            }
+        };
+    }
+
+}
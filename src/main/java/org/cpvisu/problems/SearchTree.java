@@ -1,34 +1,175 @@
 package org.cpvisu.problems;
 
 import javafx.scene.paint.Color;
+import org.cpvisu.util.IntIntMap;
+import org.cpvisu.util.colors.ColorPalette;
+import org.cpvisu.util.colors.DefaultPalette;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * search tree encoding for visualization
  * each node in the tree is identified by an integer
+ *
+ * the tree is stored as a struct of arrays: every node occupies an index in [0, nNodes()), given in insertion order,
+ * and its parent, first child, last child and next sibling are stored as indices into primitive arrays
+ * navigation from a node to its parent or its children is therefore done in O(1), without scanning the branches
+ *
+ * each node also holds aggregates over its subtree (number of nodes, successes, failures and open leaves), maintained
+ * incrementally on the path from a changed node to its root. A subtree can be collapsed, in which case it is drawn
+ * as a single summary shape instead of node by node
+ *
+ * the messages of the nodes and of the branches are stored as int codes into a LabelDictionary, shared by all nodes
+ *
+ * a tree growing for hours can be compacted according to a RetentionPolicy, evicting nodes whose subtree is folded into
+ * the aggregates of a kept ancestor. Compacting changes the indices of the nodes (their relative order is kept) and
+ * is notified to the listeners. A memory budget can also be given, that the tree enforces by compacting itself: the
+ * nodes to keep are selected in the background on a snapshot, and the compaction is applied on the next change
  */
 public class SearchTree {
 
     // possible status for a node
-    public final int INTERMEDIATE = 0;  // nodes are intermediate by default
-    public final int SUCCESS = 1;
-    public final int FAILURE = 2;
+    public static final int INTERMEDIATE = 0;  // nodes are intermediate by default
+    public static final int SUCCESS = 1;
+    public static final int FAILURE = 2;
+    // index used to represent the absence of a node (no parent, no child, no sibling, ...)
+    public static final int NONE = -1;
     // colors for the nodes depending on the status
-    private final Map<Integer, Color> colorMapping = Map.of(
+    private static final Map<Integer, Color> colorMapping = Map.of(
             INTERMEDIATE, Color.LIGHTBLUE,
             SUCCESS, Color.LIGHTGREEN,
             FAILURE, Color.DARKSALMON
     );
+    // colors for the nodes depending on the worker that created them
+    private static final ColorPalette workerPalette = new DefaultPalette();
     // branches in the tree
     public record Branch(int parent, int node, String nodeMessage, String branchMessage, Runnable action) {};
-    private ArrayList<Branch> branches;
-    // status of each node
-    private HashMap<Integer, Integer> nodes_status;
+
+    private static final int INITIAL_CAPACITY = 16;
+    // estimated number of bytes used by a node: its entries in the arrays and in the map of indices
+    public static final int BYTES_PER_NODE = 4 * 13 + 2 + 4 + 16;
+    private static final Runnable NO_ACTION = () -> {};
+
+    private IntIntMap indices;        // id of a node -> index of the node
+    private int[] ids;                // index of a node -> id of the node
+    private int[] parent;             // index of the parent of each node, NONE for a root
+    private int[] firstChild;         // index of the first child of each node, NONE for a leaf
+    private int[] lastChild;          // index of the last child of each node, used to append children in O(1)
+    private int[] nextSibling;        // index of the next sibling of each node, NONE for the last child
+    private byte[] status;            // status of each node
+    private int[] nodeLabels;         // code of the message associated with each node, NONE if none
+    private int[] branchLabels;       // code of the message associated with the branch leading to each node, NONE if none
+    private LabelDictionary labels;   // messages of the nodes and branches, by code
+    private Runnable[] actions;       // action associated with each node, null if none was given
+    private int[] subtreeSize;        // number of nodes in the subtree of each node, including the node itself
+    private int[] subtreeSuccess;     // number of success nodes in the subtree of each node
+    private int[] subtreeFailure;     // number of failure nodes in the subtree of each node
+    private int[] subtreeOpen;        // number of leaves in the subtree of each node still having the intermediate status
+    private boolean[] collapsed;      // true if the subtree of a node is collapsed
+    private int[] workers;            // worker that created each node, NONE if unknown
+    private int size;                 // number of nodes in the tree
+    private int nBranches;            // number of branches in the tree
+    private final ArrayList<SearchTreeListener> listeners = new ArrayList<>();
+    // compaction enforcing the memory budget
+    private int budget = Integer.MAX_VALUE;        // maximum number of nodes to store
+    private int nextCompaction = Integer.MAX_VALUE; // number of nodes from which the tree must be compacted
+    private RetentionPolicy budgetPolicy;
+    private ExecutorService compactor;
+    private Future<boolean[]> selection;             // nodes to keep, selected in the background
+    private int selectionSize;                       // number of nodes in the tree when the selection was started
+    @SuppressWarnings("unchecked")
+    private SearchTreeNode<String>[] nodeStack = (SearchTreeNode<String>[]) new SearchTreeNode<?>[INITIAL_CAPACITY]; // work array of toNode
 
     public SearchTree() {
-        nodes_status = new HashMap<>();
-        branches = new ArrayList<>();
+        clear();
+    }
+
+    /**
+     * create a copy of a search tree, without its listeners
+     * @param other tree to copy
+     */
+    private SearchTree(SearchTree other) {
+        int capacity = Math.max(other.size, INITIAL_CAPACITY);
+        indices = new IntIntMap(other.indices);
+        ids = Arrays.copyOf(other.ids, capacity);
+        parent = Arrays.copyOf(other.parent, capacity);
+        firstChild = Arrays.copyOf(other.firstChild, capacity);
+        lastChild = Arrays.copyOf(other.lastChild, capacity);
+        nextSibling = Arrays.copyOf(other.nextSibling, capacity);
+        status = Arrays.copyOf(other.status, capacity);
+        nodeLabels = Arrays.copyOf(other.nodeLabels, capacity);
+        branchLabels = Arrays.copyOf(other.branchLabels, capacity);
+        labels = new LabelDictionary(other.labels);
+        actions = Arrays.copyOf(other.actions, capacity);
+        subtreeSize = Arrays.copyOf(other.subtreeSize, capacity);
+        subtreeSuccess = Arrays.copyOf(other.subtreeSuccess, capacity);
+        subtreeFailure = Arrays.copyOf(other.subtreeFailure, capacity);
+        subtreeOpen = Arrays.copyOf(other.subtreeOpen, capacity);
+        collapsed = Arrays.copyOf(other.collapsed, capacity);
+        workers = Arrays.copyOf(other.workers, capacity);
+        size = other.size;
+        nBranches = other.nBranches;
+    }
+
+    /**
+     * share the nodes of another tree, without copying them
+     * @param other tree whose arrays are shared
+     */
+    private void assign(SearchTree other) {
+        indices = other.indices;
+        ids = other.ids;
+        parent = other.parent;
+        firstChild = other.firstChild;
+        lastChild = other.lastChild;
+        nextSibling = other.nextSibling;
+        status = other.status;
+        nodeLabels = other.nodeLabels;
+        branchLabels = other.branchLabels;
+        labels = other.labels;
+        actions = other.actions;
+        subtreeSize = other.subtreeSize;
+        subtreeSuccess = other.subtreeSuccess;
+        subtreeFailure = other.subtreeFailure;
+        subtreeOpen = other.subtreeOpen;
+        collapsed = other.collapsed;
+        workers = other.workers;
+        size = other.size;
+        nBranches = other.nBranches;
+    }
+
+    /**
+     * gives a copy of the current tree, that can be read by another thread while this tree keeps changing
+     * the nodes are stored at the same indices in both trees
+     * @return copy of the tree, without any listener
+     */
+    public SearchTree snapshot() {
+        return new SearchTree(this);
+    }
+
+    /**
+     * replace the nodes of this tree by a copy of the nodes of another one, keeping the listeners of this tree
+     * the listeners are notified through onCompact, as the indices of the nodes may have changed
+     * @param other tree to copy, typically a snapshot
+     */
+    public void restore(SearchTree other) {
+        cancelSelection();
+        assign(new SearchTree(other));
+        nextCompaction = budget;
+        for (SearchTreeListener listener : listeners)
+            listener.onCompact();
+    }
+
+    /**
+     * register a listener, notified of every change occurring in the tree
+     * @param listener listener to register
+     */
+    public void addListener(SearchTreeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(SearchTreeListener listener) {
+        listeners.remove(listener);
     }
 
     /**
@@ -40,7 +181,7 @@ public class SearchTree {
      * @param branchMessage message associated with the branch binding the parent to the node
      */
     public void addBranch(int parent, int node, String nodeMessage, String branchMessage) {
-        this.addBranch(parent, node, nodeMessage, branchMessage, () -> {});
+        this.addBranch(parent, node, nodeMessage, branchMessage, NO_ACTION);
     }
 
     /**
@@ -51,12 +192,79 @@ public class SearchTree {
      * @param nodeMessage message associated with the node
      * @param branchMessage message associated with the branch binding the parent to the node
      * @param action action to perform on the given node
+     * @throws IllegalArgumentException if the node already has a parent or if the branch would create a cycle
      */
     public void addBranch(int parent, int node, String nodeMessage, String branchMessage, Runnable action) {
-        nodes_status.put(node, INTERMEDIATE);
-        if (!nodes_status.containsKey(parent))
-            nodes_status.put(parent, INTERMEDIATE);
-        branches.add(new Branch(parent, node, nodeMessage, branchMessage, action));
+        enforceBudget();
+        addBranchCoded(parent, node, labels.intern(nodeMessage), labels.intern(branchMessage), action);
+    }
+
+    /**
+     * add a branch labeled by a structured label (variable, operator, value), only formatted when drawn
+     * assume that the child node does not belong to the tree yet
+     * @param parent node from which the branch will be created
+     * @param node node that needs to be added (and was absent before)
+     * @param variable id of the variable on which the branching is done
+     * @param operator operator of the branching, as defined in LabelDictionary
+     * @param value value on which the branching is done
+     */
+    public void addBranch(int parent, int node, int variable, int operator, int value) {
+        addBranch(parent, node, variable, operator, value, NO_ACTION);
+    }
+
+    /**
+     * add a branch labeled by a structured label (variable, operator, value), only formatted when drawn
+     * assume that the child node does not belong to the tree yet
+     * @param parent node from which the branch will be created
+     * @param node node that needs to be added (and was absent before)
+     * @param variable id of the variable on which the branching is done
+     * @param operator operator of the branching, as defined in LabelDictionary
+     * @param value value on which the branching is done
+     * @param action action to perform on the given node
+     */
+    public void addBranch(int parent, int node, int variable, int operator, int value, Runnable action) {
+        enforceBudget();
+        addBranchCoded(parent, node, NONE, labels.intern(variable, operator, value), action);
+    }
+
+    private void addBranchCoded(int parent, int node, int nodeLabel, int branchLabel, Runnable action) {
+        int p = indexOf(parent);
+        if (p == NONE)
+            p = newIndex(parent);
+        int c = indexOf(node);
+        if (c == NONE) {
+            c = newIndex(node);
+        } else { // the node was only known as a parent so far
+            if (this.parent[c] != NONE)
+                throw new IllegalArgumentException("node " + node + " already has a parent in the search tree");
+            for (int i = p; i != NONE; i = this.parent[i])
+                if (i == c)
+                    throw new IllegalArgumentException("branch from " + parent + " to " + node + " creates a cycle");
+            updateAggregates(c, status[c], INTERMEDIATE);
+        }
+        status[c] = INTERMEDIATE;
+        // the subtree of the node is added to the subtrees of its new ancestors
+        int openDelta = subtreeOpen[c];
+        if (subtreeSize[p] == 1 && status[p] == INTERMEDIATE) // the parent is no longer an open leaf
+            openDelta--;
+        for (int i = p; i != NONE; i = this.parent[i]) {
+            subtreeSize[i] += subtreeSize[c];
+            subtreeSuccess[i] += subtreeSuccess[c];
+            subtreeFailure[i] += subtreeFailure[c];
+            subtreeOpen[i] += openDelta;
+        }
+        this.parent[c] = p;
+        if (lastChild[p] == NONE)
+            firstChild[p] = c;
+        else
+            nextSibling[lastChild[p]] = c;
+        lastChild[p] = c;
+        nodeLabels[c] = nodeLabel;
+        branchLabels[c] = branchLabel;
+        actions[c] = action;
+        nBranches++;
+        for (SearchTreeListener listener : listeners)
+            listener.onBranch(p, c);
     }
 
     /**
@@ -66,7 +274,7 @@ public class SearchTree {
      * @param node node that needs to be added (and was absent before)
      */
     public void addBranch(int parent, int node) {
-        addBranch(parent, node, null, null, () -> {});
+        addBranch(parent, node, null, null, NO_ACTION);
     }
 
     /**
@@ -80,11 +288,278 @@ public class SearchTree {
         addBranch(parent, node, null, null, action);
     }
 
+    /**
+     * register a new node, without any parent nor child
+     * @param node id of the node
+     * @return index of the node
+     */
+    private int newIndex(int node) {
+        if (size == ids.length)
+            grow(size * 2);
+        int i = size++;
+        ids[i] = node;
+        parent[i] = NONE;
+        firstChild[i] = NONE;
+        lastChild[i] = NONE;
+        nextSibling[i] = NONE;
+        status[i] = INTERMEDIATE;
+        nodeLabels[i] = NONE;
+        branchLabels[i] = NONE;
+        subtreeSize[i] = 1;
+        subtreeSuccess[i] = 0;
+        subtreeFailure[i] = 0;
+        subtreeOpen[i] = 1;
+        collapsed[i] = false;
+        workers[i] = NONE;
+        indices.put(node, i);
+        return i;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        lastChild = Arrays.copyOf(lastChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        status = Arrays.copyOf(status, capacity);
+        nodeLabels = Arrays.copyOf(nodeLabels, capacity);
+        branchLabels = Arrays.copyOf(branchLabels, capacity);
+        actions = Arrays.copyOf(actions, capacity);
+        subtreeSize = Arrays.copyOf(subtreeSize, capacity);
+        subtreeSuccess = Arrays.copyOf(subtreeSuccess, capacity);
+        subtreeFailure = Arrays.copyOf(subtreeFailure, capacity);
+        subtreeOpen = Arrays.copyOf(subtreeOpen, capacity);
+        collapsed = Arrays.copyOf(collapsed, capacity);
+        workers = Arrays.copyOf(workers, capacity);
+    }
+
+    /**
+     * replace the nodes by empty arrays, able to hold the given number of nodes
+     */
+    private void allocate(int capacity) {
+        indices = new IntIntMap(capacity);
+        ids = new int[capacity];
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        lastChild = new int[capacity];
+        nextSibling = new int[capacity];
+        status = new byte[capacity];
+        nodeLabels = new int[capacity];
+        branchLabels = new int[capacity];
+        actions = new Runnable[capacity];
+        subtreeSize = new int[capacity];
+        subtreeSuccess = new int[capacity];
+        subtreeFailure = new int[capacity];
+        subtreeOpen = new int[capacity];
+        collapsed = new boolean[capacity];
+        workers = new int[capacity];
+        size = 0;
+        nBranches = 0;
+    }
+
     /**
      * reset the whole search tree
      */
     public void clear() {
-        nodes_status = new HashMap<>();
+        allocate(INITIAL_CAPACITY);
+        labels = new LabelDictionary();
+        cancelSelection();
+        nextCompaction = budget;
+        for (SearchTreeListener listener : listeners)
+            listener.onClear();
+    }
+
+    /**
+     * set a memory budget, that the tree enforces by compacting itself once it is exceeded
+     * the nodes to keep are selected in the background and the compaction is applied when a branch is added. If the
+     * tree grows by half the budget before the selection is over, it is compacted at once. The nodes that cannot be
+     * evicted (see RetentionPolicy) are always kept, so that the budget can be exceeded if they do not fit into it
+     * if the policy throws an exception in the background, it is rethrown by the next addBranch, wrapped into an
+     * IllegalStateException
+     * @param bytes memory budget, in bytes, estimated through BYTES_PER_NODE
+     * @param policy policy selecting the nodes to keep when compacting
+     */
+    public void setMemoryBudget(long bytes, RetentionPolicy policy) {
+        budget = (int) Math.min(Integer.MAX_VALUE, bytes / BYTES_PER_NODE);
+        budgetPolicy = policy;
+        nextCompaction = budget;
+        cancelSelection();
+    }
+
+    /**
+     * remove the memory budget, the tree is no longer compacted by itself
+     */
+    public void removeMemoryBudget() {
+        budget = Integer.MAX_VALUE;
+        budgetPolicy = null;
+        nextCompaction = budget;
+        cancelSelection();
+    }
+
+    /**
+     * @return estimated number of bytes used by the nodes of the tree
+     */
+    public long memoryUsage() {
+        return (long) size * BYTES_PER_NODE;
+    }
+
+    private void cancelSelection() {
+        if (selection != null) {
+            selection.cancel(true);
+            selection = null;
+        }
+    }
+
+    /**
+     * apply the selection computed in the background if it is over, and start a new one if the budget is exceeded
+     * @throws IllegalStateException if the retention policy failed in the background, with its exception as cause
+     */
+    private void enforceBudget() {
+        if (selection != null && selection.isDone()) {
+            Future<boolean[]> done = selection;
+            selection = null;
+            try {
+                compact(done.get(), selectionSize);
+            } catch (InterruptedException e) { // the selection is started again with the next branch
+                Thread.currentThread().interrupt();
+            } catch (CancellationException e) {
+                // a cancelled selection is never applied
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("search tree compaction failed", e.getCause());
+            }
+        }
+        if (size < nextCompaction)
+            return;
+        if (selection == null) {
+            SearchTree snapshot = snapshot();
+            RetentionPolicy policy = budgetPolicy;
+            if (compactor == null) {
+                compactor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "search tree compaction");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            selectionSize = size;
+            selection = compactor.submit(() -> {
+                boolean[] kept = new boolean[snapshot.size];
+                policy.retain(snapshot, kept);
+                return kept;
+            });
+        } else if (size >= nextCompaction + budget / 2) { // the selection is too slow to keep up with the solver
+            cancelSelection();
+            compact(budgetPolicy);
+        }
+    }
+
+    /**
+     * compact the tree, evicting the nodes not selected by a retention policy
+     * the subtree of an evicted node is folded into the aggregates of its closest kept ancestor, which gets collapsed
+     * @param policy policy selecting the nodes to keep
+     * @return number of nodes evicted
+     */
+    public int compact(RetentionPolicy policy) {
+        cancelSelection(); // a selection done in the background refers to the indices before this compaction
+        boolean[] kept = new boolean[size];
+        policy.retain(this, kept);
+        return compact(kept, size);
+    }
+
+    /**
+     * compact the tree
+     * @param selected nodes to keep among the nodes of index in [0, n)
+     * @param n number of nodes on which the selection was done. The nodes added afterwards are kept
+     * @return number of nodes evicted
+     */
+    private int compact(boolean[] selected, int n) {
+        // closure of the selection: roots, nodes with open leaves and ancestors of the kept nodes are kept
+        boolean[] kept = new boolean[size];
+        for (int i = 0; i < size; ++i) {
+            if (i >= n || selected[i] || parent[i] == NONE || subtreeOpen[i] > 0) {
+                for (int j = i; j != NONE && !kept[j]; j = parent[j])
+                    kept[j] = true;
+            }
+        }
+        int[] newIndex = new int[size];
+        int nKept = 0;
+        for (int i = 0; i < size; ++i)
+            newIndex[i] = kept[i] ? nKept++ : NONE;
+        int evicted = size - nKept;
+        if (evicted > 0) {
+            SearchTree old = new SearchTree();
+            old.assign(this); // holds the current arrays, replaced by smaller ones
+            allocate(Math.max(nKept, INITIAL_CAPACITY));
+            labels = old.labels.emptyCopy();
+            size = nKept;
+            // only the labels still used are kept in the dictionary
+            int[] newLabel = new int[old.labels.size()];
+            Arrays.fill(newLabel, Integer.MIN_VALUE);
+            for (int i = 0; i < old.size; ++i) {
+                int v = newIndex[i];
+                if (v == NONE)
+                    continue;
+                ids[v] = old.ids[i];
+                indices.put(ids[v], v);
+                parent[v] = old.parent[i] == NONE ? NONE : newIndex[old.parent[i]];
+                if (parent[v] != NONE)
+                    nBranches++;
+                firstChild[v] = NONE;
+                lastChild[v] = NONE;
+                nextSibling[v] = NONE;
+                status[v] = old.status[i];
+                nodeLabels[v] = remapLabel(old.labels, old.nodeLabels[i], newLabel);
+                branchLabels[v] = remapLabel(old.labels, old.branchLabels[i], newLabel);
+                actions[v] = old.actions[i];
+                subtreeSize[v] = old.subtreeSize[i];
+                subtreeSuccess[v] = old.subtreeSuccess[i];
+                subtreeFailure[v] = old.subtreeFailure[i];
+                subtreeOpen[v] = old.subtreeOpen[i];
+                collapsed[v] = old.collapsed[i];
+                workers[v] = old.workers[i];
+            }
+            // children in the same order as before, a node losing some of them is collapsed
+            for (int i = 0; i < old.size; ++i) {
+                int p = newIndex[i];
+                if (p == NONE)
+                    continue;
+                for (int c = old.firstChild[i]; c != NONE; c = old.nextSibling[c]) {
+                    int v = newIndex[c];
+                    if (v == NONE) {
+                        collapsed[p] = true;
+                        continue;
+                    }
+                    if (lastChild[p] == NONE)
+                        firstChild[p] = v;
+                    else
+                        nextSibling[lastChild[p]] = v;
+                    lastChild[p] = v;
+                }
+            }
+            for (SearchTreeListener listener : listeners)
+                listener.onCompact();
+        }
+        // avoids compacting again at once if the nodes kept do not fit into the budget
+        nextCompaction = budget == Integer.MAX_VALUE ? budget : (int) Math.min(Integer.MAX_VALUE, Math.max(budget, size + size / 4L));
+        return evicted;
+    }
+
+    private int remapLabel(LabelDictionary old, int code, int[] newLabel) {
+        if (code == NONE)
+            return NONE;
+        if (newLabel[code] == Integer.MIN_VALUE)
+            newLabel[code] = labels.intern(old, code);
+        return newLabel[code];
+    }
+
+    /**
+     * @param index index of a node
+     * @return true if some nodes below the node have been evicted by a compaction
+     */
+    public boolean isFolded(int index) {
+        int below = subtreeSize[index] - 1;
+        for (int c = firstChild[index]; c != NONE; c = nextSibling[c])
+            below -= subtreeSize[c];
+        return below > 0;
     }
 
     /**
@@ -93,11 +568,7 @@ public class SearchTree {
      * @return true if the node belongs to the tree
      */
     public boolean addSuccess(int node) {
-        if (nodes_status.containsKey(node)) {
-            nodes_status.put(node, SUCCESS);
-            return true;
-        }
-        return false;
+        return setStatus(node, SUCCESS);
     }
 
     /**
@@ -106,20 +577,87 @@ public class SearchTree {
      * @return true if the node belongs to the tree
      */
     public boolean addFailure(int node) {
-        if (nodes_status.containsKey(node)) {
-            nodes_status.put(node, FAILURE);
-            return true;
+        return setStatus(node, FAILURE);
+    }
+
+    private boolean setStatus(int node, int value) {
+        int i = indexOf(node);
+        if (i == NONE)
+            return false;
+        int old = status[i];
+        updateAggregates(i, old, value);
+        status[i] = (byte) value;
+        for (SearchTreeListener listener : listeners)
+            listener.onStatusChange(i, old, value);
+        return true;
+    }
+
+    /**
+     * update the aggregates of a node and its ancestors once its status changes
+     * @param index index of the node
+     * @param oldStatus status of the node before the change
+     * @param newStatus status of the node after the change
+     */
+    private void updateAggregates(int index, int oldStatus, int newStatus) {
+        int successDelta = (newStatus == SUCCESS ? 1 : 0) - (oldStatus == SUCCESS ? 1 : 0);
+        int failureDelta = (newStatus == FAILURE ? 1 : 0) - (oldStatus == FAILURE ? 1 : 0);
+        int openDelta = firstChild[index] != NONE ? 0 : (newStatus == INTERMEDIATE ? 1 : 0) - (oldStatus == INTERMEDIATE ? 1 : 0);
+        if (successDelta == 0 && failureDelta == 0 && openDelta == 0)
+            return;
+        for (int i = index; i != NONE; i = parent[i]) {
+            subtreeSuccess[i] += successDelta;
+            subtreeFailure[i] += failureDelta;
+            subtreeOpen[i] += openDelta;
         }
-        return false;
+    }
+
+    /**
+     * collapse the subtree of a node, so that it is drawn as a single summary shape
+     * @param node node whose subtree needs to be collapsed
+     * @return true if the node belongs to the tree
+     */
+    public boolean collapse(int node) {
+        int i = indexOf(node);
+        if (i == NONE)
+            return false;
+        setCollapsed(i, true);
+        return true;
+    }
+
+    /**
+     * expand the subtree of a node, so that its children are drawn
+     * @param node node whose subtree needs to be expanded
+     * @return true if the node belongs to the tree
+     */
+    public boolean expand(int node) {
+        int i = indexOf(node);
+        if (i == NONE)
+            return false;
+        setCollapsed(i, false);
+        return true;
+    }
+
+    /**
+     * collapse or expand the subtree of a node
+     * @param index index of the node
+     * @param value true if the subtree must be collapsed, false if it must be expanded
+     */
+    public void setCollapsed(int index, boolean value) {
+        if (collapsed[index] == value)
+            return;
+        collapsed[index] = value;
+        for (SearchTreeListener listener : listeners)
+            listener.onCollapse(index, value);
     }
 
     /**
      * gives the status associated to a node
      * @param node node whose status needs to be known
      * @return integer code for the status
+     * @throws IllegalArgumentException if the node does not belong to the tree
      */
     public int getNodeStatus(int node) {
-        return nodes_status.get(node);
+        return status[existingIndex(node)];
     }
 
     /**
@@ -128,11 +666,47 @@ public class SearchTree {
      * @return SearchTreeNode of the node, with all its branches and children labeled
      */
     public SearchTreeNode<String> toNode(int node) {
-        List<Branch> childs = children(node);
-        if (childs.isEmpty())
-            return new SearchTreeNode<>(Integer.toString(node), getColor(node), getAction(node));
-        return new SearchTreeNode<>(Integer.toString(node), childs.stream().map(c -> toNode(c.node)).toList(),
-                childs.stream().map(c -> c.branchMessage).toList(), getColor(node), getAction(node));
+        int root = existingIndex(node);
+        // visit the subtree in post order, following the parent and sibling links. The nodes built are pushed on a
+        // stack, from which a parent pops the nodes of its children
+        int top = 0;
+        int v = root;
+        while (firstChild[v] != NONE)
+            v = firstChild[v];
+        while (true) {
+            Color color = colorMapping.get((int) status[v]);
+            Runnable action = actionAt(v);
+            SearchTreeNode<String> built;
+            if (firstChild[v] == NONE) {
+                built = new SearchTreeNode<>(Integer.toString(ids[v]), color, action);
+            } else {
+                int nChildren = 0;
+                for (int c = firstChild[v]; c != NONE; c = nextSibling[c])
+                    nChildren++;
+                List<SearchTreeNode<String>> sons = new ArrayList<>(nChildren);
+                List<String> edgeLabels = new ArrayList<>(nChildren);
+                top -= nChildren;
+                int k = top;
+                for (int c = firstChild[v]; c != NONE; c = nextSibling[c]) {
+                    sons.add(nodeStack[k]);
+                    nodeStack[k++] = null;
+                    edgeLabels.add(branchMessageOf(c));
+                }
+                built = new SearchTreeNode<>(Integer.toString(ids[v]), sons, edgeLabels, color, action);
+            }
+            if (v == root)
+                return built;
+            if (top == nodeStack.length)
+                nodeStack = Arrays.copyOf(nodeStack, top * 2);
+            nodeStack[top++] = built;
+            if (nextSibling[v] != NONE) {
+                v = nextSibling[v];
+                while (firstChild[v] != NONE)
+                    v = firstChild[v];
+            } else {
+                v = parent[v];
+            }
+        }
     }
 
     /**
@@ -141,7 +715,13 @@ public class SearchTree {
      * @return branches having node as parent
      */
     public List<Branch> children(int node) {
-        return branches.stream().filter(b -> b.parent == node).toList();
+        int p = indexOf(node);
+        if (p == NONE)
+            return List.of();
+        List<Branch> branches = new ArrayList<>();
+        for (int c = firstChild[p]; c != NONE; c = nextSibling[c])
+            branches.add(new Branch(node, ids[c], nodeMessageOf(c), branchMessageOf(c), actionAt(c)));
+        return branches;
     }
 
     /**
@@ -150,12 +730,12 @@ public class SearchTree {
      * @return action associated to the node
      */
     public Runnable getAction(int node) {
-        Branch branch = branches.stream().filter(b -> b.node == node).findFirst().orElse(null);
-        return branch != null ? branch.action : () -> {};
+        int i = indexOf(node);
+        return i == NONE ? NO_ACTION : actionAt(i);
     }
 
     public void runAction(int node) {
-        branches.stream().filter(b -> b.node == node).findFirst().ifPresent(branch -> branch.action.run());
+        getAction(node).run();
     }
 
     public Color getColor(int node) {
@@ -164,16 +744,28 @@ public class SearchTree {
 
     /**
      * gives an iterable of all current nodes
-     * @return iterable of all current nodes
+     * @return iterable of all current nodes, in insertion order
      */
     public Iterable<Integer> getNodes() {
-        HashSet<Integer> seen = new HashSet<>();
-        branches.forEach(b -> {seen.add(b.node); seen.add(b.parent);});
-        return seen;
+        return () -> new PrimitiveIterator.OfInt() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < size;
+            }
+
+            @Override
+            public int nextInt() {
+                if (i >= size)
+                    throw new NoSuchElementException();
+                return ids[i++];
+            }
+        };
     }
 
     public boolean isEmpty() {
-        return branches.isEmpty();
+        return nBranches == 0;
     }
 
     /**
@@ -181,9 +773,7 @@ public class SearchTree {
      * @return number of nodes appearing in the tree
      */
     public int nNodes() {
-        HashSet<Integer> seen = new HashSet<>();
-        branches.forEach(b -> {seen.add(b.node); seen.add(b.parent);});
-        return seen.size();
+        return size;
     }
 
     /**
@@ -193,23 +783,243 @@ public class SearchTree {
      * @return true if the action has been set for the node
      */
     public boolean setAction(int node, Runnable action) {
-        int size = branches.size();
-        int i = 0;
-        Branch found = null;
-        for (Branch branch : branches) {
-            if (branch.node == node) {
-                found = branch;
-                break;
-            }
-            ++i;
-        }
-        if (found != null) {
-            branches.remove(i);
-            branches.add(new Branch(found.parent, found.node, found.nodeMessage, found.branchMessage, action));
-            return true;
-        }
-        return false;
+        int i = indexOf(node);
+        if (i == NONE || parent[i] == NONE) // only nodes reached through a branch hold an action
+            return false;
+        actions[i] = action;
+        return true;
+    }
+
+    /**
+     * set the message of an existing node
+     * @param node node whose message needs to be set
+     * @param message message for the node
+     * @return true if the message has been set for the node
+     */
+    public boolean setNodeMessage(int node, String message) {
+        int i = indexOf(node);
+        if (i == NONE)
+            return false;
+        nodeLabels[i] = labels.intern(message);
+        return true;
+    }
+
+    /**
+     * tell if a node belongs to the tree
+     * @param node id of the node
+     * @return true if the node belongs to the tree
+     */
+    public boolean contains(int node) {
+        return indices.containsKey(node);
+    }
+
+    /**
+     * gives the index at which a node is stored
+     * indices are given in insertion order and belong to [0, nNodes())
+     * @param node id of the node
+     * @return index of the node, or NONE if the node does not belong to the tree
+     */
+    public int indexOf(int node) {
+        return indices.get(node, NONE);
+    }
+
+    private int existingIndex(int node) {
+        int i = indexOf(node);
+        if (i == NONE)
+            throw new IllegalArgumentException("node " + node + " does not belong to the search tree");
+        return i;
+    }
+
+    /**
+     * gives the id of the node stored at an index
+     * @param index index of the node
+     * @return id of the node
+     */
+    public int nodeAt(int index) {
+        return ids[index];
+    }
+
+    /**
+     * @param index index of a node
+     * @return index of the parent of the node, or NONE if the node is a root
+     */
+    public int parentOf(int index) {
+        return parent[index];
+    }
+
+    /**
+     * @param index index of a node
+     * @return index of the first child of the node, or NONE if the node is a leaf
+     */
+    public int firstChildOf(int index) {
+        return firstChild[index];
+    }
+
+    /**
+     * @param index index of a node
+     * @return index of the last child of the node, or NONE if the node is a leaf
+     */
+    public int lastChildOf(int index) {
+        return lastChild[index];
+    }
+
+    /**
+     * @param index index of a node
+     * @return index of the next sibling of the node, or NONE if the node is the last child of its parent
+     */
+    public int nextSiblingOf(int index) {
+        return nextSibling[index];
+    }
+
+    /**
+     * @param index index of a node
+     * @return status of the node
+     */
+    public int statusOf(int index) {
+        return status[index];
+    }
+
+    /**
+     * @param index index of a node
+     * @return message associated with the node
+     */
+    public String nodeMessageOf(int index) {
+        return labels.labelOf(nodeLabels[index]);
+    }
+
+    /**
+     * @param index index of a node
+     * @return message associated with the branch leading to the node
+     */
+    public String branchMessageOf(int index) {
+        return labels.labelOf(branchLabels[index]);
+    }
+
+    /**
+     * @param index index of a node
+     * @return code of the message associated with the node, NONE if none
+     */
+    public int nodeLabelOf(int index) {
+        return nodeLabels[index];
+    }
+
+    /**
+     * @param index index of a node
+     * @return code of the message associated with the branch leading to the node, NONE if none
+     */
+    public int branchLabelOf(int index) {
+        return branchLabels[index];
+    }
+
+    /**
+     * gives the dictionary in which the messages of the nodes and branches are stored
+     * @return dictionary of the labels
+     */
+    public LabelDictionary getLabels() {
+        return labels;
+    }
+
+    /**
+     * @param index index of a node
+     * @return action associated with the node
+     */
+    public Runnable actionAt(int index) {
+        Runnable action = actions[index];
+        return action == null ? NO_ACTION : action;
+    }
+
+    /**
+     * @param status status of a node
+     * @return color used to draw a node with the given status
+     */
+    public Color colorOf(int status) {
+        return colorMapping.get(status);
+    }
+
+    /**
+     * @param index index of a node
+     * @return worker that created the node, NONE if unknown
+     */
+    public int workerOf(int index) {
+        return workers[index];
+    }
+
+    /**
+     * record the worker that created a node
+     * @param index index of the node
+     * @param worker id of the worker
+     */
+    void setWorker(int index, int worker) {
+        workers[index] = worker;
+    }
+
+    /**
+     * @param index index of a node
+     * @return color of the worker that created the node, or the color of its status if the worker is unknown
+     */
+    public Color workerColorOf(int index) {
+        return workers[index] == NONE ? colorOf(status[index]) : workerPalette.colorAt(workers[index]);
+    }
+
+    /**
+     * @param status status of a node
+     * @return color used to draw a node with the given status, shared by every tree
+     */
+    static Color statusColor(int status) {
+        return colorMapping.get(status);
     }
 
+    /**
+     * @param index index of a node
+     * @return true if the subtree of the node is collapsed
+     */
+    public boolean isCollapsed(int index) {
+        return collapsed[index];
+    }
+
+    /**
+     * @param index index of a node
+     * @return number of nodes in the subtree of the node, including the node itself
+     */
+    public int subtreeSizeOf(int index) {
+        return subtreeSize[index];
+    }
+
+    /**
+     * @param index index of a node
+     * @return number of success nodes in the subtree of the node
+     */
+    public int successesOf(int index) {
+        return subtreeSuccess[index];
+    }
+
+    /**
+     * @param index index of a node
+     * @return number of failure nodes in the subtree of the node
+     */
+    public int failuresOf(int index) {
+        return subtreeFailure[index];
+    }
+
+    /**
+     * @param index index of a node
+     * @return number of leaves in the subtree of the node that still have the intermediate status
+     */
+    public int openLeavesOf(int index) {
+        return subtreeOpen[index];
+    }
+
+    /**
+     * gives the color summarizing the subtree of a node
+     * the color goes from the failure color to the success color depending on the ratio of successes
+     * @param index index of a node
+     * @return color summarizing the subtree, the intermediate color if it contains neither success nor failure
+     */
+    public Color summaryColorOf(int index) {
+        int closed = subtreeSuccess[index] + subtreeFailure[index];
+        if (closed == 0)
+            return colorOf(INTERMEDIATE);
+        return colorOf(FAILURE).interpolate(colorOf(SUCCESS), (double) subtreeSuccess[index] / closed);
+    }
 
 }
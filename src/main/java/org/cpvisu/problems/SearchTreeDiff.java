@@ -0,0 +1,259 @@
+package org.cpvisu.problems;
+
+import javafx.scene.paint.Color;
+import org.cpvisu.util.LongIntMap;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import static org.cpvisu.problems.SearchTree.NONE;
+
+/**
+ * comparison of the search trees of two solver runs, rooted at their node 0
+ *
+ * the nodes are aligned by the labels of the branches on their path from the root: each node gets a 64 bits signature
+ * hashing the signature of its parent with the label of its branch (and its rank among the siblings having the same
+ * label). A node of the left tree is shared with the node of the right tree having the same signature, if their parents
+ * are shared with each other. The comparison runs in linear time, working on the indices of the trees only
+ *
+ * the union of both trees can then be built as a regular SearchTree, whose nodes are colored by origin
+ */
+public class SearchTreeDiff {
+
+    // origin of a node
+    public static final byte SHARED = 0;
+    public static final byte ONLY_LEFT = 1;
+    public static final byte ONLY_RIGHT = 2;
+    private static final Color[] colors = {Color.LIGHTGRAY, Color.DARKSALMON, Color.LIGHTGREEN};
+
+    private final SearchTree left;
+    private final SearchTree right;
+    private final int[] leftMatch;     // index of a left node -> index of the right node shared with it, NONE if none
+    private final int[] rightMatch;    // index of a right node -> index of the left node shared with it, NONE if none
+    private int nShared;
+    private int nLeft;                 // number of nodes reachable from the root of the left tree
+    private int nRight;                // number of nodes reachable from the root of the right tree
+    private SearchTree merged;
+    private byte[] origins;            // index of a node in the merged tree -> origin of the node
+
+    private SearchTreeDiff(SearchTree left, SearchTree right) {
+        this.left = left;
+        this.right = right;
+        leftMatch = new int[left.nNodes()];
+        rightMatch = new int[right.nNodes()];
+        Arrays.fill(leftMatch, NONE);
+        Arrays.fill(rightMatch, NONE);
+    }
+
+    /**
+     * compare two search trees
+     * @param left first tree
+     * @param right second tree
+     * @return comparison of the trees
+     */
+    public static SearchTreeDiff compare(SearchTree left, SearchTree right) {
+        SearchTreeDiff diff = new SearchTreeDiff(left, right);
+        diff.align();
+        return diff;
+    }
+
+    private void align() {
+        int leftRoot = left.indexOf(0);
+        int rightRoot = right.indexOf(0);
+        long[] rightSignatures = new long[right.nNodes()];
+        nRight = signatures(right, rightRoot, rightSignatures);
+        LongIntMap rightIndices = new LongIntMap(nRight);
+        for (int v = rightRoot; v != NONE; v = nextInPreorder(right, v, rightRoot))
+            if (!rightIndices.containsKey(rightSignatures[v]))
+                rightIndices.put(rightSignatures[v], v);
+        long[] leftSignatures = new long[left.nNodes()];
+        nLeft = signatures(left, leftRoot, leftSignatures);
+        // the parents are visited before their children, so that their match is known
+        for (int v = leftRoot; v != NONE; v = nextInPreorder(left, v, leftRoot)) {
+            int w = rightIndices.get(leftSignatures[v], NONE);
+            if (w == NONE)
+                continue;
+            int p = left.parentOf(v);
+            boolean consistent = v == leftRoot ? w == rightRoot
+                    : leftMatch[p] != NONE && leftMatch[p] == right.parentOf(w)
+                    && Objects.equals(branchLabel(left, v), branchLabel(right, w)); // not a collision of the hashes
+            if (consistent && rightMatch[w] == NONE) {
+                leftMatch[v] = w;
+                rightMatch[w] = v;
+                nShared++;
+            }
+        }
+    }
+
+    private static String branchLabel(SearchTree tree, int index) {
+        int code = tree.branchLabelOf(index);
+        return code == NONE ? null : tree.getLabels().labelOf(code);
+    }
+
+    /**
+     * compute the signature of every node reachable from a root
+     * @return number of nodes reachable from the root
+     */
+    private static int signatures(SearchTree tree, int root, long[] signatures) {
+        if (root == NONE)
+            return 0;
+        int nLabels = tree.getLabels().size();
+        long[] labelHashes = new long[nLabels]; // hash of each label, computed once
+        boolean[] hashed = new boolean[nLabels];
+        int[] ranks = new int[nLabels + 1];      // number of children of the current node seen per label, last for none
+        int n = 0;
+        signatures[root] = 0x9E3779B97F4A7C15L;
+        for (int v = root; v != NONE; v = nextInPreorder(tree, v, root)) {
+            n++;
+            for (int c = tree.firstChildOf(v); c != NONE; c = tree.nextSiblingOf(c)) {
+                int code = tree.branchLabelOf(c);
+                long h = 0x5555L;
+                if (code != NONE) {
+                    if (!hashed[code]) {
+                        labelHashes[code] = hash(tree.getLabels().labelOf(code));
+                        hashed[code] = true;
+                    }
+                    h = labelHashes[code];
+                }
+                // rank among the previous siblings having the same label
+                int rank = ranks[code == NONE ? nLabels : code]++;
+                long signature = mix(signatures[v] ^ mix(h + rank * 0x9E3779B97F4A7C15L));
+                signatures[c] = signature == Long.MIN_VALUE ? Long.MAX_VALUE : signature;
+            }
+            for (int c = tree.firstChildOf(v); c != NONE; c = tree.nextSiblingOf(c)) // reset the ranks for the next node
+                ranks[tree.branchLabelOf(c) == NONE ? nLabels : tree.branchLabelOf(c)] = 0;
+        }
+        return n;
+    }
+
+    /**
+     * @return 64 bits hash of a label (FNV-1a over its characters)
+     */
+    private static long hash(String label) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < label.length(); ++i)
+            h = (h ^ label.charAt(i)) * 0x100000001B3L;
+        return mix(h);
+    }
+
+    private static long mix(long x) { // finalizer of splitmix64
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * @return node following v in the preorder of the subtree of root, NONE once the whole subtree was visited
+     */
+    private static int nextInPreorder(SearchTree tree, int v, int root) {
+        if (tree.firstChildOf(v) != NONE)
+            return tree.firstChildOf(v);
+        while (v != root && tree.nextSiblingOf(v) == NONE)
+            v = tree.parentOf(v);
+        return v == root ? NONE : tree.nextSiblingOf(v);
+    }
+
+    /**
+     * @param index index of a node of the left tree
+     * @return index of the node of the right tree shared with it, NONE if the node only belongs to the left tree
+     */
+    public int matchOfLeft(int index) {
+        return leftMatch[index];
+    }
+
+    /**
+     * @param index index of a node of the right tree
+     * @return index of the node of the left tree shared with it, NONE if the node only belongs to the right tree
+     */
+    public int matchOfRight(int index) {
+        return rightMatch[index];
+    }
+
+    /**
+     * @return number of nodes shared by both trees
+     */
+    public int nShared() {
+        return nShared;
+    }
+
+    /**
+     * @return number of nodes of the left tree that are not in the right tree
+     */
+    public int nOnlyLeft() {
+        return nLeft - nShared;
+    }
+
+    /**
+     * @return number of nodes of the right tree that are not in the left tree
+     */
+    public int nOnlyRight() {
+        return nRight - nShared;
+    }
+
+    /**
+     * gives the union of both trees: the left tree, with the nodes only in the right tree added under their parent
+     * the nodes of the union are numbered in preorder of the left tree first. A shared node has the status of its
+     * left node. Built on the first call
+     * @return union of the trees
+     */
+    public SearchTree getMerged() {
+        if (merged == null)
+            merge();
+        return merged;
+    }
+
+    private void merge() {
+        merged = new SearchTree();
+        origins = new byte[Math.max(1, nLeft + nOnlyRight())];
+        int[] leftMerged = new int[left.nNodes()];   // index of a left node -> id of the node in the union
+        int[] rightMerged = new int[right.nNodes()]; // index of a right node -> id of the node in the union
+        int leftRoot = left.indexOf(0);
+        int rightRoot = right.indexOf(0);
+        int next = 0;
+        for (int v = leftRoot; v != NONE; v = nextInPreorder(left, v, leftRoot)) {
+            int id = next++;
+            leftMerged[v] = id;
+            origins[id] = leftMatch[v] == NONE ? ONLY_LEFT : SHARED;
+            if (leftMatch[v] != NONE)
+                rightMerged[leftMatch[v]] = id;
+            if (v != leftRoot)
+                merged.addBranch(leftMerged[left.parentOf(v)], id, left.nodeMessageOf(v), left.branchMessageOf(v));
+            setStatus(merged, id, left.statusOf(v));
+        }
+        for (int v = rightRoot; v != NONE; v = nextInPreorder(right, v, rightRoot)) {
+            if (rightMatch[v] != NONE)
+                continue;
+            int id = next++;
+            rightMerged[v] = id;
+            origins[id] = ONLY_RIGHT;
+            if (v != rightRoot)
+                merged.addBranch(rightMerged[right.parentOf(v)], id, right.nodeMessageOf(v), right.branchMessageOf(v));
+            setStatus(merged, id, right.statusOf(v));
+        }
+    }
+
+    private static void setStatus(SearchTree tree, int node, int status) {
+        if (status == SearchTree.SUCCESS)
+            tree.addSuccess(node);
+        else if (status == SearchTree.FAILURE)
+            tree.addFailure(node);
+    }
+
+    /**
+     * @param index index of a node in the merged tree
+     * @return origin of the node: SHARED, ONLY_LEFT or ONLY_RIGHT
+     */
+    public byte originOf(int index) {
+        getMerged();
+        return origins[merged.nodeAt(index)];
+    }
+
+    /**
+     * @param index index of a node in the merged tree
+     * @return color used to draw the node, depending on its origin
+     */
+    public Color colorOf(int index) {
+        return colors[originOf(index)];
+    }
+
+}
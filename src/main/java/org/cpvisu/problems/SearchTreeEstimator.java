@@ -0,0 +1,291 @@
+package org.cpvisu.problems;
+
+import java.util.Arrays;
+
+import static org.cpvisu.problems.SearchTree.*;
+
+/**
+ * online estimation of the final size of a search tree, while the search is running
+ *
+ * the nodes of each depth are split into internal nodes (having children), closed leaves (success or failure) and
+ * open leaves, and these counts are updated in O(1) on every change of the tree. Two estimators are built on them:
+ * <ul>
+ *     <li>a Knuth estimator, following the random probing of Knuth: the number of nodes at each depth is the number of
+ *     nodes at the previous depth times the mean number of children of the nodes decided at that depth</li>
+ *     <li>the weighted backtrack estimator of Kilby et al.: every closed leaf at depth d gives the Knuth estimate of a
+ *     probe reaching it, weighted by the probability of the probe, using the mean branching of the internal nodes
+ *     on each depth</li>
+ * </ul>
+ * computing an estimate takes O(maxDepth), independently of the number of nodes, so that it can be done periodically
+ * by a dashboard
+ */
+public class SearchTreeEstimator implements SearchTreeListener {
+
+    // kind of a node
+    private static final byte OPEN = 0;
+    private static final byte CLOSED = 1;
+    private static final byte INTERNAL = 2;
+
+    private final SearchTree searchTree;
+    private int known = 0;                    // number of indices of the tree already registered
+    private int[] depths = new int[16];       // index of a node -> depth of the node
+    private byte[] kinds = new byte[16];      // index of a node -> kind of the node
+    private long nNodes = 0;
+    private int maxDepth = 0;
+    private long[] nodesAt = new long[16];    // number of nodes per depth
+    private long[] internalAt = new long[16]; // number of internal nodes per depth
+    private long[] closedAt = new long[16];   // number of closed leaves per depth
+    private long nOpen = 0;
+
+    /**
+     * create the estimator of a search tree and register it as a listener of the tree
+     * the nodes already in the tree are taken into account
+     * @param searchTree tree whose size is estimated
+     */
+    public SearchTreeEstimator(SearchTree searchTree) {
+        this.searchTree = searchTree;
+        onCompact();
+        for (int i = 0; i < known; ++i)
+            count(i, kinds[i]);
+        searchTree.addListener(this);
+    }
+
+    /**
+     * @return number of nodes seen since the start, including the ones evicted by a compaction
+     */
+    public long nNodes() {
+        return nNodes;
+    }
+
+    /**
+     * @return true if the tree has no open leaf left: the search is over
+     */
+    public boolean isComplete() {
+        return nNodes > 0 && nOpen == 0;
+    }
+
+    /**
+     * estimate the final number of nodes following Knuth's estimator, where the branching at a depth is the mean
+     * number of children of the nodes already decided at that depth (failed and successful leaves having no child)
+     * @return estimated number of nodes in the complete tree
+     */
+    public double knuthEstimate() {
+        if (isComplete())
+            return nNodes;
+        double total = 0;
+        double level = nodesAt[0];
+        for (int d = 0; d <= maxDepth; ++d) {
+            total += Math.max(level, nodesAt[d]);
+            long decided = internalAt[d] + closedAt[d];
+            // nothing is known yet about the branching at this depth: only the nodes seen below it are counted
+            level = decided == 0 ? nodesAt(d + 1) : Math.max(level, nodesAt[d]) * nodesAt(d + 1) / decided;
+        }
+        return total;
+    }
+
+    /**
+     * estimate the final number of nodes following the weighted backtrack estimator
+     * each closed leaf at depth d is a probe whose Knuth estimate is weighted by its probability w(d) = 1 / (b(0) ...
+     * b(d-1)), where b(k) is the mean number of children of the internal nodes at depth k
+     * @return estimated number of nodes in the complete tree
+     */
+    public double weightedBacktrackEstimate() {
+        if (isComplete())
+            return nNodes;
+        double estimates = 0; // sum of the weighted Knuth estimates of the closed leaves
+        double weights = 0;   // sum of the weights of the closed leaves
+        double w = 1;         // probability to reach the current depth
+        double r = 1;         // Knuth estimate of a probe stopping at the current depth, times its probability
+        for (int d = 0; d <= maxDepth; ++d) {
+            if (d > 0) {
+                double branching = internalAt[d - 1] == 0 ? 1 : (double) nodesAt[d] / internalAt[d - 1];
+                w /= branching;
+                r = 1 + r / branching;
+            }
+            estimates += closedAt[d] * r;
+            weights += closedAt[d] * w;
+        }
+        if (weights == 0) // no probe has been done yet
+            return nNodes;
+        return Math.max(nNodes, estimates / weights);
+    }
+
+    /**
+     * @return estimated number of nodes that remain to be explored, according to the weighted backtrack estimator
+     */
+    public double remaining() {
+        return Math.max(0, weightedBacktrackEstimate() - nNodes);
+    }
+
+    /**
+     * @return estimated fraction of the tree already explored, in [0, 1], according to the weighted backtrack estimator
+     */
+    public double progress() {
+        if (isComplete())
+            return 1;
+        double estimate = weightedBacktrackEstimate();
+        return estimate == 0 ? 0 : Math.min(1, nNodes / estimate);
+    }
+
+    private long nodesAt(int depth) {
+        return depth < nodesAt.length ? nodesAt[depth] : 0;
+    }
+
+    /**
+     * register the nodes whose index has not been seen yet, as roots
+     * @param n number of indices that need to be registered
+     */
+    private void register(int n) {
+        if (depths.length < n) {
+            depths = Arrays.copyOf(depths, Math.max(n, depths.length * 2));
+            kinds = Arrays.copyOf(kinds, depths.length);
+        }
+        while (known < n) {
+            depths[known] = 0;
+            count(known, kindOf(known));
+            known++;
+        }
+    }
+
+    private byte kindOf(int index) {
+        if (searchTree.firstChildOf(index) != NONE || searchTree.subtreeSizeOf(index) > 1)
+            return INTERNAL;
+        return searchTree.statusOf(index) == INTERMEDIATE ? OPEN : CLOSED;
+    }
+
+    /**
+     * count a node that has just been seen
+     */
+    private void count(int index, byte kind) {
+        int depth = depths[index];
+        if (depth >= nodesAt.length) {
+            int capacity = Math.max(depth + 1, nodesAt.length * 2);
+            nodesAt = Arrays.copyOf(nodesAt, capacity);
+            internalAt = Arrays.copyOf(internalAt, capacity);
+            closedAt = Arrays.copyOf(closedAt, capacity);
+        }
+        nNodes++;
+        nodesAt[depth]++;
+        maxDepth = Math.max(maxDepth, depth);
+        kinds[index] = kind;
+        add(depth, kind, 1);
+    }
+
+    private void add(int depth, byte kind, int delta) {
+        if (kind == INTERNAL)
+            internalAt[depth] += delta;
+        else if (kind == CLOSED)
+            closedAt[depth] += delta;
+        else
+            nOpen += delta;
+    }
+
+    /**
+     * change the kind of a node
+     */
+    private void setKind(int index, byte kind) {
+        add(depths[index], kinds[index], -1);
+        add(depths[index], kind, 1);
+        kinds[index] = kind;
+    }
+
+    @Override
+    public void onBranch(int parent, int node) {
+        if (node < known) { // a node seen before as a root gets a parent: its subtree moves to new depths
+            register(searchTree.nNodes());
+            shiftDepths(node, depths[parent] + 1);
+        } else {
+            register(node); // the parent may have been added together with the node
+            if (depths.length == node) {
+                depths = Arrays.copyOf(depths, node * 2);
+                kinds = Arrays.copyOf(kinds, depths.length);
+            }
+            depths[node] = depths[parent] + 1;
+            count(node, OPEN);
+            known = node + 1;
+        }
+        if (kinds[parent] != INTERNAL)
+            setKind(parent, INTERNAL);
+    }
+
+    /**
+     * move the subtree of a node at a new depth
+     * happens only when a node added first as a parent is given a parent afterwards
+     */
+    private void shiftDepths(int root, int depth) {
+        int delta = depth - depths[root];
+        int v = root;
+        while (true) {
+            add(depths[v], kinds[v], -1);
+            nodesAt[depths[v]]--;
+            nNodes--;
+            depths[v] += delta;
+            count(v, kinds[v]);
+            if (searchTree.firstChildOf(v) != NONE) {
+                v = searchTree.firstChildOf(v);
+                continue;
+            }
+            while (v != root && searchTree.nextSiblingOf(v) == NONE)
+                v = searchTree.parentOf(v);
+            if (v == root)
+                break;
+            v = searchTree.nextSiblingOf(v);
+        }
+    }
+
+    @Override
+    public void onStatusChange(int node, int oldStatus, int newStatus) {
+        register(searchTree.nNodes());
+        if (kinds[node] != INTERNAL)
+            setKind(node, newStatus == INTERMEDIATE ? OPEN : CLOSED);
+    }
+
+    @Override
+    public void onClear() {
+        known = 0;
+        nNodes = 0;
+        nOpen = 0;
+        maxDepth = 0;
+        Arrays.fill(nodesAt, 0);
+        Arrays.fill(internalAt, 0);
+        Arrays.fill(closedAt, 0);
+        register(searchTree.nNodes());
+    }
+
+    /**
+     * the counts per depth are kept, only the depths and kinds of the remaining nodes are computed again
+     * the open leaves are never evicted, so that their number does not change
+     */
+    @Override
+    public void onCompact() {
+        known = searchTree.nNodes();
+        if (depths.length < known) {
+            depths = new int[known];
+            kinds = new byte[known];
+        }
+        for (int root = 0; root < known; ++root) {
+            if (searchTree.parentOf(root) != NONE)
+                continue;
+            // preorder of the tree, following the parent and sibling links
+            int v = root;
+            int depth = 0;
+            while (true) {
+                depths[v] = depth;
+                kinds[v] = kindOf(v);
+                if (searchTree.firstChildOf(v) != NONE) {
+                    v = searchTree.firstChildOf(v);
+                    depth++;
+                    continue;
+                }
+                while (v != root && searchTree.nextSiblingOf(v) == NONE) {
+                    v = searchTree.parentOf(v);
+                    depth--;
+                }
+                if (v == root)
+                    break;
+                v = searchTree.nextSiblingOf(v);
+            }
+        }
+    }
+
+}
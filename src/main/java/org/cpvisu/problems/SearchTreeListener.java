@@ -0,0 +1,45 @@
+package org.cpvisu.problems;
+
+/**
+ * listener notified of the changes occurring in a search tree
+ * nodes are given through their index in the tree
+ */
+public interface SearchTreeListener {
+
+    /**
+     * called once a branch has been added to the tree
+     * @param parent index of the parent node
+     * @param node index of the node that was added
+     */
+    default void onBranch(int parent, int node) {}
+
+    /**
+     * called once the status of a node has been changed
+     * @param node index of the node
+     * @param oldStatus status of the node before the change
+     * @param newStatus status of the node after the change
+     */
+    default void onStatusChange(int node, int oldStatus, int newStatus) {}
+
+    /**
+     * called once the subtree of a node has been collapsed or expanded
+     * @param node index of the node
+     * @param collapsed true if the subtree has been collapsed, false if it has been expanded
+     */
+    default void onCollapse(int node, boolean collapsed) {}
+
+    /**
+     * called once the tree has been cleared
+     */
+    default void onClear() {}
+
+    /**
+     * called once the nodes of the tree have been replaced, by a compaction evicting some of them or by a restoration
+     * from a snapshot: the indices of the nodes have changed
+     * by default, the tree is handled as if it was cleared
+     */
+    default void onCompact() {
+        onClear();
+    }
+
+}
@@ -0,0 +1,205 @@
+package org.cpvisu.problems;
+
+import java.util.Arrays;
+
+import static org.cpvisu.problems.SearchTree.*;
+
+/**
+ * append-only log of the events of a search (branches, failures and solutions), each with a timestamp
+ * the log can record a live SearchTree, or be filled directly. It is replayed through a SearchTreeReplay
+ *
+ * the events are stored as primitive arrays, the messages being coded into a LabelDictionary. The nodes are given
+ * through their ids, so that the log is not affected by the compaction of the recorded tree
+ */
+public class SearchTreeLog implements SearchTreeListener {
+
+    // types of the events. A status change is logged with the new status (SUCCESS or FAILURE) as type
+    public static final byte BRANCH = INTERMEDIATE;
+    public static final byte CLEAR = -1;
+
+    private final LabelDictionary labels = new LabelDictionary();
+    private byte[] types = new byte[1024];
+    private int[] parents = new int[1024];
+    private int[] nodes = new int[1024];
+    private int[] nodeLabels = new int[1024];
+    private int[] branchLabels = new int[1024];
+    private long[] times = new long[1024];   // time of each event, in nanoseconds, non decreasing
+    private int size = 0;
+    private final long start = System.nanoTime();
+    private SearchTree recorded;
+
+    /**
+     * create a log recording the events of a search tree, from now on
+     * @param tree tree to record
+     * @return log of the events occurring in the tree
+     */
+    public static SearchTreeLog record(SearchTree tree) {
+        SearchTreeLog log = new SearchTreeLog();
+        log.recorded = tree;
+        tree.addListener(log);
+        return log;
+    }
+
+    /**
+     * stop recording the tree given to record()
+     */
+    public void stop() {
+        if (recorded != null)
+            recorded.removeListener(this);
+        recorded = null;
+    }
+
+    @Override
+    public void onBranch(int parent, int node) {
+        LabelDictionary treeLabels = recorded.getLabels();
+        append(System.nanoTime() - start, BRANCH, recorded.nodeAt(parent), recorded.nodeAt(node),
+                labels.intern(treeLabels, recorded.nodeLabelOf(node)), labels.intern(treeLabels, recorded.branchLabelOf(node)));
+    }
+
+    @Override
+    public void onStatusChange(int node, int oldStatus, int newStatus) {
+        if (newStatus == SUCCESS || newStatus == FAILURE)
+            append(System.nanoTime() - start, (byte) newStatus, NONE, recorded.nodeAt(node), NONE, NONE);
+    }
+
+    @Override
+    public void onClear() {
+        append(System.nanoTime() - start, CLEAR, NONE, NONE, NONE, NONE);
+    }
+
+    @Override
+    public void onCompact() {
+        // the evicted nodes stay in the log
+    }
+
+    /**
+     * append a branch to the log
+     * @param time time of the event, in nanoseconds. Set to the time of the last event if it is before it
+     * @param parent node from which the branch is created
+     * @param node node added
+     * @param nodeMessage message associated with the node
+     * @param branchMessage message associated with the branch
+     */
+    public void addBranch(long time, int parent, int node, String nodeMessage, String branchMessage) {
+        append(time, BRANCH, parent, node, labels.intern(nodeMessage), labels.intern(branchMessage));
+    }
+
+    /**
+     * append a status change to the log
+     * @param time time of the event, in nanoseconds. Set to the time of the last event if it is before it
+     * @param node node whose status changes
+     * @param status new status of the node, SUCCESS or FAILURE
+     */
+    public void addStatus(long time, int node, int status) {
+        if (status != SUCCESS && status != FAILURE)
+            throw new IllegalArgumentException("invalid status " + status);
+        append(time, (byte) status, NONE, node, NONE, NONE);
+    }
+
+    private void append(long time, byte type, int parent, int node, int nodeLabel, int branchLabel) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            nodes = Arrays.copyOf(nodes, capacity);
+            nodeLabels = Arrays.copyOf(nodeLabels, capacity);
+            branchLabels = Arrays.copyOf(branchLabels, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+        types[size] = type;
+        parents[size] = parent;
+        nodes[size] = node;
+        nodeLabels[size] = nodeLabel;
+        branchLabels[size] = branchLabel;
+        times[size] = size == 0 ? time : Math.max(time, times[size - 1]);
+        size++;
+    }
+
+    /**
+     * apply a range of events to a tree
+     * @param tree tree on which the events are applied, holding the state of the search before the event from
+     * @param from first event to apply
+     * @param to event following the last one to apply
+     */
+    public void apply(SearchTree tree, int from, int to) {
+        for (int k = from; k < to; ++k) {
+            switch (types[k]) {
+                case BRANCH -> {
+                    try {
+                        tree.addBranch(parents[k], nodes[k], labels.labelOf(nodeLabels[k]), labels.labelOf(branchLabels[k]));
+                    } catch (IllegalArgumentException e) { // invalid branch in the log
+                        System.err.println(e.getMessage());
+                    }
+                }
+                case SUCCESS -> tree.addSuccess(nodes[k]);
+                case FAILURE -> tree.addFailure(nodes[k]);
+                case CLEAR -> tree.clear();
+            }
+        }
+    }
+
+    /**
+     * @return number of events in the log
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param k index of an event
+     * @return time of the event, in nanoseconds
+     */
+    public long timeOf(int k) {
+        return times[k];
+    }
+
+    /**
+     * @param k index of an event
+     * @return type of the event: BRANCH, SUCCESS, FAILURE or CLEAR
+     */
+    public byte typeOf(int k) {
+        return types[k];
+    }
+
+    /**
+     * @param k index of an event
+     * @return node concerned by the event, NONE for CLEAR
+     */
+    public int nodeOf(int k) {
+        return nodes[k];
+    }
+
+    /**
+     * @param k index of an event
+     * @return parent of the node added by a BRANCH event, NONE for the other events
+     */
+    public int parentOf(int k) {
+        return parents[k];
+    }
+
+    /**
+     * gives the number of events that occurred up to a given time
+     * @param time time, in nanoseconds
+     * @return number of events whose time is lower or equal to the given time
+     */
+    public int stepAt(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= time)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return time of the last event, in nanoseconds, 0 if the log is empty
+     */
+    public long duration() {
+        return size == 0 ? 0 : times[size - 1];
+    }
+
+}
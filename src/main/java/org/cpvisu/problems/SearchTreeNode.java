@@ -49,21 +49,70 @@ public class SearchTreeNode<T> {
         this(label, new ArrayList<>(), new ArrayList<>(), Color.WHITE, action);
     }
 
+    /**
+     * gives the tree rooted at this node as label(son1,son2,...)
+     * the tree is visited with an explicit stack, so that deep trees do not overflow the call stack
+     */
     @Override
     public String toString() {
-        if (sons.isEmpty())
-            return label.toString();
-        return String.format("%s(%s)", label.toString(), String.join(",", sons.stream().map(SearchTreeNode::toString).toList()));
+        StringBuilder builder = new StringBuilder();
+        // path from this node to the current one, with the position of the next son to visit for each node
+        SearchTreeNode<?>[] path = new SearchTreeNode<?>[16];
+        int[] nextSon = new int[16];
+        int top = 0;
+        path[0] = this;
+        nextSon[0] = 0;
+        builder.append(label);
+        while (top >= 0) {
+            SearchTreeNode<?> node = path[top];
+            int i = nextSon[top];
+            if (i == node.sons.size()) { // all sons have been visited
+                if (i > 0)
+                    builder.append(')');
+                top--;
+                continue;
+            }
+            builder.append(i == 0 ? '(' : ',');
+            nextSon[top]++;
+            SearchTreeNode<?> son = node.sons.get(i);
+            builder.append(son.label);
+            if (++top == path.length) {
+                path = Arrays.copyOf(path, top * 2);
+                nextSon = Arrays.copyOf(nextSon, top * 2);
+            }
+            path[top] = son;
+            nextSon[top] = 0;
+        }
+        return builder.toString();
     }
 
+    /**
+     * gives the depth of the deepest node below this one
+     * the tree is visited with an explicit stack, so that deep trees do not overflow the call stack
+     * @return maximum depth, 0 if this node has no son
+     */
     public int getMaxDepth() {
-        return getMaxDepth(0);
-    }
-
-    private int getMaxDepth(int acc) {
-        if (sons.isEmpty())
-            return acc;
-        return sons.stream().map(n -> n.getMaxDepth(acc+1)).max(Integer::compareTo).get();
+        SearchTreeNode<?>[] stack = new SearchTreeNode<?>[16];
+        int[] depths = new int[16];
+        int top = 0;
+        stack[0] = this;
+        depths[0] = 0;
+        int maxDepth = 0;
+        while (top >= 0) {
+            SearchTreeNode<?> node = stack[top];
+            int depth = depths[top--];
+            maxDepth = Math.max(maxDepth, depth);
+            if (top + 1 + node.sons.size() > stack.length) {
+                int capacity = Math.max(stack.length * 2, top + 1 + node.sons.size());
+                stack = Arrays.copyOf(stack, capacity);
+                depths = Arrays.copyOf(depths, capacity);
+            }
+            for (SearchTreeNode<?> son : node.sons) {
+                stack[++top] = son;
+                depths[top] = depth + 1;
+            }
+        }
+        return maxDepth;
     }
 
     public T getLabel() {
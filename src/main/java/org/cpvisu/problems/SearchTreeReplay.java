@@ -0,0 +1,116 @@
+package org.cpvisu.problems;
+
+import java.util.ArrayList;
+
+/**
+ * replay of a SearchTreeLog: holds the state of the search tree after a given number of events (its step)
+ *
+ * snapshots of the tree are kept as checkpoints every interval events, the first time the replay goes through them.
+ * Seeking to a step restores the closest checkpoint before it and applies the remaining events, so that going back
+ * does not replay the log from the start. At most MAX_CHECKPOINTS checkpoints are kept: once reached, the interval is
+ * doubled and every other checkpoint is dropped
+ */
+public class SearchTreeReplay {
+
+    public static final int MAX_CHECKPOINTS = 32;
+
+    private final SearchTreeLog log;
+    private final SearchTree tree = new SearchTree();
+    private final ArrayList<SearchTree> checkpoints = new ArrayList<>(); // checkpoint i holds the tree at step (i+1) * interval
+    private int interval;   // number of events between two checkpoints
+    private int step = 0;   // number of events applied to the tree
+
+    /**
+     * create a replay at step 0, with an empty tree
+     * @param log log to replay
+     * @param interval number of events between two checkpoints
+     */
+    public SearchTreeReplay(SearchTreeLog log, int interval) {
+        if (interval <= 0)
+            throw new IllegalArgumentException("the interval between two checkpoints must be positive");
+        this.log = log;
+        this.interval = interval;
+    }
+
+    public SearchTreeReplay(SearchTreeLog log) {
+        this(log, 10000);
+    }
+
+    /**
+     * gives the tree holding the state of the search at the current step
+     * the same tree is kept while seeking, so that a view can be bound to it
+     * @return replayed search tree
+     */
+    public SearchTree getSearchTree() {
+        return tree;
+    }
+
+    public SearchTreeLog getLog() {
+        return log;
+    }
+
+    /**
+     * @return number of events applied to the tree
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * @return number of steps that can be replayed, growing as long as the log is recorded
+     */
+    public int nSteps() {
+        return log.size();
+    }
+
+    /**
+     * set the tree to its state after a given number of events
+     * @param k number of events to apply, clamped into [0, nSteps()]
+     */
+    public void seek(int k) {
+        k = Math.max(0, Math.min(k, log.size()));
+        if (k == step)
+            return;
+        int c = Math.min(k / interval, checkpoints.size()); // closest checkpoint before k, 0 for the empty tree
+        int from = c * interval;
+        if (k < step || from > step) { // restoring the checkpoint is faster than going on from the current step
+            if (c == 0)
+                tree.clear();
+            else
+                tree.restore(checkpoints.get(c - 1));
+            step = from;
+        }
+        while (step < k) {
+            int next = (checkpoints.size() + 1) * interval; // step of the next checkpoint to take
+            int to = Math.min(k, next);
+            log.apply(tree, step, to);
+            step = to;
+            if (step == next)
+                addCheckpoint();
+        }
+    }
+
+    /**
+     * go to the next step
+     * @return true if an event was applied, false if the last step was already reached
+     */
+    public boolean next() {
+        if (step == log.size())
+            return false;
+        seek(step + 1);
+        return true;
+    }
+
+    private void addCheckpoint() {
+        checkpoints.add(tree.snapshot());
+        if (checkpoints.size() == MAX_CHECKPOINTS) {
+            // keeps the checkpoints at the multiples of the doubled interval
+            int n = 0;
+            for (int i = 1; i < checkpoints.size(); i += 2)
+                checkpoints.set(n++, checkpoints.get(i));
+            checkpoints.subList(n, checkpoints.size()).clear();
+            interval *= 2;
+        }
+    }
+
+}
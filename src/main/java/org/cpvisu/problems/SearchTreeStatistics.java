@@ -0,0 +1,287 @@
+package org.cpvisu.problems;
+
+import java.util.Arrays;
+
+import static org.cpvisu.problems.SearchTree.*;
+
+/**
+ * statistics over a search tree, maintained incrementally as the tree changes
+ *
+ * every branch and every change of status updates a few counters in O(1): the number of nodes per status, the number
+ * of nodes and of failures per depth, the times at which the solutions were found and the deepest node. The statistics
+ * can therefore be read at any rate (typically by a dashboard refreshed periodically) without traversing the tree
+ *
+ * the counters are cumulative: a compaction of the tree does not remove the evicted nodes from them. Only the depth of
+ * the remaining nodes is computed again, as their indices have changed
+ */
+public class SearchTreeStatistics implements SearchTreeListener {
+
+    private final SearchTree searchTree;
+    private int known = 0;                              // number of indices of the tree already registered
+    private int[] depths = new int[16];                 // index of a node -> depth of the node
+    private final long[] statusCounts = new long[3];    // status -> number of nodes with this status
+    private long nNodes = 0;
+    private long[] nodesPerDepth = new long[16];
+    private long[] failuresPerDepth = new long[16];
+    private int maxDepth = 0;
+    private int deepest = NONE;                         // index of a node at the maximum depth, NONE if evicted
+    private long[] solutionTimes = new long[16];        // time at which each solution was found, in ns since the start
+    private int nSolutions = 0;
+    private long start = System.nanoTime();
+    private long lastSampleTime = start;
+    private long lastSampleNodes = 0;
+
+    /**
+     * create the statistics of a search tree and register them as a listener of the tree
+     * the nodes already in the tree are taken into account
+     * @param searchTree tree on which the statistics are computed
+     */
+    public SearchTreeStatistics(SearchTree searchTree) {
+        this.searchTree = searchTree;
+        onCompact();
+        for (int i = 0; i < known; ++i)
+            count(i, searchTree.statusOf(i));
+        searchTree.addListener(this);
+    }
+
+    /**
+     * @param status status of the nodes (INTERMEDIATE, SUCCESS or FAILURE)
+     * @return number of nodes with the given status
+     */
+    public long nNodesOf(int status) {
+        return statusCounts[status];
+    }
+
+    /**
+     * @return number of nodes seen since the start, including the ones evicted by a compaction
+     */
+    public long nNodes() {
+        return nNodes;
+    }
+
+    /**
+     * @return maximum depth reached in the tree, the depth of a root being 0
+     */
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @param depth depth in the tree
+     * @return number of nodes seen at the given depth
+     */
+    public long nodesAt(int depth) {
+        return depth < nodesPerDepth.length ? nodesPerDepth[depth] : 0;
+    }
+
+    /**
+     * @param depth depth in the tree
+     * @return number of failed nodes at the given depth
+     */
+    public long failuresAt(int depth) {
+        return depth < failuresPerDepth.length ? failuresPerDepth[depth] : 0;
+    }
+
+    /**
+     * @return number of solutions found since the start
+     */
+    public int nSolutions() {
+        return nSolutions;
+    }
+
+    /**
+     * @param k number of the solution, in [0, nSolutions())
+     * @return time at which the solution was found, in seconds since the start
+     */
+    public double solutionTime(int k) {
+        return solutionTimes[k] / 1e9;
+    }
+
+    /**
+     * @return time elapsed since the start, in seconds
+     */
+    public double elapsed() {
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * gives the number of nodes added per second since the previous call to this method
+     * @return rate at which the nodes have been added since the last sample
+     */
+    public double nodesPerSecond() {
+        long now = System.nanoTime();
+        double rate = now == lastSampleTime ? 0 : (nNodes - lastSampleNodes) * 1e9 / (now - lastSampleTime);
+        lastSampleTime = now;
+        lastSampleNodes = nNodes;
+        return rate;
+    }
+
+    /**
+     * @param index index of a node
+     * @return depth of the node, the depth of a root being 0
+     */
+    public int depthOf(int index) {
+        return depths[index];
+    }
+
+    /**
+     * gives the path from the root to the deepest node still in the tree
+     * @return indices of the nodes on the path, starting from the root. Empty if the tree is empty
+     */
+    public int[] deepestPath() {
+        if (deepest == NONE)
+            return new int[0];
+        int[] path = new int[depths[deepest] + 1];
+        for (int v = deepest, i = path.length - 1; i >= 0; v = searchTree.parentOf(v), --i)
+            path[i] = v;
+        return path;
+    }
+
+    /**
+     * register the nodes whose index has not been seen yet, as roots
+     * @param n number of indices that need to be registered
+     */
+    private void register(int n) {
+        if (depths.length < n)
+            depths = Arrays.copyOf(depths, Math.max(n, depths.length * 2));
+        while (known < n) {
+            depths[known] = 0;
+            count(known, searchTree.statusOf(known));
+            known++;
+        }
+    }
+
+    private void register() {
+        register(searchTree.nNodes());
+    }
+
+    /**
+     * count a node that has just been seen
+     */
+    private void count(int index, int status) {
+        int depth = depths[index];
+        if (depth >= nodesPerDepth.length) {
+            nodesPerDepth = Arrays.copyOf(nodesPerDepth, Math.max(depth + 1, nodesPerDepth.length * 2));
+            failuresPerDepth = Arrays.copyOf(failuresPerDepth, nodesPerDepth.length);
+        }
+        nNodes++;
+        nodesPerDepth[depth]++;
+        statusCounts[status]++;
+        if (status == FAILURE)
+            failuresPerDepth[depth]++;
+        maxDepth = Math.max(maxDepth, depth);
+        if (deepest == NONE || depth > depths[deepest])
+            deepest = index;
+    }
+
+    @Override
+    public void onBranch(int parent, int node) {
+        if (node < known) { // a node seen before as a root gets a parent: the depths of its subtree change
+            register();
+            shiftDepths(node, depths[parent] + 1);
+            return;
+        }
+        register(node); // the parent may have been added together with the node
+        if (depths.length == node)
+            depths = Arrays.copyOf(depths, node * 2);
+        depths[node] = depths[parent] + 1;
+        count(node, searchTree.statusOf(node));
+        known = node + 1;
+    }
+
+    /**
+     * move the subtree of a node at a new depth
+     * happens only when a node added first as a parent is given a parent afterwards
+     */
+    private void shiftDepths(int root, int depth) {
+        int delta = depth - depths[root];
+        int v = root;
+        while (true) {
+            int status = searchTree.statusOf(v);
+            nodesPerDepth[depths[v]]--;
+            if (status == FAILURE)
+                failuresPerDepth[depths[v]]--;
+            nNodes--;
+            statusCounts[status]--;
+            depths[v] += delta;
+            count(v, status);
+            if (searchTree.firstChildOf(v) != NONE) {
+                v = searchTree.firstChildOf(v);
+                continue;
+            }
+            while (v != root && searchTree.nextSiblingOf(v) == NONE)
+                v = searchTree.parentOf(v);
+            if (v == root)
+                break;
+            v = searchTree.nextSiblingOf(v);
+        }
+    }
+
+    @Override
+    public void onStatusChange(int node, int oldStatus, int newStatus) {
+        register();
+        statusCounts[oldStatus]--;
+        statusCounts[newStatus]++;
+        if (oldStatus == FAILURE)
+            failuresPerDepth[depths[node]]--;
+        if (newStatus == FAILURE)
+            failuresPerDepth[depths[node]]++;
+        if (newStatus == SUCCESS && oldStatus != SUCCESS) {
+            if (nSolutions == solutionTimes.length)
+                solutionTimes = Arrays.copyOf(solutionTimes, nSolutions * 2);
+            solutionTimes[nSolutions++] = System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void onClear() {
+        known = 0;
+        Arrays.fill(statusCounts, 0);
+        nNodes = 0;
+        Arrays.fill(nodesPerDepth, 0);
+        Arrays.fill(failuresPerDepth, 0);
+        maxDepth = 0;
+        deepest = NONE;
+        nSolutions = 0;
+        start = System.nanoTime();
+        lastSampleTime = start;
+        lastSampleNodes = 0;
+        register();
+    }
+
+    /**
+     * the counters are kept, only the depths of the remaining nodes are computed again
+     */
+    @Override
+    public void onCompact() {
+        known = searchTree.nNodes();
+        if (depths.length < known)
+            depths = new int[known];
+        deepest = NONE;
+        for (int root = 0; root < known; ++root) {
+            if (searchTree.parentOf(root) != NONE)
+                continue;
+            // preorder of the tree, following the parent and sibling links
+            int v = root;
+            int depth = 0;
+            while (true) {
+                depths[v] = depth;
+                if (deepest == NONE || depth > depths[deepest])
+                    deepest = v;
+                if (searchTree.firstChildOf(v) != NONE) {
+                    v = searchTree.firstChildOf(v);
+                    depth++;
+                    continue;
+                }
+                while (v != root && searchTree.nextSiblingOf(v) == NONE) {
+                    v = searchTree.parentOf(v);
+                    depth--;
+                }
+                if (v == root)
+                    break;
+                v = searchTree.nextSiblingOf(v);
+            }
+        }
+    }
+
+}
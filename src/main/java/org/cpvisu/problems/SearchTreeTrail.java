@@ -0,0 +1,360 @@
+package org.cpvisu.problems;
+
+import java.util.Arrays;
+
+import static org.cpvisu.problems.SearchTree.NONE;
+
+/**
+ * state of a solver attached to every node of a search tree, stored as a trail of changes
+ *
+ * instead of a full copy of the state per node, each node only stores the changes done by the branch leading to it:
+ * a change sets an int variable (the value of a variable, a bound of a domain, ...) from an old value to a new one.
+ * The trail holds the state of one node at a time. Moving from a node A to a node B undoes the changes from A up to
+ * the lowest common ancestor of A and B, then redoes the changes down to B
+ *
+ * the lowest common ancestor is found in O(log depth) through binary lifting tables, maintained as the tree grows:
+ * up[k][v] is the ancestor of v at 2^k levels above it (or the root of v if the tree is not that deep)
+ */
+public class SearchTreeTrail implements SearchTreeListener {
+
+    private final SearchTree searchTree;
+    private final int[] initialValues;       // values of the variables at the roots
+    private int[] values;                    // values of the variables at the current node
+    private int current = NONE;              // index of the node whose state is held, NONE for the initial state
+    // ancestors
+    private int known = 0;                   // number of indices of the tree already registered
+    private int[] ids = new int[16];         // index of a node -> id of the node, to follow the nodes on a compaction
+    private int[] depths = new int[16];      // index of a node -> depth of the node
+    private int[][] up = new int[1][16];     // up[k][v]: ancestor of v at 2^k levels above it
+    // changes, stored as a backward linked list per node
+    private int[] lastChange = new int[16];  // index of a node -> last change done by its branch, NONE if there is none
+    private int[] variables = new int[16];
+    private int[] oldValues = new int[16];
+    private int[] newValues = new int[16];
+    private int[] previous = new int[16];    // previous change of the same node
+    private int nChanges = 0;
+    private int[] path = new int[16];        // work array for the nodes and changes to redo
+
+    /**
+     * create the trail of a search tree and register it as a listener of the tree
+     * @param searchTree tree whose nodes hold the changes
+     * @param initialValues values of the variables at the roots of the tree
+     */
+    public SearchTreeTrail(SearchTree searchTree, int[] initialValues) {
+        this.searchTree = searchTree;
+        this.initialValues = initialValues.clone();
+        this.values = initialValues.clone();
+        rebuild();
+        searchTree.addListener(this);
+    }
+
+    /**
+     * create the trail of a search tree, where all variables are initially 0
+     * @param searchTree tree whose nodes hold the changes
+     * @param nVariables number of variables
+     */
+    public SearchTreeTrail(SearchTree searchTree, int nVariables) {
+        this(searchTree, new int[nVariables]);
+    }
+
+    /**
+     * record a change done by the branch leading to a node
+     * the changes of a node must be recorded in the order in which they were done, and before any move into the
+     * subtree of the node. If the trail is currently at the node, the change is applied to its state as well
+     * @param node id of the node
+     * @param variable variable changed, in [0, nVariables())
+     * @param oldValue value of the variable before the change
+     * @param newValue value of the variable after the change
+     * @throws IllegalArgumentException if the node does not belong to the tree
+     */
+    public void record(int node, int variable, int oldValue, int newValue) {
+        int index = searchTree.indexOf(node);
+        if (index == NONE)
+            throw new IllegalArgumentException("node " + node + " does not belong to the search tree");
+        register();
+        if (nChanges == variables.length) {
+            int capacity = nChanges * 2;
+            variables = Arrays.copyOf(variables, capacity);
+            oldValues = Arrays.copyOf(oldValues, capacity);
+            newValues = Arrays.copyOf(newValues, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+        }
+        variables[nChanges] = variable;
+        oldValues[nChanges] = oldValue;
+        newValues[nChanges] = newValue;
+        previous[nChanges] = lastChange[index];
+        lastChange[index] = nChanges++;
+        if (index == current)
+            values[variable] = newValue;
+    }
+
+    /**
+     * move the trail to a node, undoing the changes up to the lowest common ancestor of the current node and the given
+     * one, and redoing the changes down to the given node
+     * @param node id of the node whose state is restored
+     * @return true if the node belongs to the tree
+     */
+    public boolean moveTo(int node) {
+        int target = searchTree.indexOf(node);
+        if (target == NONE)
+            return false;
+        register();
+        int ancestor = current == NONE ? NONE : lowestCommonAncestor(current, target);
+        // undo the changes from the current node up to the common ancestor (or up to the initial state)
+        for (int v = current; v != ancestor; v = parent(v)) {
+            for (int c = lastChange[v]; c != NONE; c = previous[c])
+                values[variables[c]] = oldValues[c];
+        }
+        // redo the changes from the common ancestor down to the target, in the order they were done
+        int n = 0;
+        for (int v = target; v != ancestor; v = parent(v))
+            for (int c = lastChange[v]; c != NONE; c = previous[c])
+                n = push(n, c);
+        while (n > 0) {
+            int c = path[--n];
+            values[variables[c]] = newValues[c];
+        }
+        current = target;
+        return true;
+    }
+
+    /**
+     * go back to the initial state, before the changes of any node
+     */
+    public void reset() {
+        System.arraycopy(initialValues, 0, values, 0, values.length);
+        current = NONE;
+    }
+
+    private int push(int n, int value) {
+        if (n == path.length)
+            path = Arrays.copyOf(path, n * 2);
+        path[n] = value;
+        return n + 1;
+    }
+
+    /**
+     * @return parent of a node, NONE for a root
+     */
+    private int parent(int index) {
+        return up[0][index] == index ? NONE : up[0][index];
+    }
+
+    /**
+     * @param variable variable in [0, nVariables())
+     * @return value of the variable at the current node
+     */
+    public int valueOf(int variable) {
+        return values[variable];
+    }
+
+    /**
+     * @return values of the variables at the current node
+     */
+    public int[] getValues() {
+        return values.clone();
+    }
+
+    public int nVariables() {
+        return values.length;
+    }
+
+    /**
+     * @return id of the node whose state is currently held, NONE for the initial state
+     */
+    public int getCurrentNode() {
+        return current == NONE ? NONE : searchTree.nodeAt(current);
+    }
+
+    /**
+     * @return number of changes recorded
+     */
+    public int nChanges() {
+        return nChanges;
+    }
+
+    /**
+     * gives the lowest common ancestor of two nodes, in O(log depth)
+     * @param a index of a node
+     * @param b index of a node
+     * @return index of the lowest common ancestor of the nodes, NONE if they do not belong to the same tree
+     */
+    public int lowestCommonAncestor(int a, int b) {
+        register();
+        if (depths[a] < depths[b]) {
+            int tmp = a;
+            a = b;
+            b = tmp;
+        }
+        // lift a to the depth of b
+        int diff = depths[a] - depths[b];
+        for (int k = 0; diff > 0; ++k, diff >>= 1)
+            if ((diff & 1) != 0)
+                a = up[k][a];
+        if (a == b)
+            return a;
+        for (int k = up.length - 1; k >= 0; --k) {
+            if (up[k][a] != up[k][b]) {
+                a = up[k][a];
+                b = up[k][b];
+            }
+        }
+        return up[0][a] == up[0][b] && up[0][a] != a ? up[0][a] : NONE;
+    }
+
+    /**
+     * @param index index of a node
+     * @param distance number of levels to climb
+     * @return ancestor of the node at the given distance above it, NONE if the node is not that deep
+     */
+    public int ancestorOf(int index, int distance) {
+        register();
+        if (distance > depths[index])
+            return NONE;
+        for (int k = 0; distance > 0; ++k, distance >>= 1)
+            if ((distance & 1) != 0)
+                index = up[k][index];
+        return index;
+    }
+
+    /**
+     * register the nodes whose index has not been seen yet
+     */
+    private void register() {
+        int n = searchTree.nNodes();
+        if (known == n)
+            return;
+        ensureCapacity(n);
+        while (known < n) {
+            int v = known++;
+            ids[v] = searchTree.nodeAt(v);
+            lastChange[v] = NONE;
+            link(v, searchTree.parentOf(v));
+        }
+    }
+
+    /**
+     * set the ancestors of a node, its parent being registered already
+     */
+    private void link(int v, int parent) {
+        depths[v] = parent == NONE ? 0 : depths[parent] + 1;
+        if (depths[v] >= 1 << up.length) // the tables are not high enough for this depth
+            addLevel();
+        up[0][v] = parent == NONE ? v : parent;
+        for (int k = 1; k < up.length; ++k)
+            up[k][v] = up[k - 1][up[k - 1][v]];
+    }
+
+    /**
+     * add a level to the binary lifting tables, for all nodes registered
+     */
+    private void addLevel() {
+        int k = up.length;
+        up = Arrays.copyOf(up, k + 1);
+        up[k] = new int[ids.length];
+        for (int v = 0; v < known; ++v)
+            up[k][v] = up[k - 1][up[k - 1][v]];
+    }
+
+    private void ensureCapacity(int n) {
+        if (ids.length >= n)
+            return;
+        int capacity = Math.max(n, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        lastChange = Arrays.copyOf(lastChange, capacity);
+        for (int k = 0; k < up.length; ++k)
+            up[k] = Arrays.copyOf(up[k], capacity);
+    }
+
+    @Override
+    public void onBranch(int parent, int node) {
+        if (node < known) { // a node seen before as a root gets a parent: the ancestors of its subtree change
+            reset();
+            rebuild();
+        } else {
+            register();
+        }
+    }
+
+    /**
+     * compute the ancestors of all nodes again, keeping only the changes of the nodes still in the tree
+     */
+    private void rebuild() {
+        int n = searchTree.nNodes();
+        int[] oldIds = ids;
+        int[] oldLastChange = lastChange;
+        int oldKnown = known;
+        ids = new int[Math.max(16, n)];
+        depths = new int[ids.length];
+        lastChange = new int[ids.length];
+        up = new int[1][ids.length];
+        known = n;
+        Arrays.fill(lastChange, NONE);
+        // the changes are kept for the nodes still in the tree, found through their id, in the order they were done
+        int[] oldVariables = variables;
+        int[] oldOldValues = oldValues;
+        int[] oldNewValues = newValues;
+        int[] oldPrevious = previous;
+        variables = new int[Math.max(16, nChanges)];
+        oldValues = new int[variables.length];
+        newValues = new int[variables.length];
+        previous = new int[variables.length];
+        nChanges = 0;
+        for (int v = 0; v < oldKnown; ++v) {
+            int index = searchTree.indexOf(oldIds[v]);
+            if (index == NONE)
+                continue;
+            int m = 0;
+            for (int c = oldLastChange[v]; c != NONE; c = oldPrevious[c])
+                m = push(m, c);
+            while (m > 0) {
+                int c = path[--m];
+                variables[nChanges] = oldVariables[c];
+                oldValues[nChanges] = oldOldValues[c];
+                newValues[nChanges] = oldNewValues[c];
+                previous[nChanges] = lastChange[index];
+                lastChange[index] = nChanges++;
+            }
+        }
+        for (int v = 0; v < n; ++v)
+            ids[v] = searchTree.nodeAt(v);
+        // preorder of each tree, so that the ancestors of a node are set before it
+        for (int root = 0; root < n; ++root) {
+            if (searchTree.parentOf(root) != NONE)
+                continue;
+            int v = root;
+            while (true) {
+                link(v, searchTree.parentOf(v));
+                if (searchTree.firstChildOf(v) != NONE) {
+                    v = searchTree.firstChildOf(v);
+                    continue;
+                }
+                while (v != root && searchTree.nextSiblingOf(v) == NONE)
+                    v = searchTree.parentOf(v);
+                if (v == root)
+                    break;
+                v = searchTree.nextSiblingOf(v);
+            }
+        }
+    }
+
+    @Override
+    public void onClear() {
+        reset();
+        known = 0;
+        nChanges = 0;
+        rebuild();
+    }
+
+    /**
+     * the indices of the nodes have changed: the tables are computed again, the changes of the evicted nodes are
+     * dropped and the trail goes back to the initial state
+     */
+    @Override
+    public void onCompact() {
+        reset();
+        rebuild();
+    }
+
+}
@@ -0,0 +1,40 @@
+package org.cpvisu.problems;
+
+/**
+ * travel times between the nodes of a routing problem, identified by their id
+ * the travel times may depend on the time of departure, for instance to follow the traffic on a road network
+ */
+@FunctionalInterface
+public interface TravelTimes {
+
+    /**
+     * gives the travel time between two nodes, independently of the time of departure
+     * @param from id of the node of departure
+     * @param to id of the node of arrival
+     * @return travel time from one node to the other
+     */
+    double travelTime(int from, int to);
+
+    /**
+     * gives the travel time between two nodes when leaving at a given time
+     * @param from id of the node of departure
+     * @param to id of the node of arrival
+     * @param departure time of departure from the first node
+     * @return travel time from one node to the other
+     */
+    default double travelTime(int from, int to, double departure) {
+        return travelTime(from, to);
+    }
+
+    /**
+     * gives the time of arrival at a node when leaving another one at a given time
+     * @param from id of the node of departure
+     * @param to id of the node of arrival
+     * @param departure time of departure from the first node
+     * @return time of arrival at the second node
+     */
+    default double arrivalTime(int from, int to, double departure) {
+        return departure + travelTime(from, to, departure);
+    }
+
+}
@@ -1,5 +1,6 @@
 package org.cpvisu.shapes;
 
+import javafx.collections.ObservableList;
 import javafx.scene.Group;
 import javafx.scene.Node;
 import javafx.scene.layout.Pane;
@@ -13,6 +14,8 @@ public class LabeledPath extends Pane implements VisualNode {
 
     private Text description;
     private Polyline polyline;
+    private final double xSpacing;
+    private final double ySpacing;
 
     /**
      * create a path with a label at the end of the path
@@ -23,6 +26,8 @@ public class LabeledPath extends Pane implements VisualNode {
      */
     public LabeledPath(double xSpacing, double ySpacing, String description, double... es) {
         super();
+        this.xSpacing = xSpacing;
+        this.ySpacing = ySpacing;
         polyline = new Polyline(es);
         this.getChildren().add(polyline);
         if (description != null && description.length() > 0) {
@@ -43,6 +48,25 @@ public class LabeledPath extends Pane implements VisualNode {
         this(5, -5, description, es);
     }
 
+    /**
+     * change the points of the path, moving its label at the end of the path
+     * @param es x and y values for the path
+     */
+    public void setPoints(double... es) {
+        int labelCoordinates = es.length - 2;
+        ObservableList<Double> points = polyline.getPoints();
+        if (points.size() == es.length) { // only update the values, without reallocating the list
+            for (int i = 0; i < es.length; ++i)
+                points.set(i, es[i]);
+        } else {
+            points.clear();
+            for (double e : es)
+                points.add(e);
+        }
+        description.setX(es[labelCoordinates] + xSpacing);
+        description.setY(es[labelCoordinates + 1] + ySpacing);
+    }
+
     @Override
     public void moveTo(double x, double y) {
         this.setTranslateX(getTranslateX() + x);
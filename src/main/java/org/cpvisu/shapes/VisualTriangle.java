@@ -1,2 +1,119 @@
-package org.cpvisu.shapes;public class VisualTriangle {
+package org.cpvisu.shapes;
+
+import javafx.animation.TranslateTransition;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+import javafx.scene.shape.Polygon;
+import javafx.scene.shape.Shape;
+import javafx.scene.text.Text;
+import javafx.util.Duration;
+
+/**
+ * triangle pointing upwards, with a text centered on its base
+ * the apex is not necessarily above the center of the base
+ */
+public class VisualTriangle extends Group implements VisualNode {
+
+    private final Polygon triangle;
+    private final Text text;
+    private final double width;
+    private final double height;
+
+    /**
+     * create a triangle whose bounding box has its top left corner at (0, 0)
+     * @param text text written on the triangle
+     * @param apexX x coordinate of the apex
+     * @param width width of the base
+     * @param height height of the triangle
+     */
+    public VisualTriangle(String text, double apexX, double width, double height) {
+        this.width = width;
+        this.height = height;
+        triangle = new Polygon(apexX, 0, width, height, 0, height);
+        triangle.setFill(Color.WHITE);
+        triangle.setStrokeWidth(2);
+        triangle.setStroke(Color.BLACK);
+        this.text = new Text(text);
+        this.text.setX((width - this.text.getBoundsInLocal().getWidth()) / 2);
+        this.text.setY(height - 3);
+        getChildren().addAll(triangle, this.text);
+    }
+
+    public Polygon getBackground() {
+        return triangle;
+    }
+
+    public Text getText() {
+        return text;
+    }
+
+    @Override
+    public void moveTo(double x, double y) {
+        this.setTranslateX(x);
+        this.setTranslateY(y);
+    }
+
+    @Override
+    public void moveTo(Duration duration, double x, double y) {
+        TranslateTransition translateTransition = new TranslateTransition(duration, this);
+        translateTransition.setToX(x);
+        translateTransition.setToY(y);
+        translateTransition.play();
+    }
+
+    @Override
+    public Node getNode() {
+        return this;
+    }
+
+    @Override
+    public double getX() {
+        return this.getTranslateX();
+    }
+
+    @Override
+    public double getY() {
+        return this.getTranslateY();
+    }
+
+    @Override
+    public double getCenterX() {
+        return this.getTranslateX() + width / 2;
+    }
+
+    @Override
+    public double getCenterY() {
+        return this.getTranslateY() + height / 2;
+    }
+
+    @Override
+    public double getHeight() {
+        return height;
+    }
+
+    @Override
+    public double getWidth() {
+        return width;
+    }
+
+    @Override
+    public Shape getArea() {
+        Polygon positioned = new Polygon();
+        positioned.getPoints().setAll(triangle.getPoints());
+        positioned.setTranslateX(this.getTranslateX());
+        positioned.setTranslateY(this.getTranslateY());
+        return positioned;
+    }
+
+    @Override
+    public void setFill(Paint fill) {
+        triangle.setFill(fill);
+    }
+
+    @Override
+    public void setStroke(Paint color) {
+        triangle.setStroke(color);
+    }
 }
@@ -0,0 +1,158 @@
+package org.cpvisu.util;
+
+import java.util.Arrays;
+
+/**
+ * open addressing hash map from long keys to int values, without any boxing
+ * uses linear probing and backward shift deletion. Long.MIN_VALUE cannot be used as a key
+ */
+public class LongIntMap {
+
+    private static final long FREE = Long.MIN_VALUE; // marker for an empty slot
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    private int threshold; // size from which the table is grown
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    /**
+     * create a map able to hold the given number of entries without being resized
+     * @param expectedSize number of entries expected in the map
+     */
+    public LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * create a copy of a map
+     * @param other map to copy
+     */
+    public LongIntMap(LongIntMap other) {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        size = other.size;
+        mask = other.mask;
+        threshold = other.threshold;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+        mask = capacity - 1;
+        threshold = capacity / 2;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * gives the value associated to a key
+     * @param key key whose value needs to be retrieved
+     * @param defaultValue value returned if the key is absent
+     * @return value associated to the key, or defaultValue if it is absent
+     */
+    public int get(long key, int defaultValue) {
+        if (key == FREE) // the marker of the empty slots is never a key
+            return defaultValue;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key)
+                return values[i];
+            if (keys[i] == FREE)
+                return defaultValue;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        if (key == FREE) // the marker of the empty slots is never a key
+            return false;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key)
+                return true;
+            if (keys[i] == FREE)
+                return false;
+        }
+    }
+
+    /**
+     * associate a value to a key, replacing the previous value if any
+     * @param key key to insert. Must be different from Long.MIN_VALUE
+     * @param value value associated to the key
+     */
+    public void put(long key, int value) {
+        if (key == FREE)
+            throw new IllegalArgumentException("Long.MIN_VALUE cannot be used as a key");
+        int i = slot(key);
+        while (keys[i] != FREE) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size >= threshold)
+            rehash(keys.length * 2);
+    }
+
+    /**
+     * remove a key from the map
+     * @param key key to remove
+     * @return true if the key was present
+     */
+    public boolean remove(long key) {
+        if (key == FREE) // the marker of the empty slots is never a key
+            return false;
+        int i = slot(key);
+        while (keys[i] != key) {
+            if (keys[i] == FREE)
+                return false;
+            i = (i + 1) & mask;
+        }
+        // backward shift deletion: move the following entries of the cluster to keep probing sequences valid
+        int hole = i;
+        for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = FREE;
+        size--;
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; ++i)
+            if (oldKeys[i] != FREE)
+                put(oldKeys[i], oldValues[i]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+
+}
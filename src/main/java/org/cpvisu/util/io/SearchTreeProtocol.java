@@ -0,0 +1,78 @@
+package org.cpvisu.util.io;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * binary protocol used to send the nodes of a search tree from an external solver, in the spirit of CP-Profiler
+ *
+ * every message is a frame made of its length as a 4 bytes big endian integer, followed by that many bytes:
+ * a 1 byte type and the fields of the message. Integers take 4 bytes and strings are written as their number of
+ * bytes on 2 bytes, followed by their UTF-8 encoding (an empty string stands for no label)
+ * <ul>
+ *     <li>START: a new search begins, the current tree is cleared</li>
+ *     <li>BRANCH parent node label: a branch from parent to node, labeled by label</li>
+ *     <li>FAILURE node: the node is a failure</li>
+ *     <li>SOLUTION node: the node is a solution</li>
+ *     <li>LABEL node label: the message associated with the node</li>
+ *     <li>DONE: the search is over</li>
+ * </ul>
+ */
+public final class SearchTreeProtocol {
+
+    public static final byte START = 0;
+    public static final byte BRANCH = 1;
+    public static final byte FAILURE = 2;
+    public static final byte SOLUTION = 3;
+    public static final byte LABEL = 4;
+    public static final byte DONE = 5;
+
+    public static final int MAX_STRING_LENGTH = 0xFFFF; // maximum number of bytes in an encoded string
+    // maximum length of a frame: a type, two integers and a string
+    public static final int MAX_FRAME_LENGTH = 1 + 2 * Integer.BYTES + Short.BYTES + MAX_STRING_LENGTH;
+
+    private SearchTreeProtocol() {}
+
+    /**
+     * encode a string
+     * @param s string to encode, null for no label
+     * @return UTF-8 bytes of the string, truncated to MAX_STRING_LENGTH bytes
+     */
+    public static byte[] encode(String s) {
+        if (s == null)
+            return new byte[0];
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_LENGTH) {
+            byte[] truncated = new byte[MAX_STRING_LENGTH];
+            System.arraycopy(bytes, 0, truncated, 0, MAX_STRING_LENGTH);
+            return truncated;
+        }
+        return bytes;
+    }
+
+    /**
+     * read a string at the current position of a buffer
+     * @param buffer buffer positioned on the length of the string
+     * @return string read, null if it is empty
+     * @throws BufferUnderflowException if the buffer ends before the end of the string
+     */
+    public static String readString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        if (length == 0)
+            return null;
+        if (length > buffer.remaining())
+            throw new BufferUnderflowException();
+        String s;
+        if (buffer.hasArray()) {
+            s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+
+}
@@ -0,0 +1,284 @@
+package org.cpvisu.util.io;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import org.cpvisu.problems.SearchTree;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.cpvisu.util.io.SearchTreeProtocol.*;
+
+/**
+ * receive the nodes of a search tree sent by an external solver over a local socket, following SearchTreeProtocol
+ *
+ * the messages are decoded on a dedicated thread and accumulated into a batch of primitive arrays. Once per frame,
+ * the application thread takes the whole batch and applies it to the search tree, so that the visualisations
+ * listening to the tree are updated at most once per frame, whatever the rate at which the solver sends its nodes
+ * the solvers connect one after the other: a new connection is accepted once the previous one is closed
+ */
+public class SearchTreeReceiver implements AutoCloseable {
+
+    private final SearchTree searchTree;
+    private final ServerSocketChannel server;
+    private final Thread reader;
+    private final AnimationTimer timer;
+    private final Object lock = new Object();
+    private EventBatch incoming = new EventBatch(); // events decoded and not applied yet, guarded by lock
+    private EventBatch spare = new EventBatch();    // empty batch swapped with the incoming one when applying events
+    private volatile boolean closed = false;
+    private boolean done = false;
+
+    /**
+     * create a receiver listening on a local address. The events are received once start() is called
+     * @param searchTree tree in which the received nodes are added
+     * @param address local address to listen on, either an InetSocketAddress or a UnixDomainSocketAddress
+     * @throws IOException if the address cannot be bound
+     */
+    public SearchTreeReceiver(SearchTree searchTree, SocketAddress address) throws IOException {
+        this.searchTree = searchTree;
+        server = ServerSocketChannel.open(address instanceof UnixDomainSocketAddress ?
+                StandardProtocolFamily.UNIX : StandardProtocolFamily.INET);
+        server.bind(address);
+        reader = new Thread(this::receive, "search tree receiver");
+        reader.setDaemon(true);
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                apply();
+            }
+        };
+    }
+
+    /**
+     * create a receiver listening on a TCP port of the loopback address
+     * @param searchTree tree in which the received nodes are added
+     * @param port port to listen on, 0 to pick any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public static SearchTreeReceiver tcp(SearchTree searchTree, int port) throws IOException {
+        return new SearchTreeReceiver(searchTree, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * create a receiver listening on a Unix domain socket
+     * @param searchTree tree in which the received nodes are added
+     * @param path path of the socket file, which must not exist yet
+     * @throws IOException if the socket cannot be bound
+     */
+    public static SearchTreeReceiver unix(SearchTree searchTree, Path path) throws IOException {
+        return new SearchTreeReceiver(searchTree, UnixDomainSocketAddress.of(path));
+    }
+
+    /**
+     * @return address on which the receiver listens
+     */
+    public SocketAddress getAddress() {
+        try {
+            return server.getLocalAddress();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * start receiving events
+     */
+    public void start() {
+        reader.start();
+        Platform.runLater(timer::start);
+    }
+
+    /**
+     * @return true if the last solver connected has notified the end of its search
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        reader.interrupt();
+        Platform.runLater(timer::stop);
+    }
+
+    /**
+     * accept the connections and decode their messages, until the receiver is closed
+     * runs on the reader thread
+     */
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        EventBatch decoded = new EventBatch();
+        while (!closed) {
+            try (SocketChannel channel = server.accept()) {
+                buffer.clear();
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    decode(buffer, decoded);
+                    buffer.compact();
+                    // a frame larger than the buffer needs a larger buffer
+                    if (buffer.position() >= Integer.BYTES && Integer.BYTES + buffer.getInt(0) > buffer.capacity()) {
+                        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, Integer.BYTES + buffer.getInt(0)));
+                        buffer.flip();
+                        larger.put(buffer);
+                        buffer = larger;
+                    }
+                    publish(decoded);
+                }
+            } catch (ClosedChannelException e) {
+                return; // the receiver has been closed
+            } catch (IOException e) { // the connection is closed on a protocol error, the next solver can connect
+                decoded.clear(); // the events decoded before the error must not be published with the next connection
+                if (!closed)
+                    e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * decode all complete frames of a buffer
+     * each frame is read from a slice of the buffer limited to its length, so that a frame too short for its type
+     * cannot read the next one
+     * @param buffer buffer ready to be read. Its position is left at the beginning of the first incomplete frame
+     * @param decoded batch in which the events are appended
+     * @throws IOException if a frame is invalid
+     */
+    private void decode(ByteBuffer buffer, EventBatch decoded) throws IOException {
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt(buffer.position());
+            if (length < 1 || length > MAX_FRAME_LENGTH)
+                throw new IOException("invalid frame of length " + length);
+            if (buffer.remaining() < Integer.BYTES + length)
+                return;
+            buffer.getInt();
+            ByteBuffer frame = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            byte type = frame.get();
+            try {
+                switch (type) {
+                    case START, DONE -> decoded.add(type, 0, 0, null);
+                    case BRANCH -> {
+                        int parent = frame.getInt();
+                        int node = frame.getInt();
+                        decoded.add(type, parent, node, readString(frame));
+                    }
+                    case FAILURE, SOLUTION -> decoded.add(type, frame.getInt(), 0, null);
+                    case LABEL -> {
+                        int node = frame.getInt();
+                        decoded.add(type, node, 0, readString(frame));
+                    }
+                    default -> throw new IOException("unknown message type " + type);
+                }
+            } catch (RuntimeException e) { // frame too short for its type
+                throw new IOException("invalid frame of type " + type + " and length " + length, e);
+            }
+        }
+    }
+
+    /**
+     * hand the decoded events over to the application thread
+     */
+    private void publish(EventBatch decoded) {
+        if (decoded.size == 0)
+            return;
+        synchronized (lock) {
+            incoming.addAll(decoded);
+        }
+        decoded.clear();
+    }
+
+    /**
+     * apply to the search tree all events received since the last frame
+     * runs on the application thread
+     */
+    private void apply() {
+        EventBatch batch;
+        synchronized (lock) {
+            if (incoming.size == 0)
+                return;
+            batch = incoming;
+            incoming = spare;
+        }
+        for (int i = 0; i < batch.size; ++i) {
+            try {
+                switch (batch.types[i]) {
+                    case START -> {
+                        searchTree.clear();
+                        done = false;
+                    }
+                    case BRANCH -> searchTree.addBranch(batch.first[i], batch.second[i], null, batch.labels[i]);
+                    case FAILURE -> searchTree.addFailure(batch.first[i]);
+                    case SOLUTION -> searchTree.addSuccess(batch.first[i]);
+                    case LABEL -> searchTree.setNodeMessage(batch.first[i], batch.labels[i]);
+                    case DONE -> done = true;
+                }
+            } catch (IllegalArgumentException e) { // invalid event sent by the solver
+                System.err.println(e.getMessage());
+            }
+        }
+        batch.clear();
+        spare = batch;
+    }
+
+    /**
+     * events stored as primitive arrays
+     */
+    private static class EventBatch {
+
+        byte[] types = new byte[1024];
+        int[] first = new int[1024];    // parent for a branch, node for the other events
+        int[] second = new int[1024];   // node for a branch
+        String[] labels = new String[1024];
+        int size = 0;
+
+        void add(byte type, int a, int b, String label) {
+            if (size == types.length)
+                grow(size * 2);
+            types[size] = type;
+            first[size] = a;
+            second[size] = b;
+            labels[size] = label;
+            size++;
+        }
+
+        void addAll(EventBatch other) {
+            if (size + other.size > types.length)
+                grow(Math.max(size + other.size, types.length * 2));
+            System.arraycopy(other.types, 0, types, size, other.size);
+            System.arraycopy(other.first, 0, first, size, other.size);
+            System.arraycopy(other.second, 0, second, size, other.size);
+            System.arraycopy(other.labels, 0, labels, size, other.size);
+            size += other.size;
+        }
+
+        void clear() {
+            Arrays.fill(labels, 0, size, null);
+            size = 0;
+        }
+
+        private void grow(int capacity) {
+            types = Arrays.copyOf(types, capacity);
+            first = Arrays.copyOf(first, capacity);
+            second = Arrays.copyOf(second, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.cpvisu.util.io;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static org.cpvisu.util.io.SearchTreeProtocol.*;
+
+/**
+ * send the nodes of a search tree to a SearchTreeReceiver, following SearchTreeProtocol
+ * the messages are buffered and only written once the buffer is full or when calling flush()
+ * meant to be used by a solver, or as a stub to test the reception of search trees
+ */
+public class SearchTreeSender implements AutoCloseable {
+
+    private final SocketChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+    /**
+     * connect to a receiver
+     * @param address address on which the receiver listens
+     * @throws IOException if the connection fails
+     */
+    public SearchTreeSender(SocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+    }
+
+    public void start() throws IOException {
+        reserve(1).put(START);
+    }
+
+    public void branch(int parent, int node, String label) throws IOException {
+        byte[] bytes = encode(label);
+        reserve(1 + 2 * Integer.BYTES + Short.BYTES + bytes.length).put(BRANCH).putInt(parent).putInt(node)
+                .putShort((short) bytes.length).put(bytes);
+    }
+
+    public void failure(int node) throws IOException {
+        reserve(1 + Integer.BYTES).put(FAILURE).putInt(node);
+    }
+
+    public void solution(int node) throws IOException {
+        reserve(1 + Integer.BYTES).put(SOLUTION).putInt(node);
+    }
+
+    public void label(int node, String label) throws IOException {
+        byte[] bytes = encode(label);
+        reserve(1 + Integer.BYTES + Short.BYTES + bytes.length).put(LABEL).putInt(node)
+                .putShort((short) bytes.length).put(bytes);
+    }
+
+    public void done() throws IOException {
+        reserve(1).put(DONE);
+    }
+
+    /**
+     * write the header of a frame, making room for it in the buffer
+     * @param length length of the frame, excluding its header
+     * @return buffer in which the content of the frame must be put
+     */
+    private ByteBuffer reserve(int length) throws IOException {
+        if (buffer.remaining() < Integer.BYTES + length) {
+            flush();
+            if (buffer.capacity() < Integer.BYTES + length)
+                buffer = ByteBuffer.allocate(Integer.BYTES + length);
+        }
+        return buffer.putInt(length);
+    }
+
+    /**
+     * write all buffered messages
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+}
@@ -0,0 +1,131 @@
+package org.cpvisu.layout;
+
+import org.cpvisu.problems.SearchTree;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.cpvisu.problems.SearchTree.NONE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchTreeLayoutTest {
+
+    private static SearchTreeLayout newLayout() {
+        return new SearchTreeLayout(10, 10, 20, 5, 2, s -> 3 * s.length());
+    }
+
+    /**
+     * check that an incrementally maintained layout places the nodes as a layout computed from scratch
+     */
+    private static void assertSameLayout(SearchTree tree, SearchTreeLayout incremental) {
+        SearchTreeLayout expected = newLayout();
+        int root = incremental.getRoot();
+        expected.layout(tree, root);
+        int nLaidOut = 0;
+        for (int v = 0; v < tree.nNodes(); ++v) {
+            int r = v;
+            boolean hidden = false; // nodes below a collapsed node have no absolute position
+            while (r != root && tree.parentOf(r) != NONE) {
+                r = tree.parentOf(r);
+                hidden |= tree.isCollapsed(r);
+            }
+            assertEquals(r == root, incremental.contains(v), "node " + tree.nodeAt(v));
+            if (r != root)
+                continue;
+            nLaidOut++;
+            if (hidden)
+                continue;
+            assertEquals(expected.getX(v), incremental.getX(v), 1e-6, "x of node " + tree.nodeAt(v));
+            assertEquals(expected.getY(v), incremental.getY(v), 1e-6, "y of node " + tree.nodeAt(v));
+            assertEquals(expected.getOffsetX(v), incremental.getOffsetX(v), 1e-6);
+        }
+        assertEquals(tree.subtreeSizeOf(root), nLaidOut);
+        assertEquals(expected.getWidth(), incremental.getWidth(), 1e-6);
+        assertEquals(expected.getMaxDepth(), incremental.getMaxDepth());
+    }
+
+    /**
+     * add the branches the way a view does: a new node whose parent is laid out is added with its whole subtree
+     */
+    private static void addBranch(SearchTree tree, SearchTreeLayout layout, int parent, int node) {
+        tree.addBranch(parent, node);
+        int index = tree.indexOf(node);
+        if (layout.contains(tree.parentOf(index)) && !layout.contains(index))
+            layout.addSubtree(index);
+    }
+
+    @Test
+    public void testAddLeaves() {
+        Random random = new Random(0);
+        SearchTree tree = new SearchTree();
+        tree.addBranch(0, 1);
+        SearchTreeLayout layout = newLayout();
+        layout.layout(tree, tree.indexOf(0));
+        for (int node = 2; node < 300; ++node) {
+            addBranch(tree, layout, random.nextInt(node), node);
+            if (random.nextInt(10) == 0) {
+                layout.update();
+                assertSameLayout(tree, layout);
+            }
+        }
+        layout.update();
+        assertSameLayout(tree, layout);
+    }
+
+    @Test
+    public void testAddBranchesOutOfOrder() {
+        // a node may be a root with its own children before being attached below the root of the layout
+        for (int seed = 0; seed < 20; ++seed) {
+            Random random = new Random(seed);
+            int n = 200;
+            int[] parents = new int[n];
+            for (int i = 1; i < n; ++i)
+                parents[i] = random.nextInt(i);
+            List<Integer> order = new ArrayList<>();
+            for (int i = 1; i < n; ++i)
+                order.add(i);
+            Collections.shuffle(order, random);
+            SearchTree tree = new SearchTree();
+            SearchTreeLayout layout = newLayout();
+            for (int node : order) {
+                if (layout.getRoot() == NONE) {
+                    tree.addBranch(parents[node], node);
+                    if (tree.indexOf(0) != NONE)
+                        layout.layout(tree, tree.indexOf(0));
+                } else {
+                    addBranch(tree, layout, parents[node], node);
+                }
+                if (layout.getRoot() != NONE && random.nextInt(5) == 0) {
+                    layout.update();
+                    assertSameLayout(tree, layout);
+                }
+            }
+            layout.update();
+            assertSameLayout(tree, layout);
+            assertEquals(n, tree.subtreeSizeOf(tree.indexOf(0)));
+        }
+    }
+
+    @Test
+    public void testCollapse() {
+        Random random = new Random(2);
+        SearchTree tree = new SearchTree();
+        for (int node = 1; node < 200; ++node)
+            tree.addBranch(random.nextInt(node), node);
+        SearchTreeLayout layout = newLayout();
+        layout.layout(tree, tree.indexOf(0));
+        for (int step = 0; step < 100; ++step) {
+            int index = tree.indexOf(1 + random.nextInt(199));
+            if (tree.firstChildOf(index) == NONE)
+                continue;
+            tree.setCollapsed(index, !tree.isCollapsed(index));
+            layout.invalidate(index);
+            layout.update();
+            assertSameLayout(tree, layout);
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package org.cpvisu.problems;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.cpvisu.problems.SearchTree.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentSearchTreeTest {
+
+    @Test
+    public void testMergeWorkers() throws InterruptedException {
+        ConcurrentSearchTree concurrent = new ConcurrentSearchTree();
+        List<IllegalArgumentException> errors = new ArrayList<>();
+        concurrent.setErrorHandler(errors::add);
+        int nWorkers = 4;
+        int nNodes = 10000;
+        Thread[] threads = new Thread[nWorkers];
+        for (int t = 0; t < nWorkers; ++t) {
+            threads[t] = new Thread(() -> {
+                ConcurrentSearchTree.Worker worker = concurrent.newWorker();
+                Random random = new Random(worker.getId());
+                int[] nodes = new int[nNodes];
+                nodes[0] = worker.addBranch(0, "worker " + worker.getId());
+                for (int i = 1; i < nNodes; ++i) {
+                    nodes[i] = worker.addBranch(nodes[random.nextInt(i)], null);
+                    if (random.nextInt(5) == 0)
+                        worker.addFailure(nodes[i]);
+                }
+            });
+            threads[t].start();
+        }
+        while (anyAlive(threads))
+            concurrent.update();
+        concurrent.update();
+        SearchTree tree = concurrent.getSearchTree();
+        assertEquals(1 + nWorkers * nNodes, tree.nNodes());
+        assertEquals(tree.nNodes(), tree.subtreeSizeOf(tree.indexOf(0)));
+        assertTrue(errors.isEmpty());
+        assertEquals(0, concurrent.nRejected());
+        for (int i = 1; i < tree.nNodes(); ++i)
+            assertNotEquals(NONE, tree.workerOf(i));
+    }
+
+    private static boolean anyAlive(Thread[] threads) {
+        for (Thread thread : threads)
+            if (thread.isAlive())
+                return true;
+        return false;
+    }
+
+    @Test
+    public void testStatusBeforeBranch() {
+        ConcurrentSearchTree concurrent = new ConcurrentSearchTree();
+        ConcurrentSearchTree.Worker first = concurrent.newWorker();
+        ConcurrentSearchTree.Worker second = concurrent.newWorker();
+        // the status is merged before the branch, as the second worker is merged after the first one
+        first.addSuccess(1);
+        second.addBranch(0, 1, null, null);
+        concurrent.update();
+        assertEquals(SUCCESS, concurrent.getSearchTree().getNodeStatus(1));
+        assertEquals(0, concurrent.nRejected());
+    }
+
+    @Test
+    public void testRejectedEvents() {
+        ConcurrentSearchTree concurrent = new ConcurrentSearchTree();
+        List<IllegalArgumentException> errors = new ArrayList<>();
+        concurrent.setErrorHandler(errors::add);
+        ConcurrentSearchTree.Worker worker = concurrent.newWorker();
+        worker.addBranch(0, 1, null, null);
+        worker.addBranch(1, 0, null, null); // cycle
+        worker.addFailure(42);              // never added
+        concurrent.update();
+        assertEquals(1, errors.size());
+        // the status is kept until every worker has been merged past it, then dropped
+        concurrent.update();
+        assertEquals(2, errors.size());
+        assertEquals(2, concurrent.nRejected());
+        concurrent.update();
+        assertEquals(2, concurrent.nRejected());
+        assertEquals(2, concurrent.getSearchTree().nNodes());
+    }
+
+}
@@ -0,0 +1,138 @@
+package org.cpvisu.problems;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DARPSolutionTest {
+
+    private static final int[][] A3_24_ROUTES = {
+            {48, 13, 37, 21, 45, 10, 23, 34, 47, 20, 7, 44, 31, 0, 6, 24, 30, 22, 11, 46, 35, 4, 28, 8, 32, 2, 26, 51},
+            {49, 15, 39, 1, 25, 9, 33, 14, 38, 5, 29, 52},
+            {50, 19, 43, 17, 41, 12, 18, 36, 42, 16, 3, 40, 27, 53}
+    };
+
+    private static DARPInstance a3_24() {
+        return DARPInstance.readFromFile("data/darp/Cordeau/a3-24.txt");
+    }
+
+    private static Integer[] idsOf(DARPSolution solution, int vehicle) {
+        List<DARPNodeSolution> route = solution.getNodes(vehicle);
+        Integer[] ids = new Integer[route.size()];
+        for (int i = 0; i < ids.length; ++i)
+            ids[i] = route.get(i).getDarpNode().getId();
+        return ids;
+    }
+
+    /**
+     * check that the values maintained incrementally are the ones computed when building every route from scratch
+     */
+    private static void assertSameAsFullRecompute(DARPInstance instance, DARPSolution solution) {
+        DARPSolution expected = new DARPSolution(instance);
+        for (int vehicle = 0; vehicle < instance.getNVehicle(); ++vehicle) {
+            expected.addVisit(vehicle, idsOf(solution, vehicle));
+            List<DARPNodeSolution> route = solution.getNodes(vehicle);
+            List<DARPNodeSolution> full = expected.getNodes(vehicle);
+            for (int i = 0; i < route.size(); ++i) {
+                assertEquals(full.get(i).getVehicle(), route.get(i).getVehicle());
+                assertEquals(full.get(i).getEat(), route.get(i).getEat(), "eat of position " + i + " of vehicle " + vehicle);
+                assertEquals(full.get(i).getLat(), route.get(i).getLat(), "lat of position " + i + " of vehicle " + vehicle);
+                assertEquals(full.get(i).getCumulCapacity(), route.get(i).getCumulCapacity());
+            }
+        }
+        assertEquals(expected.isValid(), solution.isValid());
+    }
+
+    @Test
+    public void testKnownSolutionIsValid() {
+        DARPInstance instance = a3_24();
+        DARPSolution solution = new DARPSolution(instance);
+        for (int vehicle = 0; vehicle < A3_24_ROUTES.length; ++vehicle)
+            for (int id : A3_24_ROUTES[vehicle])
+                solution.addVisit(vehicle, id);
+        assertTrue(solution.isValid());
+        // visiting a drop before its pickup is not
+        solution.moveVisit(1, 2, 1, 1);
+        assertFalse(solution.isValid());
+    }
+
+    @Test
+    public void testIncrementalMatchesFullRecompute() {
+        DARPInstance instance = a3_24();
+        int nVehicles = instance.getNVehicle();
+        for (int seed = 0; seed < 5; ++seed) {
+            Random random = new Random(seed);
+            DARPSolution solution = new DARPSolution(instance);
+            for (int vehicle = 0; vehicle < nVehicles; ++vehicle)
+                for (int id : A3_24_ROUTES[vehicle])
+                    solution.addVisit(vehicle, id);
+            for (int step = 0; step < 2000; ++step) {
+                // the depots stay at both ends of the routes
+                int vehicle = random.nextInt(nVehicles);
+                int size = solution.getNodes(vehicle).size();
+                int other = random.nextInt(nVehicles);
+                int otherSize = solution.getNodes(other).size();
+                switch (random.nextInt(4)) {
+                    case 0 -> {
+                        if (size <= 2)
+                            continue;
+                        int from = 1 + random.nextInt(size - 2);
+                        int limit = otherSize - (other == vehicle ? 2 : 1); // positions once the node is removed
+                        solution.moveVisit(vehicle, from, other, 1 + random.nextInt(limit));
+                    }
+                    case 1 -> {
+                        if (size <= 2)
+                            continue;
+                        DARPNode node = solution.removeVisit(vehicle, 1 + random.nextInt(size - 2));
+                        int limit = solution.getNodes(other).size() - 1;
+                        solution.insertVisit(other, 1 + random.nextInt(limit), node);
+                    }
+                    default -> {
+                        if (size <= 3)
+                            continue;
+                        int pickup = 1 + random.nextInt(size - 3);
+                        int drop = pickup + 1 + random.nextInt(size - 2 - pickup);
+                        DARPNode first = solution.getNodes(vehicle).get(pickup).getDarpNode();
+                        DARPNode second = solution.getNodes(vehicle).get(drop).getDarpNode();
+                        solution.removeRequest(vehicle, pickup, drop);
+                        int limit = solution.getNodes(other).size() - 1;
+                        int newPickup = 1 + random.nextInt(limit);
+                        int newDrop = newPickup + 1 + random.nextInt(limit - newPickup + 1);
+                        solution.insertRequest(other, newPickup, newDrop, first, second);
+                    }
+                }
+                if (step % 10 == 0)
+                    assertSameAsFullRecompute(instance, solution);
+            }
+            assertSameAsFullRecompute(instance, solution);
+        }
+    }
+
+    /**
+     * route depot, P_B, P_A, D_B, D_A, depot with a maximum ride time of 20: B must be picked up at time 0, A cannot be
+     * dropped before 50, so that either A or B rides longer than 20 whatever the waiting times
+     */
+    @Test
+    public void testRideTimesAreCheckedJointly() {
+        for (double dropA : new double[] {50, 15}) {
+            ArrayList<DARPNode> nodes = new ArrayList<>();
+            nodes.add(new DARPNode(0, 0, 0, 1, 0, 1000, 0, 0));      // P_A
+            nodes.add(new DARPNode(0, 0, 0, 1, 0, 0, 1, 1));         // P_B
+            nodes.add(new DARPNode(10, 0, 0, -1, dropA, 1000, 2, 0)); // D_A
+            nodes.add(new DARPNode(10, 0, 0, -1, 0, 1000, 3, 1));    // D_B
+            DARPNode begin = new DARPNode(0, 0, 0, 0, 0, 1000, 4, -1);
+            begin.setBeginDepot(true);
+            nodes.add(begin);
+            nodes.add(new DARPNode(0, 0, 0, 0, 0, 1000, 5, -1));
+            DARPInstance instance = new DARPInstance(nodes, new int[] {4}, 20, 1000);
+            DARPSolution solution = new DARPSolution(instance);
+            solution.addVisit(0, 4, 1, 0, 3, 2, 5);
+            assertEquals(dropA < 20, solution.isValid(), "earliest drop of A at " + dropA);
+        }
+    }
+
+}
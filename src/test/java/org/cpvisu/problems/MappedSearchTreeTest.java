@@ -0,0 +1,94 @@
+package org.cpvisu.problems;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.cpvisu.problems.SearchTree.*;
+import static org.cpvisu.problems.SearchTreeTest.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedSearchTreeTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * random tree rooted at 0, with labels and statuses, whose ids are not the indices
+     */
+    private static SearchTree randomTree(Random random, int n, NaiveTree expected) {
+        int[] parents = randomParents(random, n);
+        SearchTree tree = new SearchTree();
+        for (int i = 1; i < n; ++i) {
+            String label = random.nextBoolean() ? null : "x" + random.nextInt(5) + " = " + random.nextInt(3);
+            tree.addBranch(3 * parents[i], 3 * i, null, label);
+            expected.addBranch(3 * parents[i], 3 * i);
+            int status = random.nextInt(4);
+            if (status == SUCCESS || status == FAILURE) {
+                assertTrue(status == SUCCESS ? tree.addSuccess(3 * i) : tree.addFailure(3 * i));
+                expected.status.put(3 * i, status);
+            }
+        }
+        return tree;
+    }
+
+    @Test
+    public void testWriteOpen() throws IOException {
+        Random random = new Random(0);
+        SearchTree tree = randomTree(random, 1000, new NaiveTree());
+        Path path = dir.resolve("tree.cpvt");
+        MappedSearchTree.write(tree, path);
+        try (MappedSearchTree mapped = MappedSearchTree.open(path)) {
+            assertEquals(tree.nNodes(), mapped.nNodes());
+            for (int i = 0; i < tree.nNodes(); ++i) {
+                assertEquals(tree.nodeAt(i), mapped.nodeAt(i));
+                assertEquals(tree.parentOf(i), mapped.parentOf(i));
+                assertEquals(tree.firstChildOf(i), mapped.firstChildOf(i));
+                assertEquals(tree.lastChildOf(i), mapped.lastChildOf(i));
+                assertEquals(tree.nextSiblingOf(i), mapped.nextSiblingOf(i));
+                assertEquals(tree.statusOf(i), mapped.statusOf(i));
+                assertEquals(tree.branchMessageOf(i), mapped.branchMessageOf(i));
+                assertEquals(i, mapped.indexOf(tree.nodeAt(i)));
+            }
+            assertEquals(NONE, mapped.indexOf(1)); // the ids are multiples of 3
+            assertFalse(mapped.contains(-3));
+        }
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        Random random = new Random(1);
+        NaiveTree expected = new NaiveTree();
+        SearchTree tree = randomTree(random, 500, expected);
+        Path path = dir.resolve("tree.cpvt");
+        MappedSearchTree.write(tree, path);
+        try (MappedSearchTree mapped = MappedSearchTree.open(path)) {
+            SearchTree loaded = new SearchTree();
+            assertEquals(500, mapped.load(loaded, 0, Integer.MAX_VALUE, node -> () -> {}));
+            assertSameTree(expected, loaded);
+            // only the top of a subtree, in breadth first order
+            int node = 3 * expected.children.get(0).get(0);
+            loaded.clear();
+            int n = Math.min(20, expected.size(node));
+            assertEquals(n, mapped.load(loaded, node, 20, v -> () -> {}));
+            assertEquals(n, loaded.nNodes());
+            int previousDepth = 0;
+            for (int i = 0; i < loaded.nNodes(); ++i) {
+                int v = loaded.nodeAt(i);
+                int depth = 0;
+                for (int u = v; u != node; u = expected.parent.get(u))
+                    depth++;
+                assertTrue(depth >= previousDepth); // the nodes are added level by level
+                previousDepth = depth;
+                if (v != node)
+                    assertEquals(expected.parent.get(v), loaded.nodeAt(loaded.parentOf(i)));
+                assertEquals(expected.status.get(v), loaded.statusOf(i));
+            }
+            assertThrows(IllegalArgumentException.class, () -> mapped.load(new SearchTree(), 1, 10, v -> () -> {}));
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package org.cpvisu.problems;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedTravelTimesTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * write matrices of little-endian floats, the entry from a to b of the matrix k being 100 * k + 10 * a + b
+     */
+    private Path writeMatrices(int n, int nSlices) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(nSlices * n * n * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int k = 0; k < nSlices; ++k)
+            for (int a = 0; a < n; ++a)
+                for (int b = 0; b < n; ++b)
+                    buffer.putFloat(100 * k + 10 * a + b);
+        Path path = dir.resolve("times-" + n + "-" + nSlices + ".bin");
+        Files.write(path, buffer.array());
+        return path;
+    }
+
+    @Test
+    public void testEntries() throws IOException {
+        MappedTravelTimes times = MappedTravelTimes.floats(writeMatrices(3, 1), 3);
+        assertEquals(3, times.nNodes());
+        assertEquals(1, times.nSlices());
+        for (int a = 0; a < 3; ++a)
+            for (int b = 0; b < 3; ++b)
+                assertEquals(10 * a + b, times.travelTime(a, b));
+        assertThrows(IllegalArgumentException.class, () -> times.travelTime(3, 0));
+        assertThrows(IllegalArgumentException.class, () -> times.travelTime(0, -1));
+        assertThrows(IllegalArgumentException.class, () -> MappedTravelTimes.floats(writeMatrices(3, 1), 4));
+    }
+
+    @Test
+    public void testTimeDependent() throws IOException {
+        MappedTravelTimes times = MappedTravelTimes.timeDependent(writeMatrices(2, 3), 2, false, 10);
+        assertEquals(3, times.nSlices());
+        assertEquals(1, times.travelTime(0, 1, -5));
+        assertEquals(1, times.travelTime(0, 1, 0));
+        assertEquals(51, times.travelTime(0, 1, 5), 1e-9);
+        assertEquals(111, times.travelTime(1, 1, 10), 1e-9);
+        assertEquals(201, times.travelTime(0, 1, 100));
+        assertEquals(15 + 151, times.arrivalTime(0, 1, 15), 1e-9);
+    }
+
+    @Test
+    public void testInstanceIdsOutsideOfTheMatrix() throws IOException {
+        ArrayList<DARPNode> nodes = new ArrayList<>();
+        nodes.add(new DARPNode(0, 0, 0, 1, 0, 100, 0, 0));
+        nodes.add(new DARPNode(1, 0, 0, -1, 0, 100, 1, 0));
+        DARPNode begin = new DARPNode(0, 0, 0, 0, 0, 100, 2, -1);
+        begin.setBeginDepot(true);
+        nodes.add(begin);
+        nodes.add(new DARPNode(0, 0, 0, 0, 0, 100, 3, -1));
+        DARPInstance instance = new DARPInstance(nodes, new int[] {1}, 10, 100);
+        MappedTravelTimes small = MappedTravelTimes.floats(writeMatrices(3, 1), 3);
+        assertThrows(IllegalArgumentException.class, () -> instance.setTravelTimes(small));
+        MappedTravelTimes large = MappedTravelTimes.floats(writeMatrices(4, 1), 4);
+        instance.setTravelTimes(large);
+        assertSame(large, instance.getTravelTimes());
+        assertEquals(13 + 5, instance.getArrivalTime(nodes.get(1), nodes.get(3), 5), 1e-9);
+    }
+
+}
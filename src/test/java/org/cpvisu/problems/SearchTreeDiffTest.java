@@ -0,0 +1,48 @@
+package org.cpvisu.problems;
+
+import org.junit.jupiter.api.Test;
+
+import static org.cpvisu.problems.SearchTree.NONE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchTreeDiffTest {
+
+    @Test
+    public void testAlignByLabels() {
+        SearchTree left = new SearchTree();
+        left.addBranch(0, 1, null, "x = 1");
+        left.addBranch(0, 2, null, "x != 1");
+        left.addBranch(1, 3, null, "y = 0");
+        SearchTree right = new SearchTree();
+        right.addBranch(0, 5, null, "x = 1");
+        right.addBranch(0, 6, null, "x != 1");
+        right.addBranch(6, 7, null, "y = 0");
+        SearchTreeDiff diff = SearchTreeDiff.compare(left, right);
+        assertEquals(3, diff.nShared());
+        assertEquals(1, diff.nOnlyLeft());
+        assertEquals(1, diff.nOnlyRight());
+        assertEquals(right.indexOf(5), diff.matchOfLeft(left.indexOf(1)));
+        assertEquals(right.indexOf(6), diff.matchOfLeft(left.indexOf(2)));
+        assertEquals(NONE, diff.matchOfLeft(left.indexOf(3)));
+        assertEquals(NONE, diff.matchOfRight(right.indexOf(7)));
+        assertEquals(5, diff.getMerged().nNodes());
+    }
+
+    @Test
+    public void testSiblingsWithTheSameLabel() {
+        // siblings having the same label are matched by their rank among them
+        SearchTree left = new SearchTree();
+        SearchTree right = new SearchTree();
+        for (int i = 1; i <= 1000; ++i)
+            left.addBranch(0, i, null, i % 2 == 0 ? "a" : "b");
+        for (int i = 1; i <= 700; ++i)
+            right.addBranch(0, i, null, i % 2 == 0 ? "a" : "b");
+        SearchTreeDiff diff = SearchTreeDiff.compare(left, right);
+        assertEquals(701, diff.nShared());
+        assertEquals(300, diff.nOnlyLeft());
+        assertEquals(0, diff.nOnlyRight());
+        for (int i = 1; i <= 700; ++i)
+            assertEquals(right.indexOf(i), diff.matchOfLeft(left.indexOf(i)));
+    }
+
+}
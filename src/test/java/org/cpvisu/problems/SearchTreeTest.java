@@ -0,0 +1,269 @@
+package org.cpvisu.problems;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.cpvisu.problems.SearchTree.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchTreeTest {
+
+    /**
+     * search tree stored as maps and lists, used as a reference
+     */
+    static class NaiveTree {
+
+        final Map<Integer, Integer> parent = new HashMap<>();
+        final Map<Integer, List<Integer>> children = new HashMap<>();
+        final Map<Integer, Integer> status = new HashMap<>();
+
+        void addNode(int node) {
+            if (!status.containsKey(node)) {
+                status.put(node, INTERMEDIATE);
+                children.put(node, new ArrayList<>());
+            }
+        }
+
+        void addBranch(int p, int c) {
+            addNode(p);
+            addNode(c);
+            parent.put(c, p);
+            children.get(p).add(c);
+            status.put(c, INTERMEDIATE);
+        }
+
+        int size(int node) {
+            int size = 1;
+            for (int c : children.get(node))
+                size += size(c);
+            return size;
+        }
+
+        int count(int node, int s) {
+            int n = status.get(node) == s ? 1 : 0;
+            for (int c : children.get(node))
+                n += count(c, s);
+            return n;
+        }
+
+        int openLeaves(int node) {
+            if (children.get(node).isEmpty())
+                return status.get(node) == INTERMEDIATE ? 1 : 0;
+            int n = 0;
+            for (int c : children.get(node))
+                n += openLeaves(c);
+            return n;
+        }
+
+    }
+
+    /**
+     * check that a search tree has the same nodes, links, statuses and aggregates as the reference
+     */
+    static void assertSameTree(NaiveTree expected, SearchTree tree) {
+        assertEquals(expected.status.size(), tree.nNodes());
+        for (int node : expected.status.keySet()) {
+            int index = tree.indexOf(node);
+            assertNotEquals(NONE, index, "node " + node + " is missing");
+            assertEquals(node, tree.nodeAt(index));
+            Integer p = expected.parent.get(node);
+            assertEquals(p == null ? NONE : tree.indexOf(p), tree.parentOf(index));
+            List<Integer> children = new ArrayList<>();
+            for (int c = tree.firstChildOf(index); c != NONE; c = tree.nextSiblingOf(c))
+                children.add(tree.nodeAt(c));
+            assertEquals(expected.children.get(node), children, "children of node " + node);
+            List<Integer> kids = expected.children.get(node);
+            assertEquals(kids.isEmpty() ? NONE : tree.indexOf(kids.get(kids.size() - 1)), tree.lastChildOf(index));
+            assertEquals((int) expected.status.get(node), tree.statusOf(index));
+            assertEquals(expected.size(node), tree.subtreeSizeOf(index), "size of node " + node);
+            assertEquals(expected.count(node, SUCCESS), tree.successesOf(index));
+            assertEquals(expected.count(node, FAILURE), tree.failuresOf(index));
+            assertEquals(expected.openLeaves(node), tree.openLeavesOf(index), "open leaves of node " + node);
+        }
+    }
+
+    /**
+     * @return parent of each node of a random tree rooted at 0, the parent of the root being -1
+     */
+    static int[] randomParents(Random random, int n) {
+        int[] parents = new int[n];
+        parents[0] = -1;
+        for (int i = 1; i < n; ++i)
+            parents[i] = random.nextInt(i);
+        return parents;
+    }
+
+    @Test
+    public void testAddBranchesInOrder() {
+        SearchTree tree = new SearchTree();
+        NaiveTree expected = new NaiveTree();
+        Random random = new Random(0);
+        int[] parents = randomParents(random, 500);
+        for (int i = 1; i < parents.length; ++i) {
+            tree.addBranch(parents[i], i);
+            expected.addBranch(parents[i], i);
+        }
+        assertSameTree(expected, tree);
+        assertEquals(0, tree.indexOf(0));
+    }
+
+    @Test
+    public void testAddBranchesOutOfOrder() {
+        // a node may be known as a root with its own children before getting attached to its parent
+        for (int seed = 0; seed < 10; ++seed) {
+            Random random = new Random(seed);
+            int[] parents = randomParents(random, 300);
+            List<Integer> order = new ArrayList<>();
+            for (int i = 1; i < parents.length; ++i)
+                order.add(i);
+            Collections.shuffle(order, random);
+            SearchTree tree = new SearchTree();
+            NaiveTree expected = new NaiveTree();
+            for (int node : order) {
+                tree.addBranch(parents[node], node);
+                expected.addBranch(parents[node], node);
+                if (random.nextInt(4) == 0) { // change the status of a node already added
+                    int changed = order.get(random.nextInt(order.indexOf(node) + 1));
+                    int status = random.nextInt(3);
+                    assertTrue(status == SUCCESS ? tree.addSuccess(changed)
+                            : status == FAILURE ? tree.addFailure(changed) : true);
+                    if (status != INTERMEDIATE)
+                        expected.status.put(changed, status);
+                }
+            }
+            assertSameTree(expected, tree);
+        }
+    }
+
+    @Test
+    public void testStatusChanges() {
+        SearchTree tree = new SearchTree();
+        NaiveTree expected = new NaiveTree();
+        Random random = new Random(1);
+        int[] parents = randomParents(random, 200);
+        for (int i = 1; i < parents.length; ++i) {
+            tree.addBranch(parents[i], i);
+            expected.addBranch(parents[i], i);
+        }
+        for (int step = 0; step < 500; ++step) {
+            int node = random.nextInt(parents.length);
+            if (random.nextBoolean()) {
+                tree.addSuccess(node);
+                expected.status.put(node, SUCCESS);
+            } else {
+                tree.addFailure(node);
+                expected.status.put(node, FAILURE);
+            }
+        }
+        assertSameTree(expected, tree);
+        assertFalse(tree.addSuccess(parents.length)); // unknown node
+    }
+
+    @Test
+    public void testInvalidBranches() {
+        SearchTree tree = new SearchTree();
+        tree.addBranch(0, 1);
+        tree.addBranch(1, 2);
+        assertThrows(IllegalArgumentException.class, () -> tree.addBranch(0, 2)); // already has a parent
+        tree.addBranch(5, 6);
+        assertThrows(IllegalArgumentException.class, () -> tree.addBranch(6, 5)); // cycle
+    }
+
+    @Test
+    public void testCompact() {
+        for (int seed = 0; seed < 10; ++seed) {
+            Random random = new Random(seed);
+            int[] parents = randomParents(random, 400);
+            SearchTree tree = new SearchTree();
+            NaiveTree expected = new NaiveTree();
+            for (int i = 1; i < parents.length; ++i) {
+                tree.addBranch(parents[i], i);
+                expected.addBranch(parents[i], i);
+            }
+            // most leaves are closed, so that their subtrees can be evicted
+            for (int i = 1; i < parents.length; ++i) {
+                if (expected.children.get(i).isEmpty() && random.nextInt(10) > 0) {
+                    int status = random.nextInt(5) == 0 ? SUCCESS : FAILURE;
+                    assertTrue(status == SUCCESS ? tree.addSuccess(i) : tree.addFailure(i));
+                    expected.status.put(i, status);
+                }
+            }
+            // nodes kept: the last ones added, the root, the nodes with open leaves and their ancestors
+            int nLast = random.nextInt(50);
+            Set<Integer> kept = new HashSet<>();
+            for (int i = 0; i < parents.length; ++i) {
+                if (i >= parents.length - nLast || i == 0 || expected.openLeaves(i) > 0)
+                    for (int v = i; v != -1 && kept.add(v); v = parents[v]) ;
+            }
+            assertEquals(parents.length - kept.size(), tree.compact(RetentionPolicy.keepLast(nLast)));
+            assertEquals(kept.size(), tree.nNodes());
+            for (int i = 0; i < parents.length; ++i) {
+                int index = tree.indexOf(i);
+                assertEquals(kept.contains(i), index != NONE);
+                if (index == NONE)
+                    continue;
+                assertEquals(i == 0 ? NONE : tree.indexOf(parents[i]), tree.parentOf(index));
+                List<Integer> children = new ArrayList<>();
+                for (int c : expected.children.get(i))
+                    if (kept.contains(c))
+                        children.add(c);
+                List<Integer> actual = new ArrayList<>();
+                for (int c = tree.firstChildOf(index); c != NONE; c = tree.nextSiblingOf(c))
+                    actual.add(tree.nodeAt(c));
+                assertEquals(children, actual, "children of node " + i);
+                boolean folded = children.size() < expected.children.get(i).size();
+                assertEquals(folded, tree.isCollapsed(index));
+                assertEquals(folded, tree.isFolded(index));
+                // the aggregates summarize the evicted nodes
+                assertEquals((int) expected.status.get(i), tree.statusOf(index));
+                assertEquals(expected.size(i), tree.subtreeSizeOf(index));
+                assertEquals(expected.count(i, SUCCESS), tree.successesOf(index));
+                assertEquals(expected.count(i, FAILURE), tree.failuresOf(index));
+                assertEquals(expected.openLeaves(i), tree.openLeavesOf(index));
+            }
+        }
+    }
+
+    @Test
+    public void testFailingRetentionPolicy() throws InterruptedException {
+        SearchTree tree = new SearchTree();
+        tree.setMemoryBudget(100L * BYTES_PER_NODE, (t, kept) -> {
+            throw new UnsupportedOperationException();
+        });
+        for (int i = 1; i <= 100; ++i)
+            tree.addBranch(0, i);
+        // the selection fails in the background and is reported by the next branch
+        IllegalStateException e = null;
+        for (int i = 101; i < 140 && e == null; ++i) {
+            Thread.sleep(10);
+            try {
+                tree.addBranch(0, i);
+            } catch (IllegalStateException failure) {
+                e = failure;
+            }
+        }
+        assertNotNull(e);
+        assertTrue(e.getCause() instanceof UnsupportedOperationException);
+    }
+
+    @Test
+    public void testClear() {
+        SearchTree tree = new SearchTree();
+        tree.addBranch(0, 1);
+        tree.addFailure(1);
+        tree.clear();
+        assertTrue(tree.isEmpty());
+        assertEquals(NONE, tree.indexOf(1));
+        tree.addBranch(0, 1);
+        assertEquals(INTERMEDIATE, tree.statusOf(tree.indexOf(1)));
+    }
+
+}
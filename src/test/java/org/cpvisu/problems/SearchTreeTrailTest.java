@@ -0,0 +1,115 @@
+package org.cpvisu.problems;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.cpvisu.problems.SearchTree.NONE;
+import static org.cpvisu.problems.SearchTreeTest.randomParents;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchTreeTrailTest {
+
+    /**
+     * @return ancestors of a node in the tree, from the node itself up to its root, as indices
+     */
+    private static List<Integer> ancestors(SearchTree tree, int index) {
+        List<Integer> path = new ArrayList<>();
+        for (int v = index; v != NONE; v = tree.parentOf(v))
+            path.add(v);
+        return path;
+    }
+
+    private static int naiveLowestCommonAncestor(SearchTree tree, int a, int b) {
+        List<Integer> above = ancestors(tree, a);
+        for (int v : ancestors(tree, b))
+            if (above.contains(v))
+                return v;
+        return NONE;
+    }
+
+    private static void assertAncestors(SearchTree tree, SearchTreeTrail trail, Random random) {
+        int n = tree.nNodes();
+        for (int step = 0; step < 500; ++step) {
+            int a = random.nextInt(n);
+            int b = random.nextInt(n);
+            assertEquals(naiveLowestCommonAncestor(tree, a, b), trail.lowestCommonAncestor(a, b));
+            List<Integer> path = ancestors(tree, a);
+            int distance = random.nextInt(path.size() + 2);
+            assertEquals(distance < path.size() ? path.get(distance) : NONE, trail.ancestorOf(a, distance));
+        }
+    }
+
+    @Test
+    public void testLowestCommonAncestor() {
+        Random random = new Random(0);
+        int[] parents = randomParents(random, 1000);
+        SearchTree tree = new SearchTree();
+        SearchTreeTrail trail = new SearchTreeTrail(tree, 1);
+        for (int i = 1; i < parents.length; ++i) {
+            tree.addBranch(parents[i], i);
+            if (i % 100 == 0)
+                assertAncestors(tree, trail, random);
+        }
+        assertAncestors(tree, trail, random);
+    }
+
+    @Test
+    public void testLowestCommonAncestorOutOfOrder() {
+        // some nodes are roots of their own subtree until they get attached, some pairs have no common ancestor
+        Random random = new Random(1);
+        int[] parents = randomParents(random, 300);
+        List<Integer> order = new ArrayList<>();
+        for (int i = 1; i < parents.length; ++i)
+            order.add(i);
+        Collections.shuffle(order, random);
+        SearchTree tree = new SearchTree();
+        SearchTreeTrail trail = new SearchTreeTrail(tree, 1);
+        for (int k = 0; k < order.size(); ++k) {
+            tree.addBranch(parents[order.get(k)], order.get(k));
+            if (k % 30 == 0)
+                assertAncestors(tree, trail, random);
+        }
+        assertAncestors(tree, trail, random);
+    }
+
+    @Test
+    public void testMoveTo() {
+        Random random = new Random(2);
+        int nVariables = 5;
+        int[] parents = randomParents(random, 500);
+        int[][] expected = new int[parents.length][]; // values of the variables at each node
+        expected[0] = new int[] {1, 2, 3, 4, 5};
+        SearchTree tree = new SearchTree();
+        SearchTreeTrail trail = new SearchTreeTrail(tree, expected[0]);
+        for (int i = 1; i < parents.length; ++i) {
+            tree.addBranch(parents[i], i);
+            expected[i] = expected[parents[i]].clone();
+            for (int c = random.nextInt(3); c > 0; --c) { // a branch may change several variables, or none
+                int variable = random.nextInt(nVariables);
+                int value = random.nextInt(100);
+                trail.record(i, variable, expected[i][variable], value);
+                expected[i][variable] = value;
+            }
+            if (random.nextInt(4) == 0) {
+                int node = random.nextInt(i + 1);
+                assertTrue(trail.moveTo(node));
+                assertArrayEquals(expected[node], trail.getValues());
+            }
+        }
+        for (int step = 0; step < 1000; ++step) {
+            int node = random.nextInt(parents.length);
+            assertTrue(trail.moveTo(node));
+            assertEquals(node, trail.getCurrentNode());
+            assertArrayEquals(expected[node], trail.getValues());
+        }
+        assertFalse(trail.moveTo(parents.length));
+        trail.reset();
+        assertEquals(NONE, trail.getCurrentNode());
+        assertArrayEquals(expected[0], trail.getValues());
+    }
+
+}
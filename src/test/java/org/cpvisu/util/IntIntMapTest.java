@@ -0,0 +1,119 @@
+package org.cpvisu.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntIntMapTest {
+
+    @Test
+    public void testPutGet() {
+        IntIntMap map = new IntIntMap();
+        assertTrue(map.isEmpty());
+        for (int i = 0; i < 1000; ++i)
+            map.put(i * 7, i);
+        assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; ++i) {
+            assertTrue(map.containsKey(i * 7));
+            assertEquals(i, map.get(i * 7, -1));
+        }
+        assertFalse(map.containsKey(1));
+        assertEquals(-1, map.get(1, -1));
+        map.put(7, 42); // replace an existing value
+        assertEquals(42, map.get(7, -1));
+        assertEquals(1000, map.size());
+    }
+
+    @Test
+    public void testRemove() {
+        IntIntMap map = new IntIntMap();
+        for (int i = 0; i < 100; ++i)
+            map.put(i, i);
+        for (int i = 0; i < 100; i += 2)
+            assertTrue(map.remove(i));
+        assertFalse(map.remove(0));
+        assertEquals(50, map.size());
+        for (int i = 0; i < 100; ++i)
+            assertEquals(i % 2 == 0 ? -1 : i, map.get(i, -1));
+    }
+
+    @Test
+    public void testRehash() {
+        IntIntMap map = new IntIntMap(2);
+        for (int i = -5000; i < 5000; ++i)
+            map.put(i, -i);
+        assertEquals(10000, map.size());
+        for (int i = -5000; i < 5000; ++i)
+            assertEquals(-i, map.get(i, 0));
+    }
+
+    /**
+     * random operations against a HashMap, with few live keys so that the table stays small (8 to 32 slots): the
+     * clusters often wrap around the end of the table, exercising the backward shift deletion across the wrap
+     */
+    @Test
+    public void testRandomAgainstHashMap() {
+        for (int seed = 0; seed < 20; ++seed) {
+            Random random = new Random(seed);
+            IntIntMap map = new IntIntMap(2);
+            Map<Integer, Integer> expected = new HashMap<>();
+            for (int step = 0; step < 20000; ++step) {
+                int key = random.nextInt(12) - 6;
+                switch (random.nextInt(3)) {
+                    case 0 -> {
+                        int value = random.nextInt();
+                        map.put(key, value);
+                        expected.put(key, value);
+                    }
+                    case 1 -> assertEquals(expected.remove(key) != null, map.remove(key));
+                    default -> assertEquals(expected.getOrDefault(key, -1), map.get(key, -1));
+                }
+                assertEquals(expected.size(), map.size());
+            }
+            for (int key = -6; key < 6; ++key) {
+                assertEquals(expected.containsKey(key), map.containsKey(key));
+                assertEquals(expected.getOrDefault(key, -1), map.get(key, -1));
+            }
+        }
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        IntIntMap map = new IntIntMap();
+        map.put(1, 1);
+        IntIntMap copy = new IntIntMap(map);
+        copy.put(2, 2);
+        map.remove(1);
+        assertFalse(map.containsKey(2));
+        assertTrue(copy.containsKey(1));
+        assertEquals(2, copy.size());
+    }
+
+    @Test
+    public void testClear() {
+        IntIntMap map = new IntIntMap();
+        for (int i = 0; i < 10; ++i)
+            map.put(i, i);
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(3));
+        map.put(3, 4);
+        assertEquals(4, map.get(3, -1));
+    }
+
+    @Test
+    public void testFreeMarkerIsNeverAKey() {
+        IntIntMap map = new IntIntMap();
+        map.put(1, 1);
+        assertThrows(IllegalArgumentException.class, () -> map.put(Integer.MIN_VALUE, 0));
+        assertFalse(map.containsKey(Integer.MIN_VALUE));
+        assertEquals(-1, map.get(Integer.MIN_VALUE, -1));
+        assertFalse(map.remove(Integer.MIN_VALUE));
+        assertEquals(1, map.size());
+    }
+
+}
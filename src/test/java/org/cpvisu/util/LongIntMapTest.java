@@ -0,0 +1,66 @@
+package org.cpvisu.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LongIntMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        LongIntMap map = new LongIntMap(2);
+        for (long i = 0; i < 5000; ++i)
+            map.put(i * 0x100000001L, (int) i);
+        assertEquals(5000, map.size());
+        for (long i = 0; i < 5000; ++i)
+            assertEquals((int) i, map.get(i * 0x100000001L, -1));
+        for (long i = 0; i < 5000; i += 2)
+            assertTrue(map.remove(i * 0x100000001L));
+        assertEquals(2500, map.size());
+        for (long i = 0; i < 5000; ++i)
+            assertEquals(i % 2 == 0 ? -1 : (int) i, map.get(i * 0x100000001L, -1));
+    }
+
+    /**
+     * random operations against a HashMap, on few keys so that the clusters often wrap around the end of the table
+     */
+    @Test
+    public void testRandomAgainstHashMap() {
+        for (int seed = 0; seed < 20; ++seed) {
+            Random random = new Random(seed);
+            LongIntMap map = new LongIntMap(2);
+            Map<Long, Integer> expected = new HashMap<>();
+            for (int step = 0; step < 20000; ++step) {
+                long key = (random.nextInt(12) - 6) * 0x7FFFFFFFL;
+                switch (random.nextInt(3)) {
+                    case 0 -> {
+                        int value = random.nextInt();
+                        map.put(key, value);
+                        expected.put(key, value);
+                    }
+                    case 1 -> assertEquals(expected.remove(key) != null, map.remove(key));
+                    default -> assertEquals(expected.getOrDefault(key, -1), map.get(key, -1));
+                }
+                assertEquals(expected.size(), map.size());
+            }
+            for (long key : expected.keySet())
+                assertTrue(map.containsKey(key));
+        }
+    }
+
+    @Test
+    public void testFreeMarkerIsNeverAKey() {
+        LongIntMap map = new LongIntMap();
+        map.put(1, 1);
+        assertThrows(IllegalArgumentException.class, () -> map.put(Long.MIN_VALUE, 0));
+        assertFalse(map.containsKey(Long.MIN_VALUE));
+        assertEquals(-1, map.get(Long.MIN_VALUE, -1));
+        assertFalse(map.remove(Long.MIN_VALUE));
+        assertEquals(1, map.size());
+    }
+
+}